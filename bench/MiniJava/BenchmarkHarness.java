@@ -0,0 +1,89 @@
+package MiniJava;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A small JMH-style measurement loop: time-boxed warm-up and measurement iterations, with the
+ * mean time per operation, its 99.9% confidence interval and the bytes allocated per operation
+ * (what JMH's gc profiler reports as gc.alloc.rate.norm).
+ *
+ * Every operation gets a fresh state from its setup, which is neither timed nor counted towards
+ * the allocations, like a JMH Level.Invocation fixture.
+ */
+public class BenchmarkHarness {
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    //Keeps results alive so the JIT cannot discard the measured work
+    private static volatile int sink;
+
+    private final long warmupMillis;
+    private final long iterationMillis;
+    private final int iterations;
+
+    public BenchmarkHarness(long warmupMillis, long iterationMillis, int iterations) {
+        this.warmupMillis = warmupMillis;
+        this.iterationMillis = iterationMillis;
+        this.iterations = iterations;
+    }
+
+    public static class Result {
+        public final double nanosPerOp;
+        public final double errorNanos;
+        public final double bytesPerOp;
+        public final long ops;
+
+        Result(double nanosPerOp, double errorNanos, double bytesPerOp, long ops) {
+            this.nanosPerOp = nanosPerOp;
+            this.errorNanos = errorNanos;
+            this.bytesPerOp = bytesPerOp;
+            this.ops = ops;
+        }
+    }
+
+    public <S> Result measure(Supplier<S> setup, Function<S, ?> operation) {
+        long threadId = Thread.currentThread().getId();
+        long deadline = System.currentTimeMillis() + warmupMillis;
+        while (System.currentTimeMillis() < deadline) {
+            consume(operation.apply(setup.get()));
+        }
+
+        double[] scores = new double[iterations];
+        long totalOps = 0;
+        long totalBytes = 0;
+        for (int i = 0; i < iterations; i++) {
+            long nanos = 0;
+            long ops = 0;
+            deadline = System.currentTimeMillis() + iterationMillis;
+            while (System.currentTimeMillis() < deadline) {
+                S state = setup.get();
+                long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+                long start = System.nanoTime();
+                Object result = operation.apply(state);
+                nanos += System.nanoTime() - start;
+                totalBytes += threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+                consume(result);
+                ops++;
+            }
+            scores[i] = (double) nanos / Math.max(ops, 1);
+            totalOps += ops;
+        }
+
+        double mean = Arrays.stream(scores).average().orElse(0);
+        double variance = 0;
+        for (double score : scores) {
+            variance += (score - mean) * (score - mean);
+        }
+        variance /= Math.max(iterations - 1, 1);
+        //3.29 standard errors is the normal approximation of a 99.9% confidence interval
+        double error = 3.29 * Math.sqrt(variance / iterations);
+        return new Result(mean, error, (double) totalBytes / Math.max(totalOps, 1), totalOps);
+    }
+
+    private static void consume(Object result) {
+        sink += System.identityHashCode(result);
+    }
+}
@@ -0,0 +1,112 @@
+package MiniJava;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Compares the old LL_EXACT_AMBIG_DETECTION parse against the two-stage SLL-then-LL parse
+ * used by Compiler, on the given files and on large inputs made by repeating their classes.
+ *
+ * usage: ParseBenchmark [file or directory]...   (defaults to samples/clean)
+ */
+public class ParseBenchmark {
+    private static final int WARMUP_MILLIS = 2000;
+    private static final int MEASURE_MILLIS = 3000;
+    private static final int[] COPIES = {10, 100};
+
+    public static void main(String[] args) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (String path : args.length > 0 ? args : new String[]{"samples/clean"}) {
+            File file = new File(path);
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                files.addAll(Arrays.asList(children));
+            } else {
+                files.add(file);
+            }
+        }
+
+        System.out.printf("%-24s %8s %14s %14s %8s%n", "input", "tokens", "exact-ambig us", "sll-then-ll us", "speedup");
+        for (File file : files) {
+            String source = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            report(file.getName(), source);
+        }
+        for (int copies : COPIES) {
+            StringBuilder scaled = new StringBuilder();
+            for (File file : files) {
+                String source = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+                scaled.setLength(0);
+                scaled.append(source);
+                String classes = source.substring(endOfMainClass(source));
+                for (int i = 1; i < copies; i++) {
+                    scaled.append(classes);
+                }
+                report(file.getName() + " x" + copies, scaled.toString());
+            }
+        }
+    }
+
+    private static void report(String name, String source) {
+        int tokens = new CommonTokenStream(new MiniJavaLexer(new ANTLRInputStream(source))).getNumberOfOnChannelTokens();
+        double exact = measure(source, true);
+        double twoStage = measure(source, false);
+        System.out.printf("%-24s %8d %14.1f %14.1f %7.2fx%n", name, tokens, exact, twoStage, exact / twoStage);
+    }
+
+    /**
+     * @return the mean time in microseconds to lex and parse source.
+     */
+    private static double measure(String source, boolean exactAmbiguityDetection) {
+        long deadline = System.currentTimeMillis() + WARMUP_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            parse(source, exactAmbiguityDetection);
+        }
+        int iterations = 0;
+        long start = System.nanoTime();
+        deadline = System.currentTimeMillis() + MEASURE_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            parse(source, exactAmbiguityDetection);
+            iterations++;
+        }
+        return (System.nanoTime() - start) / 1e3 / iterations;
+    }
+
+    private static Object parse(String source, boolean exactAmbiguityDetection) {
+        CommonTokenStream tokens = new CommonTokenStream(new MiniJavaLexer(new ANTLRInputStream(source)));
+        MiniJavaParser parser = new MiniJavaParser(tokens);
+        parser.removeErrorListeners();
+        if (exactAmbiguityDetection) {
+            parser.addErrorListener(new DiagnosticErrorListener());
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL_EXACT_AMBIG_DETECTION);
+            return parser.goal();
+        }
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.setErrorHandler(new BailErrorStrategy());
+        try {
+            return parser.goal();
+        } catch (ParseCancellationException pce) {
+            tokens.seek(0);
+            parser.reset();
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            return parser.goal();
+        }
+    }
+
+    /**
+     * @return the offset just past the main class, where the class declarations begin.
+     */
+    private static int endOfMainClass(String source) {
+        MiniJavaParser parser = new MiniJavaParser(new CommonTokenStream(new MiniJavaLexer(new ANTLRInputStream(source))));
+        parser.removeErrorListeners();
+        return parser.goal().mainClass().getStop().getStopIndex() + 1;
+    }
+}
@@ -0,0 +1,232 @@
+package MiniJava;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Measures every compiler phase separately, in time per operation and bytes allocated per
+ * operation, on the given programs and on scaled copies of them.
+ *
+ * usage: PhaseBenchmark [--phase PHASE]... [--scale copies,...] [--warmup ms] [--time ms]
+ *                       [--iterations n] [-O level] [--generated seed]... [file or directory]...
+ *
+ * Defaults to every phase on samples/clean at scales 1 and 10, at optimization level 1. At level
+ * 0 the IR phases do nothing and CODEGEN generates from the parse tree. --generated adds a
+ * program made by ProgramGenerator with its default settings.
+ */
+public class PhaseBenchmark {
+
+    private static final Compiler COMPILER = new Compiler();
+    private static int optimizationLevel = 1;
+
+    /**
+     * A compilation that can be run one phase at a time.
+     */
+    static final class Compilation {
+        private final String source;
+        private final ErrorStrategy errors = new ErrorStrategy("benchmark", new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+        private CommonTokenStream tokens;
+        private ParseTree tree;
+        private CompilationContext context;
+        private IrProgram program;
+        private Map<String, byte[]> classes;
+
+        Compilation(String source) {
+            this.source = source;
+        }
+
+        /**
+         * @return a fresh compilation that has run every phase before phase.
+         */
+        static Compilation upTo(String source, Phase phase) {
+            Compilation compilation = new Compilation(source);
+            for (Phase earlier : Phase.values()) {
+                if (earlier == phase) {
+                    break;
+                }
+                compilation.run(earlier);
+            }
+            return compilation;
+        }
+
+        Object run(Phase phase) {
+            Object result;
+            switch (phase) {
+                case LEX:
+                    MiniJavaLexer lexer = new MiniJavaLexer(new ANTLRInputStream(source));
+                    lexer.removeErrorListeners();
+                    tokens = new CommonTokenStream(lexer);
+                    tokens.fill();
+                    result = tokens;
+                    break;
+                case PARSE:
+                    MiniJavaParser parser = new MiniJavaParser(tokens);
+                    context = new CompilationContext("benchmark", errors, parser);
+                    tree = COMPILER.parse(parser, tokens, errors);
+                    result = tree;
+                    break;
+                case CLASS_NAMER:
+                    ParseTreeWalker.DEFAULT.walk(new ClassNamer(context), tree);
+                    result = context.getKlasses();
+                    break;
+                case ASSIGNMENT_LISTENER:
+                    ParseTreeWalker.DEFAULT.walk(new AssignmentListener(context), tree);
+                    result = context.getScopes();
+                    break;
+                case TYPE_CHECK:
+                    result = new TypeCheckVisitor(context).visit(tree);
+                    break;
+                case INIT_BEFORE_USE:
+                    result = new InitializationBeforeUseCheckVisitor(context).visit(tree);
+                    break;
+                case IR_BUILD:
+                    program = optimizationLevel > 0 ? new IrBuilder(context).build(tree) : null;
+                    result = program;
+                    break;
+                case OPTIMIZE:
+                    if (program != null) {
+                        new PassManager(optimizationLevel).run(program, new PhaseTimings(), new OptimizationReport(false), false);
+                    }
+                    result = program;
+                    break;
+                case CODEGEN:
+                    if (program != null) {
+                        classes = new IrCodeGenerator(program, "benchmark").generate();
+                    } else {
+                        BytecodeGenerator codeGen = new BytecodeGenerator(context);
+                        codeGen.generate(tree);
+                        classes = codeGen.getClasses();
+                    }
+                    result = classes;
+                    break;
+                case PEEPHOLE:
+                    if (program != null) {
+                        classes = new Peephole(EnumSet.allOf(Peephole.Rule.class)).optimize(classes, context.getKlasses(), new OptimizationReport(false));
+                    }
+                    result = classes;
+                    break;
+                default:
+                    throw new AssertionError(phase);
+            }
+            if (!errors.noErrors()) {
+                throw new IllegalStateException("the benchmark input does not compile: " + errors.getDiagnostics().get(0));
+            }
+            return result;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        EnumSet<Phase> phases = EnumSet.noneOf(Phase.class);
+        int[] scales = {1, 10};
+        long warmupMillis = 1000;
+        long iterationMillis = 500;
+        int iterations = 5;
+        List<File> files = new ArrayList<>();
+        List<Long> seeds = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--phase")) {
+                phases.add(Phase.valueOf(args[++i]));
+            } else if (args[i].equals("--scale")) {
+                scales = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+            } else if (args[i].equals("--warmup")) {
+                warmupMillis = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--time")) {
+                iterationMillis = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--iterations")) {
+                iterations = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--generated")) {
+                seeds.add(Long.parseLong(args[++i]));
+            } else if (args[i].equals("-O")) {
+                optimizationLevel = Integer.parseInt(args[++i]);
+            } else {
+                addFiles(new File(args[i]), files);
+            }
+        }
+        if (phases.isEmpty()) {
+            phases = EnumSet.allOf(Phase.class);
+            if (optimizationLevel == 0) {
+                phases.removeAll(EnumSet.of(Phase.IR_BUILD, Phase.OPTIMIZE, Phase.PEEPHOLE));
+            }
+        }
+        if (files.isEmpty() && seeds.isEmpty()) {
+            addFiles(new File("samples/clean"), files);
+        }
+
+        Map<String, String> inputs = new LinkedHashMap<>();
+        for (int scale : scales) {
+            for (File file : files) {
+                String source = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+                inputs.put(file.getName() + (scale > 1 ? " x" + scale : ""), scale(source, scale));
+            }
+            for (long seed : seeds) {
+                String source = new ProgramGenerator(seed).generate();
+                inputs.put("generated-" + seed + (scale > 1 ? " x" + scale : ""), scale(source, scale));
+            }
+        }
+        run(new BenchmarkHarness(warmupMillis, iterationMillis, iterations), phases, inputs);
+    }
+
+    static void run(BenchmarkHarness harness, Set<Phase> phases, Map<String, String> inputs) {
+        System.out.printf("%-20s %-24s %5s %12s %10s %6s %14s%n", "Benchmark", "Input", "Cnt", "Score", "Error", "Units", "Alloc B/op");
+        for (Phase phase : phases) {
+            for (Map.Entry<String, String> input : inputs.entrySet()) {
+                String source = input.getValue();
+                BenchmarkHarness.Result result = harness.measure(() -> Compilation.upTo(source, phase), c -> c.run(phase));
+                System.out.printf("%-20s %-24s %5d %12.3f +- %8.3f %6s %14.0f%n", phase, input.getKey(), result.ops,
+                        result.nanosPerOp / 1e3, result.errorNanos / 1e3, "us/op", result.bytesPerOp);
+            }
+        }
+    }
+
+    private static void addFiles(File file, List<File> files) {
+        File[] children = file.listFiles();
+        if (children == null) {
+            files.add(file);
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            addFiles(child, files);
+        }
+    }
+
+    /**
+     * Makes a program with copies times as many classes as source, renaming the classes of every
+     * copy so that the result still compiles.
+     */
+    static String scale(String source, int copies) {
+        MiniJavaParser parser = new MiniJavaParser(new CommonTokenStream(new MiniJavaLexer(new ANTLRInputStream(source))));
+        parser.removeErrorListeners();
+        MiniJavaParser.GoalContext goal = parser.goal();
+        int classesStart = goal.mainClass().getStop().getStopIndex() + 1;
+        Set<String> klassNames = new HashSet<>();
+        for (MiniJavaParser.ClassDeclarationContext klass : goal.classDeclaration()) {
+            klassNames.add(klass.Identifier(0).getText());
+        }
+
+        String classes = source.substring(classesStart);
+        StringBuilder scaled = new StringBuilder(source);
+        for (int copy = 1; copy < copies; copy++) {
+            MiniJavaLexer lexer = new MiniJavaLexer(new ANTLRInputStream(classes));
+            int copied = 0;
+            for (Token token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+                if (token.getType() == MiniJavaLexer.Identifier && klassNames.contains(token.getText())) {
+                    scaled.append(classes, copied, token.getStopIndex() + 1).append('_').append(copy);
+                    copied = token.getStopIndex() + 1;
+                }
+            }
+            scaled.append(classes.substring(copied));
+        }
+        return scaled.toString();
+    }
+}
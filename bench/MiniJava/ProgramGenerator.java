@@ -0,0 +1,360 @@
+package MiniJava;
+
+import java.util.*;
+
+/**
+ * Generates random, valid MiniJava programs of a configurable size from a seed. The same seed and
+ * settings always produce the same program.
+ *
+ * Generated programs also terminate: loops count up to small constants, and a method only calls
+ * methods declared at a lower position in their class, which overrides share. Array indices stay
+ * within the arrays each method allocates, so the programs run without exceptions and can be
+ * used to compare the output of differently compiled versions.
+ *
+ * Statements assign the parameters as well as the locals, and every class has a tail-recursive
+ * method whose recursive call passes constant, unchanged and changing arguments. Tail recursion
+ * elimination turns those calls into assignments to the parameters, which the passes after it
+ * must not treat like other locals.
+ */
+public class ProgramGenerator {
+    private static final int ARRAY_LENGTH = 10;
+    private static final int MAX_LOOP_NESTING = 2;
+
+    private final Random random;
+    private int classes = 4;
+    private int methodsPerClass = 4;
+    private int inheritanceDepth = 2;
+    private int localsPerMethod = 4;
+    private int expressionDepth = 3;
+    private int statementsPerMethod = 8;
+    private int callsPerMethod = 2;
+
+    private StringBuilder out;
+    private int indent;
+
+    //The method being generated
+    private int klassIndex;
+    private int level;
+    private int loopNesting;
+    private int callsLeft;
+
+    public ProgramGenerator(long seed) {
+        random = new Random(seed);
+    }
+
+    public void setClasses(int classes) {
+        this.classes = classes;
+    }
+
+    public void setMethodsPerClass(int methodsPerClass) {
+        this.methodsPerClass = methodsPerClass;
+    }
+
+    /**
+     * Classes form chains of at most this many subclasses below a root class.
+     */
+    public void setInheritanceDepth(int inheritanceDepth) {
+        this.inheritanceDepth = inheritanceDepth;
+    }
+
+    /**
+     * The number of int locals in each method, at least one.
+     */
+    public void setLocalsPerMethod(int localsPerMethod) {
+        this.localsPerMethod = Math.max(1, localsPerMethod);
+    }
+
+    public void setExpressionDepth(int expressionDepth) {
+        this.expressionDepth = expressionDepth;
+    }
+
+    /**
+     * The number of statements at the top level of each method body; nested blocks add more.
+     */
+    public void setStatementsPerMethod(int statementsPerMethod) {
+        this.statementsPerMethod = statementsPerMethod;
+    }
+
+    public void setCallsPerMethod(int callsPerMethod) {
+        this.callsPerMethod = callsPerMethod;
+    }
+
+    public String generate() {
+        out = new StringBuilder();
+        indent = 0;
+        line("class Generated {");
+        line("    public static void main(String[] a) {");
+        indent = 2;
+        line("{");
+        for (int k = 0; k < classes; k++) {
+            line("    System.out.println(new C" + k + "()." + methodName(k, methodsPerClass - 1) + "(" + random.nextInt(10) + ", " + random.nextInt(10) + "));");
+        }
+        for (int k = 0; k < classes; k++) {
+            line("    System.out.println(new C" + k + "().T" + k + "(" + random.nextInt(6) + ", " + random.nextInt(10) + ", " + random.nextInt(10) + "));");
+        }
+        line("}");
+        indent = 0;
+        line("    }");
+        line("}");
+        for (int k = 0; k < classes; k++) {
+            klass(k);
+        }
+        return out.toString();
+    }
+
+    private int superKlass(int k) {
+        return k % (inheritanceDepth + 1) == 0 ? -1 : k - 1;
+    }
+
+    /**
+     * Methods at even positions override the method at the same position in every superclass;
+     * the others are only declared once.
+     */
+    private String methodName(int k, int position) {
+        return position % 2 == 0 ? "M" + position : "K" + k + "_" + position;
+    }
+
+    private void klass(int k) {
+        klassIndex = k;
+        line("");
+        line("class C" + k + (superKlass(k) >= 0 ? " extends C" + superKlass(k) : "") + " {");
+        indent++;
+        line("int f" + k + ";");
+        line("boolean g" + k + ";");
+        for (int position = 0; position < methodsPerClass; position++) {
+            method(position);
+        }
+        tailRecursiveMethod();
+        indent--;
+        line("}");
+    }
+
+    private void method(int position) {
+        level = position;
+        loopNesting = 0;
+        callsLeft = callsPerMethod;
+        line("");
+        line("public int " + methodName(klassIndex, position) + "(int p0, int p1) {");
+        indent++;
+        for (int i = 0; i < localsPerMethod; i++) {
+            line("int v" + i + ";");
+        }
+        line("boolean b;");
+        line("int[] a;");
+        for (int i = 0; i < MAX_LOOP_NESTING; i++) {
+            line("int i" + i + ";");
+        }
+        for (int i = 0; i < localsPerMethod; i++) {
+            line("v" + i + " = " + random.nextInt(100) + ";");
+        }
+        line("b = " + random.nextBoolean() + ";");
+        line("a = new int[" + ARRAY_LENGTH + "];");
+        for (int i = 0; i < MAX_LOOP_NESTING; i++) {
+            line("i" + i + " = 0;");
+        }
+        for (int i = 0; i < statementsPerMethod; i++) {
+            statement(1);
+        }
+        StringBuilder result = new StringBuilder("a[" + random.nextInt(ARRAY_LENGTH) + "]");
+        for (int i = 0; i < localsPerMethod; i++) {
+            result.append(" + v").append(i);
+        }
+        line("return " + result + ";");
+        indent--;
+        line("}");
+    }
+
+    /**
+     * A method that recurses n times, each time from its tail, possibly adding to the result.
+     */
+    private void tailRecursiveMethod() {
+        String[] first = {Integer.toString(random.nextInt(100)), "p1 * 2", "p0 + 1"};
+        String[] second = {Integer.toString(random.nextInt(100)), "p1", "p0 - p1"};
+        String call = "this.T" + klassIndex + "(n - 1, " + first[random.nextInt(3)] + ", " + second[random.nextInt(3)] + ")";
+        line("");
+        line("public int T" + klassIndex + "(int n, int p0, int p1) {");
+        indent++;
+        line("int r;");
+        line("if (n < 1) r = p0 * 3 + p1; else r = " + (random.nextBoolean() ? "p0 + " + call : call) + ";");
+        line("return r;");
+        indent--;
+        line("}");
+    }
+
+    private void statement(int blockDepth) {
+        int choice = random.nextInt(blockDepth < 3 ? 10 : 7);
+        switch (choice) {
+            case 0:
+            case 1:
+                line(intTarget() + " = " + intExpression(expressionDepth) + ";");
+                break;
+            case 2:
+                line("f" + visibleField() + " = " + intExpression(expressionDepth) + ";");
+                break;
+            case 3:
+                line("a[" + arrayIndex() + "] = " + intExpression(expressionDepth) + ";");
+                break;
+            case 4:
+                line("b = " + booleanExpression(expressionDepth) + ";");
+                break;
+            case 5:
+                line("System.out.println(" + intExpression(expressionDepth) + ");");
+                break;
+            case 6:
+                String call = call();
+                line(call != null ? intVariable() + " = " + call + ";" : "b = !b;");
+                break;
+            case 7:
+            case 8:
+                line("if (" + booleanExpression(expressionDepth) + ") {");
+                block(blockDepth);
+                line("} else {");
+                block(blockDepth);
+                line("}");
+                break;
+            default:
+                if (loopNesting == MAX_LOOP_NESTING) {
+                    line("g" + visibleField() + " = " + booleanExpression(expressionDepth) + ";");
+                    break;
+                }
+                String counter = "i" + loopNesting;
+                line(counter + " = 0;");
+                line("while (" + counter + " < " + (1 + random.nextInt(5)) + ") {");
+                loopNesting++;
+                block(blockDepth);
+                line("    " + counter + " = " + counter + " + 1;");
+                loopNesting--;
+                line("}");
+        }
+    }
+
+    private void block(int blockDepth) {
+        indent++;
+        int statements = 1 + random.nextInt(3);
+        for (int i = 0; i < statements; i++) {
+            statement(blockDepth + 1);
+        }
+        indent--;
+    }
+
+    private String intExpression(int depth) {
+        if (depth == 0) {
+            switch (random.nextInt(7)) {
+                case 0:
+                case 1:
+                    return Integer.toString(random.nextInt(100));
+                case 2:
+                    return "p" + random.nextInt(2);
+                case 3:
+                    return "f" + visibleField();
+                case 4:
+                    return "a[" + arrayIndex() + "]";
+                case 5:
+                    return "a.length";
+                default:
+                    return intVariable();
+            }
+        }
+        switch (random.nextInt(8)) {
+            case 0:
+                return intExpression(depth - 1) + " + " + intExpression(depth - 1);
+            case 1:
+                return intExpression(depth - 1) + " - " + intExpression(depth - 1);
+            case 2:
+                return intExpression(depth - 1) + " * " + intExpression(depth - 1);
+            case 3:
+                return "(" + intExpression(depth - 1) + ")";
+            case 4:
+                return "(" + intExpression(depth - 1) + ") ** " + random.nextInt(4);
+            case 5:
+                String call = call();
+                return call != null ? call : intExpression(0);
+            default:
+                return intExpression(0);
+        }
+    }
+
+    private String booleanExpression(int depth) {
+        if (depth == 0) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    return Boolean.toString(random.nextBoolean());
+                case 1:
+                    return "g" + visibleField();
+                default:
+                    return "b";
+            }
+        }
+        switch (random.nextInt(5)) {
+            case 0:
+            case 1:
+                return intExpression(depth - 1) + " < " + intExpression(depth - 1);
+            case 2:
+                return "!(" + booleanExpression(depth - 1) + ")";
+            case 3:
+                return "(" + booleanExpression(depth - 1) + ") && (" + booleanExpression(depth - 1) + ")";
+            default:
+                return booleanExpression(0);
+        }
+    }
+
+    /**
+     * @return a call of a method at a lower position than the current one, on this or on a new
+     * object, or null if the method has made all its calls.
+     */
+    private String call() {
+        if (callsLeft == 0 || level == 0) {
+            return null;
+        }
+        callsLeft--;
+        int position = random.nextInt(level);
+        String arguments = "(" + intExpression(Math.min(1, expressionDepth)) + ", " + intExpression(0) + ")";
+        if (random.nextBoolean()) {
+            //Inherited methods are at the same positions as in the subclass
+            List<Integer> hierarchy = new ArrayList<>();
+            for (int k = klassIndex; k >= 0; k = superKlass(k)) {
+                hierarchy.add(k);
+            }
+            int owner = hierarchy.get(random.nextInt(hierarchy.size()));
+            return "this." + methodName(owner, position) + arguments;
+        }
+        int k = random.nextInt(classes);
+        return "new C" + k + "()." + methodName(k, position) + arguments;
+    }
+
+    private int visibleField() {
+        int k = klassIndex;
+        while (superKlass(k) >= 0 && random.nextBoolean()) {
+            k = superKlass(k);
+        }
+        return k;
+    }
+
+    private String intVariable() {
+        return "v" + random.nextInt(localsPerMethod);
+    }
+
+    /**
+     * @return a local or, less often, a parameter to assign.
+     */
+    private String intTarget() {
+        return random.nextInt(4) == 0 ? "p" + random.nextInt(2) : intVariable();
+    }
+
+    /**
+     * @return an index that is always within the bounds of a.
+     */
+    private String arrayIndex() {
+        if (loopNesting > 0 && random.nextBoolean()) {
+            return "i" + random.nextInt(loopNesting);
+        }
+        return Integer.toString(random.nextInt(ARRAY_LENGTH));
+    }
+
+    private void line(String text) {
+        for (int i = 0; i < indent && !text.isEmpty(); i++) {
+            out.append("    ");
+        }
+        out.append(text).append('\n');
+    }
+}
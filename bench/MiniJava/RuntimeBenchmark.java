@@ -0,0 +1,195 @@
+package MiniJava;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Measures how fast the code the compiler generates runs: every program is compiled in memory,
+ * loaded, and its main method timed with System.out discarded.
+ *
+ * usage: RuntimeBenchmark [--warmup ms] [--time ms] [--iterations n] [-O level]
+ *                         [--memoize entries] [--memo-counters] [--generated seed]...
+ *                         [file or directory]...
+ *
+ * Defaults to samples/clean, compiled at optimization level 1. With --memoize, every operation
+ * starts with empty method caches, so that it measures one run of the program rather than the
+ * results left by earlier ones. --memo-counters also has the caches count their hits and misses,
+ * which follow the score of a program, totalled over the whole run.
+ */
+public class RuntimeBenchmark {
+
+    /**
+     * Defines the classes of one compilation, and nothing else.
+     */
+    static final class CompiledProgramLoader extends ClassLoader {
+        private final Map<String, byte[]> classes;
+
+        CompiledProgramLoader(Map<String, byte[]> classes) {
+            super(RuntimeBenchmark.class.getClassLoader());
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classes.get(name);
+            if (bytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        long warmupMillis = 1000;
+        long iterationMillis = 500;
+        int iterations = 5;
+        int optimizationLevel = 1;
+        int memoEntries = 0;
+        boolean memoCounters = false;
+        List<File> files = new ArrayList<>();
+        List<Long> seeds = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--warmup")) {
+                warmupMillis = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--time")) {
+                iterationMillis = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--iterations")) {
+                iterations = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--generated")) {
+                seeds.add(Long.parseLong(args[++i]));
+            } else if (args[i].equals("-O")) {
+                optimizationLevel = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--memoize")) {
+                memoEntries = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--memo-counters")) {
+                memoCounters = true;
+            } else {
+                files.add(new File(args[i]));
+            }
+        }
+        if (files.isEmpty() && seeds.isEmpty()) {
+            files.add(new File("samples/clean"));
+        }
+
+        Map<String, String> inputs = new LinkedHashMap<>();
+        for (File file : files) {
+            addInputs(file, inputs);
+        }
+        for (long seed : seeds) {
+            inputs.put("generated-" + seed, new ProgramGenerator(seed).generate());
+        }
+
+        Compiler compiler = new Compiler();
+        compiler.setOptimizationLevel(optimizationLevel);
+        compiler.setMemoEntries(memoEntries);
+        compiler.setMemoCounters(memoCounters);
+        BenchmarkHarness harness = new BenchmarkHarness(warmupMillis, iterationMillis, iterations);
+        PrintStream out = System.out;
+        out.printf("%-24s %5s %12s %10s %6s %14s%n", "Program", "Cnt", "Score", "Error", "Units", "Alloc B/op");
+        for (Map.Entry<String, String> input : inputs.entrySet()) {
+            CompilationResult result = compiler.compile(input.getKey(), input.getValue());
+            if (!result.isSuccess()) {
+                throw new IllegalStateException("the benchmark input does not compile:" + result.getDiagnostics());
+            }
+            Method main = mainMethod(result.getClasses());
+            List<int[]> memoTables = memoTables(main, result.getClasses().keySet());
+
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            }));
+            BenchmarkHarness.Result score;
+            try {
+                score = harness.measure(() -> {
+                    for (int[] table : memoTables) {
+                        Arrays.fill(table, 0);
+                    }
+                    return main;
+                }, RuntimeBenchmark::run);
+            } finally {
+                System.setOut(out);
+            }
+            out.printf("%-24s %5d %12.3f +- %8.3f %6s %14.0f%n", input.getKey(), score.ops,
+                    score.nanosPerOp / 1e3, score.errorNanos / 1e3, "us/op", score.bytesPerOp);
+            if (memoCounters) {
+                printMemoCounters(main, result.getClasses().keySet(), out);
+            }
+        }
+    }
+
+    /**
+     * @return the caches of the memoized methods, see Memoization, which are static and would
+     * otherwise answer every operation after the first from the results of the earlier ones.
+     */
+    private static List<int[]> memoTables(Method main, Set<String> classes) throws ReflectiveOperationException {
+        List<int[]> tables = new ArrayList<>();
+        for (String name : classes) {
+            Class<?> klass = main.getDeclaringClass().getClassLoader().loadClass(name);
+            for (Field table : klass.getDeclaredFields()) {
+                if (table.getName().endsWith("-memo")) {
+                    table.setAccessible(true);
+                    tables.add((int[]) table.get(null));
+                }
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Prints the counters that the caches of memoized methods keep in static fields, see
+     * Memoization.
+     */
+    private static void printMemoCounters(Method main, Set<String> classes, PrintStream out) throws ReflectiveOperationException {
+        for (String name : classes) {
+            Class<?> klass = main.getDeclaringClass().getClassLoader().loadClass(name);
+            for (Field hits : klass.getDeclaredFields()) {
+                if (hits.getName().endsWith("-memoHits")) {
+                    String method = hits.getName().substring(0, hits.getName().length() - "-memoHits".length());
+                    Field misses = klass.getDeclaredField(method + "-memoMisses");
+                    hits.setAccessible(true);
+                    misses.setAccessible(true);
+                    out.printf("  %s.%s: %d hits, %d misses%n", name, method, hits.getLong(null), misses.getLong(null));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the main method of the main class, which the compiler always emits first.
+     */
+    static Method mainMethod(Map<String, byte[]> classes) throws ReflectiveOperationException {
+        ClassLoader loader = new CompiledProgramLoader(classes);
+        String mainClass = classes.keySet().iterator().next();
+        return loader.loadClass(mainClass).getMethod("main", String[].class);
+    }
+
+    private static Object run(Method main) {
+        try {
+            return main.invoke(null, (Object) new String[0]);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void addInputs(File file, Map<String, String> inputs) throws IOException {
+        File[] children = file.listFiles();
+        if (children == null) {
+            inputs.put(file.getName(), new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            addInputs(child, inputs);
+        }
+    }
+}
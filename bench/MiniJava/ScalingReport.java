@@ -0,0 +1,148 @@
+package MiniJava;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+
+/**
+ * Reports how the time of every compiler phase grows with the size of generated programs, one
+ * program dimension at a time. For each dimension the last row gives the empirical exponent k
+ * of time ~ size^k, fitted over all sizes; phases with k noticeably above 1 are marked as
+ * super-linear.
+ *
+ * Size is the token count, except for the inheritance depth, which keeps the program size fixed
+ * and uses the length of the superclass chains instead.
+ *
+ * usage: ScalingReport [--seed n] [--warmup ms] [--time ms] [--iterations n] [DIMENSION]...
+ */
+public class ScalingReport {
+    private static final double SUPER_LINEAR = 1.25;
+
+    enum Dimension {
+        CLASSES(4, 8, 16, 32, 64) {
+            void apply(ProgramGenerator generator, int value) {
+                generator.setClasses(value);
+            }
+        },
+        METHODS_PER_CLASS(2, 4, 8, 16, 32) {
+            void apply(ProgramGenerator generator, int value) {
+                generator.setMethodsPerClass(value);
+            }
+        },
+        INHERITANCE_DEPTH(0, 3, 7, 15, 31) {
+            void apply(ProgramGenerator generator, int value) {
+                generator.setClasses(32);
+                generator.setInheritanceDepth(value);
+            }
+        },
+        LOCALS_PER_METHOD(2, 4, 8, 16, 32, 64) {
+            void apply(ProgramGenerator generator, int value) {
+                generator.setLocalsPerMethod(value);
+            }
+        },
+        EXPRESSION_DEPTH(1, 2, 3, 4, 5, 6) {
+            void apply(ProgramGenerator generator, int value) {
+                generator.setExpressionDepth(value);
+            }
+        },
+        STATEMENTS_PER_METHOD(4, 8, 16, 32, 64) {
+            void apply(ProgramGenerator generator, int value) {
+                generator.setStatementsPerMethod(value);
+            }
+        };
+
+        final int[] values;
+
+        Dimension(int... values) {
+            this.values = values;
+        }
+
+        abstract void apply(ProgramGenerator generator, int value);
+    }
+
+    public static void main(String[] args) {
+        long seed = 1;
+        long warmupMillis = 200;
+        long iterationMillis = 200;
+        int iterations = 3;
+        java.util.List<Dimension> dimensions = new java.util.ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--seed")) {
+                seed = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--warmup")) {
+                warmupMillis = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--time")) {
+                iterationMillis = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--iterations")) {
+                iterations = Integer.parseInt(args[++i]);
+            } else {
+                dimensions.add(Dimension.valueOf(args[i]));
+            }
+        }
+        if (dimensions.isEmpty()) {
+            dimensions.addAll(java.util.Arrays.asList(Dimension.values()));
+        }
+
+        BenchmarkHarness harness = new BenchmarkHarness(warmupMillis, iterationMillis, iterations);
+        Phase[] phases = Phase.values();
+        for (Dimension dimension : dimensions) {
+            //Generate and lex every program up front, so that no runtime warnings end up in the table
+            String[] sources = new String[dimension.values.length];
+            int[] tokens = new int[sources.length];
+            for (int v = 0; v < sources.length; v++) {
+                ProgramGenerator generator = new ProgramGenerator(seed);
+                dimension.apply(generator, dimension.values[v]);
+                sources[v] = generator.generate();
+                tokens[v] = new CommonTokenStream(new MiniJavaLexer(new ANTLRInputStream(sources[v]))).getNumberOfOnChannelTokens();
+            }
+
+            System.out.printf("%n%s%n%6s %7s %8s", dimension, "value", "lines", "tokens");
+            for (Phase phase : phases) {
+                System.out.printf(" %12s", phase.toString().length() > 12 ? phase.toString().substring(0, 12) : phase);
+            }
+            System.out.println("   (us/op)");
+
+            double[][] times = new double[phases.length][sources.length];
+            double[] sizes = new double[sources.length];
+            for (int v = 0; v < sources.length; v++) {
+                String source = sources[v];
+                System.out.printf("%6d %7d %8d", dimension.values[v], source.split("\n").length, tokens[v]);
+                for (int p = 0; p < phases.length; p++) {
+                    Phase phase = phases[p];
+                    times[p][v] = harness.measure(() -> PhaseBenchmark.Compilation.upTo(source, phase), c -> c.run(phase)).nanosPerOp / 1e3;
+                    System.out.printf(" %12.1f", times[p][v]);
+                }
+                System.out.println();
+                sizes[v] = dimension == Dimension.INHERITANCE_DEPTH ? dimension.values[v] + 1 : tokens[v];
+            }
+
+            System.out.printf("%23s", "exponent");
+            for (int p = 0; p < phases.length; p++) {
+                double exponent = exponent(sizes, times[p]);
+                System.out.printf(" %11.2f%s", exponent, exponent > SUPER_LINEAR ? "*" : " ");
+            }
+            System.out.println();
+        }
+        System.out.println("\n* super-linear: time grows faster than size^" + SUPER_LINEAR);
+    }
+
+    /**
+     * @return the slope of the least-squares line through the points (log size, log time), which
+     * is less sensitive to a single noisy measurement than the ratio of two of them.
+     */
+    static double exponent(double[] sizes, double[] times) {
+        double meanX = 0;
+        double meanY = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            meanX += Math.log(sizes[i]) / sizes.length;
+            meanY += Math.log(times[i]) / sizes.length;
+        }
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            double dx = Math.log(sizes[i]) - meanX;
+            covariance += dx * (Math.log(times[i]) - meanY);
+            variance += dx * dx;
+        }
+        return covariance / variance;
+    }
+}
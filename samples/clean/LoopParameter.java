@@ -0,0 +1,22 @@
+class LoopParameter{
+    public static void main(String[] a){
+	System.out.println(new LP().Sum(1, 10));
+    }
+}
+
+class LP {
+
+    public int Sum(int step, int next){
+	int sum ;
+	int i ;
+	sum = 0 ;
+	i = 0 ;
+	while (i < 3) {
+	    sum = sum + step ;
+	    step = next + 1 ;
+	    i = i + 1 ;
+	}
+	return sum ;
+    }
+
+}
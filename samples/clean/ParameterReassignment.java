@@ -0,0 +1,16 @@
+class ParameterReassignment{
+    public static void main(String[] a){
+	System.out.println(new PR().Swap(3));
+    }
+}
+
+class PR {
+
+    public int Swap(int num){
+	int old ;
+	old = num ;
+	num = 5 ;
+	return old + num ;
+    }
+
+}
@@ -0,0 +1,18 @@
+class TailCallArguments{
+    public static void main(String[] a){
+	System.out.println(new TCA().Rotate(0, 7, 9));
+    }
+}
+
+class TCA {
+
+    public int Rotate(int num, int first, int second){
+	int result ;
+	if (num < 1)
+	    result = first ;
+	else
+	    result = this.Rotate(num - 1, second * 2, second) ;
+	return result ;
+    }
+
+}
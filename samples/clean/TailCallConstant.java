@@ -0,0 +1,21 @@
+class TailCallConstant{
+    public static void main(String[] a){
+	{
+	    System.out.println(new TCC().Count(0, 7));
+	    System.out.println(new TCC().Count(4, 7));
+	}
+    }
+}
+
+class TCC {
+
+    public int Count(int num, int acc){
+	int result ;
+	if (num < 1)
+	    result = acc ;
+	else
+	    result = this.Count(num - 1, 5) ;
+	return result ;
+    }
+
+}
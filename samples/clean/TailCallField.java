@@ -0,0 +1,20 @@
+class TailCallField{
+    public static void main(String[] a){
+	System.out.println(new TCF().Count(2));
+    }
+}
+
+class TCF {
+    int calls ;
+
+    public int Count(int num){
+	int result ;
+	calls = calls + 1 ;
+	if (num < 1)
+	    result = 1 ;
+	else
+	    result = this.Count(num - 1) + calls ;
+	return result ;
+    }
+
+}
@@ -0,0 +1,79 @@
+package MiniJava;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * A least-recently-used cache of compilation results, bounded by the total size of the class
+ * files and diagnostics it holds. Results are keyed by a SHA-256 hash of the source text and the
+ * file name, since the file name appears in every diagnostic.
+ */
+public class ArtifactCache {
+    private final long capacityBytes;
+    private long sizeBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private final LinkedHashMap<String, CompilationResult> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    public ArtifactCache(long capacityBytes) {
+        this.capacityBytes = capacityBytes;
+    }
+
+    public static String key(String fileName, String source) {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException(nsae);
+        }
+        sha256.update(fileName.getBytes(StandardCharsets.UTF_8));
+        sha256.update((byte) 0);
+        byte[] digest = sha256.digest(source.getBytes(StandardCharsets.UTF_8));
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest) {
+            key.append(String.format("%02x", b));
+        }
+        return key.toString();
+    }
+
+    public synchronized CompilationResult get(String key) {
+        CompilationResult result = entries.get(key);
+        if (result == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return result;
+    }
+
+    public synchronized void put(String key, CompilationResult result) {
+        long size = sizeOf(result);
+        if (size > capacityBytes) {
+            return;
+        }
+        CompilationResult previous = entries.put(key, result);
+        if (previous != null) {
+            sizeBytes -= sizeOf(previous);
+        }
+        sizeBytes += size;
+        Iterator<CompilationResult> leastRecentlyUsed = entries.values().iterator();
+        while (sizeBytes > capacityBytes) {
+            sizeBytes -= sizeOf(leastRecentlyUsed.next());
+            leastRecentlyUsed.remove();
+        }
+    }
+
+    public synchronized String toString() {
+        return entries.size() + " entries, " + sizeBytes + "/" + capacityBytes + " bytes, " + hits + " hits, " + misses + " misses";
+    }
+
+    private static long sizeOf(CompilationResult result) {
+        long size = 2L * result.getDiagnostics().length();
+        for (Map.Entry<String, byte[]> klass : result.getClasses().entrySet()) {
+            size += 2L * klass.getKey().length() + klass.getValue().length;
+        }
+        return size;
+    }
+}
@@ -10,11 +10,13 @@ class AssignmentListener extends MiniJavaBaseListener {
     private ParseTreeProperty<Scope> scopes;
     private Scope currentScope = null;
     private boolean isField;
+    private final ErrorStrategy errors;
 
-    AssignmentListener(final Map<String, Klass> klasses, ParseTreeProperty<Scope> scopes, MiniJavaParser parser) {
-        this.scopes = scopes;
-        this.klasses = klasses;
-        this.parser = parser;
+    AssignmentListener(CompilationContext context) {
+        this.scopes = context.getScopes();
+        this.klasses = context.getKlasses();
+        this.parser = context.getParser();
+        this.errors = context.getErrors();
     }
 
     private void saveScope(ParserRuleContext ctx, Scope s) {
@@ -37,16 +39,16 @@ class AssignmentListener extends MiniJavaBaseListener {
         if (ctx.Identifier().size() > 1) {
             superKlass = klasses.get(ctx.Identifier(1).getText());
             if (superKlass == null) {
-                ErrorStrategy.reportFileNameAndLineNumber(ctx.Identifier(1).getSymbol());
-                System.err.println("error: cannot find symbol.");
-                ErrorStrategy.reportUnderlineError(parser, ctx.Identifier(1).getSymbol());
-                System.err.println("symbol:   class " + ctx.Identifier(1).getText());
+                errors.reportFileNameAndLineNumber(ctx.Identifier(1).getSymbol());
+                errors.err().println("error: cannot find symbol.");
+                errors.reportUnderlineError(parser, ctx.Identifier(1).getSymbol());
+                errors.err().println("symbol:   class " + ctx.Identifier(1).getText());
             }
         } else {
             superKlass = null;
         }
         klass.superKlass = superKlass;
-        ErrorStrategy.reportCyclicInheritanceError(parser, ctx, klass);
+        errors.reportCyclicInheritanceError(parser, ctx, klass);
     }
 
     @Override
@@ -69,7 +71,7 @@ class AssignmentListener extends MiniJavaBaseListener {
         String typeName = ctx.type().getText();
         String varName = ctx.Identifier().getText();
         if (currentScope.lookupLocally(varName) != null) {
-            ErrorStrategy.reportSymbolAlreadyDefinedError(parser, ctx.Identifier().getSymbol(), "variable", varName, currentScope.getScopeName());
+            errors.reportSymbolAlreadyDefinedError(parser, ctx.Identifier().getSymbol(), "variable", varName, currentScope.getScopeName());
         }
         currentScope.define(new Symbol(varName, klasses.get(typeName), isField));
     }
@@ -78,7 +80,7 @@ class AssignmentListener extends MiniJavaBaseListener {
     public void enterMethodDeclaration(MiniJavaParser.MethodDeclarationContext ctx) {
         Klass returnType = klasses.get(ctx.type().getText());
         if (returnType == null) {
-            ErrorStrategy.reportFullError(parser, ctx.type().Identifier().getSymbol(),
+            errors.reportFullError(parser, ctx.type().Identifier().getSymbol(),
                     "error: cannot find symbol.",
                     "symbol:   class " + ctx.type().getText(),
                     "location: class " + currentScope.getScopeName()
@@ -86,7 +88,7 @@ class AssignmentListener extends MiniJavaBaseListener {
         }
         String methodName = Method.getMethodSignature(ctx);
         if (currentScope.lookupLocally(methodName) != null) {
-            ErrorStrategy.reportSymbolAlreadyDefinedError(parser, ctx.Identifier().getSymbol(), "method", methodName, currentScope.getScopeName());
+            errors.reportSymbolAlreadyDefinedError(parser, ctx.Identifier().getSymbol(), "method", methodName, currentScope.getScopeName());
         }
         Scope owner = currentScope;
         Method method = new Method(returnType, methodName, owner);
@@ -105,7 +107,7 @@ class AssignmentListener extends MiniJavaBaseListener {
         Klass parameterType = klasses.get(ctx.type().getText());
         Symbol parameter;
         if (parameterType == null) {
-            ErrorStrategy.reportFullError(parser, ctx.type().Identifier().getSymbol(),
+            errors.reportFullError(parser, ctx.type().Identifier().getSymbol(),
                     "error: cannot find symbol.",
                     "symbol:   class " + ctx.type().getText(),
                     "location: class " + currentScope.getEnclosingScope().getScopeName()
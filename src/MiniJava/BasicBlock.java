@@ -0,0 +1,86 @@
+package MiniJava;
+
+import java.util.*;
+
+/**
+ * A straight-line sequence of statements, left through exactly one exit: a jump to another
+ * block, a two-way branch on a condition, or a return from the method.
+ */
+public final class BasicBlock {
+    public enum Exit {GOTO, BRANCH, RETURN}
+
+    private final int id;
+    private final List<IrStatement> statements = new ArrayList<>();
+    private Exit exit;
+    //BRANCH: the condition; RETURN: the value returned, or null in main
+    private IrExpression exitValue;
+    //GOTO: the next block; BRANCH: the block when the condition is true
+    private BasicBlock target;
+    //BRANCH: the block when the condition is false
+    private BasicBlock elseTarget;
+
+    BasicBlock(int id) {
+        this.id = id;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public List<IrStatement> getStatements() {
+        return statements;
+    }
+
+    public Exit getExit() {
+        return exit;
+    }
+
+    public IrExpression getExitValue() {
+        return exitValue;
+    }
+
+    public void setExitValue(IrExpression exitValue) {
+        this.exitValue = exitValue;
+    }
+
+    public BasicBlock getTarget() {
+        return target;
+    }
+
+    public BasicBlock getElseTarget() {
+        return elseTarget;
+    }
+
+    public void jumpTo(BasicBlock target) {
+        setExit(Exit.GOTO, null, target, null);
+    }
+
+    public void branch(IrExpression condition, BasicBlock ifTrue, BasicBlock ifFalse) {
+        setExit(Exit.BRANCH, condition, ifTrue, ifFalse);
+    }
+
+    public void returnValue(IrExpression value) {
+        setExit(Exit.RETURN, value, null, null);
+    }
+
+    private void setExit(Exit exit, IrExpression exitValue, BasicBlock target, BasicBlock elseTarget) {
+        this.exit = exit;
+        this.exitValue = exitValue;
+        this.target = target;
+        this.elseTarget = elseTarget;
+    }
+
+    public List<BasicBlock> getSuccessors() {
+        if (exit == Exit.GOTO) {
+            return Collections.singletonList(target);
+        } else if (exit == Exit.BRANCH) {
+            return Arrays.asList(target, elseTarget);
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public String toString() {
+        return "B" + id;
+    }
+}
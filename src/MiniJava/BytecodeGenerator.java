@@ -1,12 +1,16 @@
 package MiniJava;
 
 import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
 import org.antlr.v4.runtime.tree.ParseTreeProperty;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.TerminalNode;
 import org.objectweb.asm.*;
 import org.objectweb.asm.commons.GeneratorAdapter;
 
 import java.util.*;
-import java.io.*;
+import java.io.PrintStream;
 
 /*
 The ClassWriter class is a subclass of the ClassVisitor abstract class
@@ -22,23 +26,39 @@ public class BytecodeGenerator extends MiniJavaBaseListener implements Opcodes {
     }
 
     MiniJavaParser parser;
+    final String fileName;
     final Map<String, Klass> klasses;
     ParseTreeProperty<Scope> scopes;
     ParseTreeProperty<Klass> callerTypes;
     Scope currentScope = null;
-    FileOutputStream fileOutputStream;
+    Map<String, byte[]> classes = new LinkedHashMap<>();
     Stack<Label> labelStack = new Stack<>();
+    //Expressions already generated by hand, which the walk over the tree must skip
+    final Set<ParseTree> generated = new HashSet<>();
+    final ParseTreeWalker walker = new ParseTreeWalker() {
+        @Override
+        public void walk(ParseTreeListener listener, ParseTree t) {
+            if (!generated.remove(t)) {
+                super.walk(listener, t);
+            }
+        }
+    };
     int argumentCount;
 
     ClassWriter cw;
+    String klassName;
+    boolean powHelperUsed;
+    int powScratch;
+    ClassCompiledEvent classEvent;
     GeneratorAdapter mg;
     org.objectweb.asm.commons.Method currentMethod;
 
-    public BytecodeGenerator(final Map<String, Klass> klasses, final ParseTreeProperty<Scope> scopes, final ParseTreeProperty<Klass> callerTypes, final MiniJavaParser parser) {
-        this.klasses = klasses;
-        this.scopes = scopes;
-        this.callerTypes = callerTypes;
-        this.parser = parser;
+    public BytecodeGenerator(final CompilationContext context) {
+        this.klasses = context.getKlasses();
+        this.scopes = context.getScopes();
+        this.callerTypes = context.getCallerTypes();
+        this.parser = context.getParser();
+        this.fileName = context.getFileName();
     }
 
     /* main class, enter*/
@@ -47,8 +67,12 @@ public class BytecodeGenerator extends MiniJavaBaseListener implements Opcodes {
         Klass mainKlass = klasses.get(ctx.Identifier(0).getText());
         String mainKlassName = mainKlass.getScopeName();
 
-        cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
-        cw.visit(V1_1, ACC_PUBLIC, mainKlassName, null, "java/lang/Object", null);
+        classEvent = new ClassCompiledEvent();
+        classEvent.begin();
+        cw = new KlassWriter(klasses);
+        cw.visit(V17, ACC_PUBLIC + ACC_SUPER, mainKlassName, null, "java/lang/Object", null);
+        klassName = mainKlassName;
+        powHelperUsed = false;
 
         mg = new GeneratorAdapter(ACC_PUBLIC, INIT(), null, null, cw);
         mg.loadThis();
@@ -56,26 +80,18 @@ public class BytecodeGenerator extends MiniJavaBaseListener implements Opcodes {
         mg.returnValue();
         mg.endMethod();
         mg = new GeneratorAdapter(ACC_PUBLIC + ACC_STATIC, org.objectweb.asm.commons.Method.getMethod("void main (String[])"), null, null, cw);
+        powScratch = -1;
     }
 
     @Override
     public void exitMainClass(MiniJavaParser.MainClassContext ctx) {
         mg.returnValue();
         mg.endMethod();
+        generatePowHelper();
         cw.visitEnd();
         Klass mainKlass = klasses.get(ctx.Identifier(0).getText());
         String mainKlassName = mainKlass.getScopeName();
-        try {
-            fileOutputStream = new FileOutputStream(new File(mainKlassName + ".class"));
-            fileOutputStream.write(cw.toByteArray());
-            fileOutputStream.close();
-        } catch (FileNotFoundException fnfe) {
-            fnfe.printStackTrace();
-            System.exit(1);
-        } catch (IOException ioe) {
-            ioe.printStackTrace();
-            System.exit(1);
-        }
+        emitClass(mainKlassName, ctx);
     }
 
     /* classes */
@@ -86,8 +102,12 @@ public class BytecodeGenerator extends MiniJavaBaseListener implements Opcodes {
         String klassName = klass.getScopeName();
         String superKlassName = klass.getSuperKlass() != null ? klass.getSuperKlass().getScopeName() : "java/lang/Object";
 
-        cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
-        cw.visit(V1_1, ACC_PUBLIC, klassName, null, superKlassName, null);
+        classEvent = new ClassCompiledEvent();
+        classEvent.begin();
+        cw = new KlassWriter(klasses);
+        cw.visit(V17, ACC_PUBLIC + ACC_SUPER, klassName, null, superKlassName, null);
+        this.klassName = klassName;
+        powHelperUsed = false;
 
         mg = new GeneratorAdapter(ACC_PUBLIC, INIT(), null, null, cw);
         mg.loadThis();
@@ -99,20 +119,11 @@ public class BytecodeGenerator extends MiniJavaBaseListener implements Opcodes {
 
     @Override
     public void exitClassDeclaration(MiniJavaParser.ClassDeclarationContext ctx) {
+        generatePowHelper();
         cw.visitEnd();
         Klass klass = klasses.get(ctx.Identifier(0).getText());
         String klassName = klass.getScopeName();
-        try {
-            fileOutputStream = new FileOutputStream(new File(klassName + ".class"));
-            fileOutputStream.write(cw.toByteArray());
-            fileOutputStream.close();
-        } catch (FileNotFoundException fnfe) {
-            fnfe.printStackTrace();
-            System.exit(1);
-        } catch (IOException ioe) {
-            ioe.printStackTrace();
-            System.exit(1);
-        }
+        emitClass(klassName, ctx);
         exitScope();
     }
 
@@ -144,6 +155,7 @@ public class BytecodeGenerator extends MiniJavaBaseListener implements Opcodes {
         Method methodRepresentation = (Method) currentScope;
         currentMethod = methodRepresentation.asAsmMethod();
         mg = new GeneratorAdapter(ACC_PUBLIC, currentMethod, null, null, cw);
+        powScratch = -1;
     }
 
     @Override
@@ -226,15 +238,11 @@ public class BytecodeGenerator extends MiniJavaBaseListener implements Opcodes {
     public void enterIfElseStatement(MiniJavaParser.IfElseStatementContext ctx) {
         Label enterElse = mg.newLabel();
         Label exitElse = mg.newLabel();
+        generateCondition(ctx.expression(), enterElse, false);
+        generated.add(ctx.expression());
         labelStack.push(exitElse);
         labelStack.push(enterElse);
         labelStack.push(exitElse);
-        labelStack.push(enterElse);
-    }
-
-    @Override
-    public void enterIfBlock(MiniJavaParser.IfBlockContext ctx) {
-        mg.ifZCmp(GeneratorAdapter.EQ, labelStack.pop());
     }
 
     @Override
@@ -253,30 +261,82 @@ public class BytecodeGenerator extends MiniJavaBaseListener implements Opcodes {
     }
 
     /* while statements */
+    /*
+    Loops are rotated, with the condition after the body, so that every iteration takes a single
+    conditional branch back to the top instead of a test at the top and a goto at the bottom.
+     */
     @Override
     public void enterWhileStatement(MiniJavaParser.WhileStatementContext ctx) {
+        Label testWhile = mg.newLabel();
+        mg.goTo(testWhile);
         Label enterWhile = mg.mark();
-        Label exitWhile = mg.newLabel();
-        labelStack.push(exitWhile);
         labelStack.push(enterWhile);
-        labelStack.push(exitWhile);
-    }
-
-    @Override
-    public void enterWhileBlock(MiniJavaParser.WhileBlockContext ctx) {
-        mg.ifZCmp(GeneratorAdapter.EQ, labelStack.pop());
+        labelStack.push(testWhile);
+        //The condition is generated after the body
+        generated.add(ctx.expression());
     }
 
     @Override
     public void exitWhileStatement(MiniJavaParser.WhileStatementContext ctx) {
-        mg.goTo(labelStack.pop());
         mg.mark(labelStack.pop());
+        generateCondition(ctx.expression(), labelStack.pop(), true);
+    }
+
+    /* conditions */
+    /**
+     * Generates expression as a condition: a jump to target if it evaluates to jumpIfTrue, and
+     * a fall through otherwise. Comparisons, negations, && and literals become jumps directly,
+     * without ever pushing a boolean.
+     */
+    private void generateCondition(MiniJavaParser.ExpressionContext expression, Label target, boolean jumpIfTrue) {
+        if (expression instanceof MiniJavaParser.ParenExpressionContext) {
+            generateCondition(((MiniJavaParser.ParenExpressionContext) expression).expression(), target, jumpIfTrue);
+        } else if (expression instanceof MiniJavaParser.NotExpressionContext) {
+            generateCondition(((MiniJavaParser.NotExpressionContext) expression).expression(), target, !jumpIfTrue);
+        } else if (expression instanceof MiniJavaParser.BooleanLitExpressionContext) {
+            if (Boolean.parseBoolean(expression.getText()) == jumpIfTrue) {
+                mg.goTo(target);
+            }
+        } else if (expression instanceof MiniJavaParser.LtExpressionContext) {
+            MiniJavaParser.LtExpressionContext lt = (MiniJavaParser.LtExpressionContext) expression;
+            walker.walk(this, lt.expression(0));
+            walker.walk(this, lt.expression(1));
+            mg.ifCmp(Type.INT_TYPE, jumpIfTrue ? GeneratorAdapter.LT : GeneratorAdapter.GE, target);
+        } else if (expression instanceof MiniJavaParser.AndExpressionContext) {
+            MiniJavaParser.AndExpressionContext and = (MiniJavaParser.AndExpressionContext) expression;
+            if (jumpIfTrue) {
+                Label exitAnd = mg.newLabel();
+                generateCondition(and.expression(0), exitAnd, false);
+                generateCondition(and.expression(1), target, true);
+                mg.mark(exitAnd);
+            } else {
+                generateCondition(and.expression(0), target, false);
+                generateCondition(and.expression(1), target, false);
+            }
+        } else {
+            //A boolean value, e.g. a variable or a method call
+            walker.walk(this, expression);
+            mg.ifZCmp(jumpIfTrue ? GeneratorAdapter.NE : GeneratorAdapter.EQ, target);
+        }
     }
 
     /* and */
+    @Override
+    public void visitTerminal(TerminalNode node) {
+        //The left operand of && is on the stack: when it is false, it is also the result and the
+        //right operand is skipped.
+        if (node.getSymbol().getType() == MiniJavaParser.AND) {
+            Label exitAnd = mg.newLabel();
+            labelStack.push(exitAnd);
+            mg.dup();
+            mg.ifZCmp(GeneratorAdapter.EQ, exitAnd);
+            mg.pop();
+        }
+    }
+
     @Override
     public void exitAndExpression(MiniJavaParser.AndExpressionContext ctx) {
-        mg.math(GeneratorAdapter.AND, Type.BOOLEAN_TYPE);
+        mg.mark(labelStack.pop());
     }
 
     /* less-than */
@@ -312,32 +372,133 @@ public class BytecodeGenerator extends MiniJavaBaseListener implements Opcodes {
 
     /* power */
     /*
-    A label represents a position in bytecode of a method.
-    Used for jump, goto, and switch
-    Designates the instruction that is just after.
+    x ** n is x multiplied by itself n times, with the exponent taken as unsigned: a negative
+    exponent stands for n + 2^32 multiplications, as in the loop this used to compile to. It is
+    computed by squaring in O(log n) multiplications. Constant operands are folded, constant
+    exponents are unrolled, and any other exponent calls a helper method in the class.
      */
     @Override
-    public void exitPowExpression(MiniJavaParser.PowExpressionContext ctx) {
-        Symbol base = new Symbol("base", klasses.get("int"), false);
-        Type type = Type.INT_TYPE;
-        base.setLocalIdentifier(mg.newLocal(type));
-        Symbol pow = new Symbol("pow", klasses.get("int"), false);
-        pow.setLocalIdentifier(mg.newLocal(type));
-        mg.storeLocal(pow.getLocalIdentifier(), type);
-        mg.storeLocal(base.getLocalIdentifier(), type);
-        mg.push(1); //generate the instruction to push the given value on stack
-        Label end = mg.newLabel();  //end position in bytecode
-        Label loop = mg.mark(); //mark the current code position with a new label: LOOP START
-        mg.loadLocal(pow.getLocalIdentifier(), type); // Gen instruction to load given local on the stack
-        mg.ifZCmp(GeneratorAdapter.EQ, end); //Gen instr. to jump to label based on comparison of top integer stack to zero.
-        mg.loadLocal(base.getLocalIdentifier(), type);
-        mg.math(GeneratorAdapter.MUL, Type.INT_TYPE);
-        mg.loadLocal(pow.getLocalIdentifier(), type);
-        mg.push(1);
-        mg.math(GeneratorAdapter.SUB, Type.INT_TYPE);
-        mg.storeLocal(pow.getLocalIdentifier(), type);
-        mg.goTo(loop); //Gen instr. to jump to loop if true: IF NOT FINISHED
-        mg.mark(end);
+    public void enterPowExpression(MiniJavaParser.PowExpressionContext ctx) {
+        Integer base = constantValue(ctx.expression(0));
+        Integer exponent = constantValue(ctx.expression(1));
+        if (base != null && exponent != null) {
+            mg.push(pow(base, exponent));
+        } else if (exponent != null) {
+            walker.walk(this, ctx.expression(0));
+            generateUnrolledPow(exponent);
+        } else {
+            walker.walk(this, ctx.expression(0));
+            walker.walk(this, ctx.expression(1));
+            mg.invokeStatic(Type.getObjectType(klassName), POW_HELPER);
+            powHelperUsed = true;
+        }
+        generated.add(ctx.expression(0));
+        generated.add(ctx.expression(1));
+    }
+
+    static final org.objectweb.asm.commons.Method POW_HELPER = new org.objectweb.asm.commons.Method("mj-pow", "(II)I");
+
+    /**
+     * @return the value of expression if it is an integer literal, or a ** of them.
+     */
+    private static Integer constantValue(MiniJavaParser.ExpressionContext expression) {
+        if (expression instanceof MiniJavaParser.IntLitExpressionContext) {
+            return Integer.parseInt(expression.getText());
+        } else if (expression instanceof MiniJavaParser.ParenExpressionContext) {
+            return constantValue(((MiniJavaParser.ParenExpressionContext) expression).expression());
+        } else if (expression instanceof MiniJavaParser.PowExpressionContext) {
+            MiniJavaParser.PowExpressionContext pow = (MiniJavaParser.PowExpressionContext) expression;
+            Integer base = constantValue(pow.expression(0));
+            Integer exponent = constantValue(pow.expression(1));
+            return base != null && exponent != null ? pow(base, exponent) : null;
+        }
+        return null;
+    }
+
+    static int pow(int base, int exponent) {
+        int result = 1;
+        for (; exponent != 0; exponent >>>= 1) {
+            if ((exponent & 1) != 0) {
+                result *= base;
+            }
+            base *= base;
+        }
+        return result;
+    }
+
+    /**
+     * Raises the int on the stack to a constant power by squaring from the highest bit of the
+     * exponent down, with a multiplication by the base for every other bit that is set. The base
+     * is kept in one scratch local that all powers in the method share.
+     */
+    private void generateUnrolledPow(int exponent) {
+        if (exponent == 0) {
+            mg.pop();
+            mg.push(1);
+            return;
+        }
+        boolean baseNeeded = Integer.bitCount(exponent) > 1;
+        if (baseNeeded) {
+            if (powScratch < 0) {
+                powScratch = mg.newLocal(Type.INT_TYPE);
+            }
+            mg.dup();
+            mg.storeLocal(powScratch);
+        }
+        for (int bit = 30 - Integer.numberOfLeadingZeros(exponent); bit >= 0; bit--) {
+            mg.dup();
+            mg.math(GeneratorAdapter.MUL, Type.INT_TYPE);
+            if ((exponent >>> bit & 1) != 0) {
+                mg.loadLocal(powScratch);
+                mg.math(GeneratorAdapter.MUL, Type.INT_TYPE);
+            }
+        }
+    }
+
+    private void generatePowHelper() {
+        if (powHelperUsed) {
+            generatePowHelper(cw);
+        }
+    }
+
+    /**
+     * Adds static int mj-pow(int base, int exponent) to a class. The name cannot clash with a
+     * MiniJava method.
+     */
+    static void generatePowHelper(ClassVisitor cw) {
+        GeneratorAdapter helper = new GeneratorAdapter(ACC_PRIVATE + ACC_STATIC + ACC_SYNTHETIC, POW_HELPER, null, null, cw);
+        int result = helper.newLocal(Type.INT_TYPE);
+        helper.push(1);
+        helper.storeLocal(result);
+        Label test = helper.newLabel();
+        helper.goTo(test);
+
+        Label loop = helper.mark();
+        Label even = helper.newLabel();
+        helper.loadArg(1);
+        helper.push(1);
+        helper.math(GeneratorAdapter.AND, Type.INT_TYPE);
+        helper.ifZCmp(GeneratorAdapter.EQ, even);
+        helper.loadLocal(result);
+        helper.loadArg(0);
+        helper.math(GeneratorAdapter.MUL, Type.INT_TYPE);
+        helper.storeLocal(result);
+        helper.mark(even);
+        helper.loadArg(0);
+        helper.dup();
+        helper.math(GeneratorAdapter.MUL, Type.INT_TYPE);
+        helper.storeArg(0);
+        helper.loadArg(1);
+        helper.push(1);
+        helper.math(GeneratorAdapter.USHR, Type.INT_TYPE);
+        helper.storeArg(1);
+
+        helper.mark(test);
+        helper.loadArg(1);
+        helper.ifZCmp(GeneratorAdapter.NE, loop);
+        helper.loadLocal(result);
+        helper.returnValue();
+        helper.endMethod();
     }
 
     /* array access */
@@ -416,6 +577,38 @@ public class BytecodeGenerator extends MiniJavaBaseListener implements Opcodes {
         mg.not();
     }
 
+    /**
+     * Generates the classes of tree. Code generation must walk the tree this way rather than with
+     * ParseTreeWalker.DEFAULT, which would also generate the conditions of if and while
+     * statements a second time.
+     */
+    public void generate(ParseTree tree) {
+        walker.walk(this, tree);
+    }
+
+    /**
+     * @return the generated classes, by class name, in the order they were generated.
+     */
+    public Map<String, byte[]> getClasses() {
+        return classes;
+    }
+
+    /* class output */
+    private void emitClass(String klassName, ParserRuleContext ctx) {
+        byte[] bytes = cw.toByteArray();
+        classes.put(klassName, bytes);
+
+        classEvent.end();
+        if (classEvent.shouldCommit()) {
+            classEvent.file = fileName;
+            classEvent.className = klassName;
+            classEvent.tokens = ctx.stop.getTokenIndex() - ctx.start.getTokenIndex() + 1;
+            classEvent.nodes = Compiler.countNodes(ctx);
+            classEvent.bytes = bytes.length;
+            classEvent.commit();
+        }
+    }
+
     /* scope */
     public void enterScope(ParserRuleContext ctx) {
         currentScope = scopes.get(ctx);
@@ -0,0 +1,28 @@
+package MiniJava;
+
+import jdk.jfr.*;
+
+/**
+ * Flight Recorder event spanning the code generation of one class.
+ */
+@Name("MiniJava.ClassCompiled")
+@Label("Class Compiled")
+@Category("MiniJava")
+@StackTrace(false)
+class ClassCompiledEvent extends Event {
+    @Label("File")
+    String file;
+
+    @Label("Class")
+    String className;
+
+    @Label("Tokens")
+    int tokens;
+
+    @Label("Parse Tree Nodes")
+    int nodes;
+
+    @Label("Class File Size")
+    @DataAmount
+    int bytes;
+}
@@ -8,9 +8,12 @@ public class ClassNamer extends MiniJavaBaseListener {
 
     private MiniJavaParser parser;
 
-    public ClassNamer(Map<String, Klass> klasses, MiniJavaParser parser) {
-        this.klasses = klasses;
-        this.parser = parser;
+    private ErrorStrategy errors;
+
+    public ClassNamer(CompilationContext context) {
+        this.klasses = context.getKlasses();
+        this.parser = context.getParser();
+        this.errors = context.getErrors();
     }
 
     /**
@@ -20,7 +23,7 @@ public class ClassNamer extends MiniJavaBaseListener {
     public void enterClassDeclaration(MiniJavaParser.ClassDeclarationContext ctx) {
         Klass currentKlass = new Klass(ctx.Identifier(0).getText());
         if (klasses.put(currentKlass.getScopeName(), currentKlass) != null) {
-            ErrorStrategy.reportDuplicateClassError(parser, ctx.Identifier(0).getSymbol(), currentKlass.getScopeName());
+            errors.reportDuplicateClassError(parser, ctx.Identifier(0).getSymbol(), currentKlass.getScopeName());
         }
     }
 
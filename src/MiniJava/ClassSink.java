@@ -0,0 +1,12 @@
+package MiniJava;
+
+import java.io.IOException;
+
+/**
+ * A destination for the class files of a successful compilation. Classes are always returned
+ * in memory by the CompilationResult; sinks additionally publish them somewhere else.
+ */
+public interface ClassSink {
+
+    void accept(String className, byte[] bytes) throws IOException;
+}
@@ -0,0 +1,55 @@
+package MiniJava;
+
+import org.antlr.v4.runtime.tree.ParseTreeProperty;
+
+import java.util.*;
+
+/**
+ * The state of a single compilation: the file being compiled, its diagnostics sink and the
+ * symbol tables shared by the compiler phases. Nothing in here is static, so any number of
+ * compilations may run concurrently in one JVM.
+ */
+public class CompilationContext {
+    private final String fileName;
+    private final ErrorStrategy errors;
+    private final MiniJavaParser parser;
+
+    //Symbol-table representation of classes for use in semantic analysis
+    private final Map<String, Klass> klasses = new HashMap<String, Klass>();
+
+    //Collection of symbol-table scopes
+    private final ParseTreeProperty<Scope> scopes = new ParseTreeProperty<Scope>();
+
+    //Type of the LHS of a method call expression
+    private final ParseTreeProperty<Klass> callerTypes = new ParseTreeProperty<Klass>();
+
+    public CompilationContext(String fileName, ErrorStrategy errors, MiniJavaParser parser) {
+        this.fileName = fileName;
+        this.errors = errors;
+        this.parser = parser;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public ErrorStrategy getErrors() {
+        return errors;
+    }
+
+    public MiniJavaParser getParser() {
+        return parser;
+    }
+
+    public Map<String, Klass> getKlasses() {
+        return klasses;
+    }
+
+    public ParseTreeProperty<Scope> getScopes() {
+        return scopes;
+    }
+
+    public ParseTreeProperty<Klass> getCallerTypes() {
+        return callerTypes;
+    }
+}
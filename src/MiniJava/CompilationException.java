@@ -0,0 +1,18 @@
+package MiniJava;
+
+/**
+ * Thrown when errors have been reported and the compilation of a file cannot continue.
+ */
+public class CompilationException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    private final int errorCount;
+
+    public CompilationException(int errorCount) {
+        super("[" + errorCount + "] errors found.");
+        this.errorCount = errorCount;
+    }
+
+    public int getErrorCount() {
+        return errorCount;
+    }
+}
@@ -0,0 +1,66 @@
+package MiniJava;
+
+import java.util.*;
+
+/**
+ * The outcome of compiling one source file.
+ */
+public class CompilationResult {
+    private final String fileName;
+    private final int lines;
+    private final boolean success;
+    private final String diagnostics;
+    private final List<Diagnostic> errors;
+    private final Map<String, byte[]> classes;
+    private final PhaseTimings timings;
+
+    public CompilationResult(String fileName, int lines, boolean success, String diagnostics, List<Diagnostic> errors, Map<String, byte[]> classes, PhaseTimings timings) {
+        this.fileName = fileName;
+        this.lines = lines;
+        this.success = success;
+        this.diagnostics = diagnostics;
+        this.errors = errors;
+        this.classes = classes;
+        this.timings = timings;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public int getLines() {
+        return lines;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /**
+     * @return the diagnostics printed while compiling, in the order they were reported.
+     */
+    public String getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * @return the errors that made the compilation fail, in the order they were reported.
+     */
+    public List<Diagnostic> getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the class files generated, by class name. Empty if the compilation failed.
+     */
+    public Map<String, byte[]> getClasses() {
+        return classes;
+    }
+
+    /**
+     * @return the time spent in each phase. Results returned by a CompileClient carry no timings.
+     */
+    public PhaseTimings getTimings() {
+        return timings;
+    }
+}
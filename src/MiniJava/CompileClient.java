@@ -0,0 +1,68 @@
+package MiniJava;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Thin command-line client for CompileDaemon. Sends each file to the daemon, prints the
+ * diagnostics and writes the returned classes to &lt;Name&gt;.class in the working directory.
+ *
+ * usage: CompileClient [--port port] [--stop token] [file]...
+ */
+public class CompileClient {
+
+    public static void main(String[] args) throws IOException {
+        int port = CompileDaemon.DEFAULT_PORT;
+        String stopToken = null;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--stop") && i + 1 < args.length) {
+                stopToken = args[++i];
+            } else {
+                files.add(args[i]);
+            }
+        }
+
+        ClassSink sink = new DirectoryClassSink(new File("."));
+        int failed = 0;
+        long start = System.nanoTime();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            for (String file : files) {
+                byte[] source = Files.readAllBytes(new File(file).toPath());
+                out.write(CompileDaemon.COMPILE);
+                out.writeUTF(file);
+                CompileDaemon.writeBytes(out, source);
+                out.flush();
+
+                CompilationResult result = CompileDaemon.readResult(in, file, 0);
+                System.err.print(result.getDiagnostics());
+                for (Map.Entry<String, byte[]> klass : result.getClasses().entrySet()) {
+                    sink.accept(klass.getKey(), klass.getValue());
+                }
+                if (!result.isSuccess()) {
+                    failed++;
+                }
+            }
+            if (stopToken != null) {
+                out.write(CompileDaemon.STOP);
+                out.writeUTF(stopToken);
+                out.flush();
+            }
+        }
+        if (!files.isEmpty()) {
+            System.err.printf("%n%d files compiled by the daemon in %.2f ms, %d failed.%n",
+                    files.size(), (System.nanoTime() - start) / 1e6, failed);
+        }
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
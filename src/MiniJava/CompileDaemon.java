@@ -0,0 +1,215 @@
+package MiniJava;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A long-lived compile server on the loopback interface. Keeping the JVM alive means the lexer and
+ * parser ATNs are deserialized once, the JIT stays warm and recently compiled sources are answered
+ * from an in-memory ArtifactCache.
+ *
+ * Each request is a COMPILE opcode followed by the file name and the source text; the reply holds
+ * the success flag, the diagnostics (as printed and as Diagnostics) and the generated class files.
+ * A source longer than MAX_BYTES, or a request that fails, gets a failed result in reply. A STOP
+ * opcode followed by the token given with --stop-token shuts the daemon down; without
+ * --stop-token the daemon can only be stopped by killing it. CompileClient is the matching
+ * command-line client.
+ *
+ * usage: CompileDaemon [--port port] [--cache-mb megabytes] [-j threads] [--stop-token token]
+ */
+public class CompileDaemon {
+    public static final int DEFAULT_PORT = 7713;
+    static final int COMPILE = 'C';
+    static final int STOP = 'S';
+    //The longest source, class file or diagnostics text either side reads
+    static final int MAX_BYTES = 16 << 20;
+
+    //A small program covering every phase, compiled at start-up to warm the JIT
+    private static final String WARM_UP_SOURCE =
+            "class WarmUp { public static void main(String[] a) { System.out.println(new W().Run(10)); } }\n" +
+            "class W { int[] n;\n" +
+            "  public int Run(int sz) { int i; int s; n = new int[sz]; i = 0; s = 0;\n" +
+            "    while (i < n.length && !(sz < i)) { n[i] = i ** 2 * 3 + 1 - i; s = s + n[i]; i = i + 1; }\n" +
+            "    if (s < 0) s = 0; else s = this.Run2(s);\n" +
+            "    return s; }\n" +
+            "  public int Run2(int x) { return x; } }\n";
+    private static final int WARM_UP_COMPILES = 500;
+
+    private final Compiler compiler = new Compiler();
+    private final ArtifactCache cache;
+    private final ServerSocket server;
+    private final ExecutorService workers;
+    private final byte[] stopToken;
+
+    /**
+     * @param stopToken the token a STOP request must carry, or null to refuse every STOP.
+     */
+    public CompileDaemon(int port, long cacheBytes, int threads, String stopToken) throws IOException {
+        this.stopToken = stopToken != null ? stopToken.getBytes(StandardCharsets.UTF_8) : null;
+        cache = new ArtifactCache(cacheBytes);
+        server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        workers = Executors.newFixedThreadPool(threads);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        long cacheMegabytes = 64;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String stopToken = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--port")) {
+                port = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--cache-mb")) {
+                cacheMegabytes = Long.parseLong(args[i + 1]);
+            } else if (args[i].equals("-j")) {
+                threads = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--stop-token")) {
+                stopToken = args[i + 1];
+            }
+        }
+
+        CompileDaemon daemon = new CompileDaemon(port, cacheMegabytes << 20, threads, stopToken);
+        long start = System.nanoTime();
+        daemon.warmUp();
+        System.err.printf("MiniJava compile daemon warmed up in %d ms, listening on %s%n",
+                (System.nanoTime() - start) / 1000000, daemon.server.getLocalSocketAddress());
+        daemon.serve();
+        System.err.println("MiniJava compile daemon stopped: " + daemon.cache);
+    }
+
+    public void warmUp() {
+        for (int i = 0; i < WARM_UP_COMPILES; i++) {
+            compiler.compile("WarmUp.java", WARM_UP_SOURCE);
+        }
+    }
+
+    /**
+     * Accepts connections until a client sends STOP with the stop token.
+     */
+    public void serve() throws IOException {
+        try {
+            while (true) {
+                Socket socket = server.accept();
+                workers.execute(() -> handle(socket));
+            }
+        } catch (SocketException se) {
+            if (!server.isClosed()) {
+                throw se;
+            }
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            for (int request = in.read(); request != -1; request = in.read()) {
+                if (request == STOP) {
+                    if (stopToken != null && MessageDigest.isEqual(stopToken, in.readUTF().getBytes(StandardCharsets.UTF_8))) {
+                        server.close();
+                    } else {
+                        System.err.println("MiniJava compile daemon: refused STOP from " + s.getRemoteSocketAddress());
+                    }
+                    return;
+                } else if (request != COMPILE) {
+                    throw new IOException("unknown request " + request);
+                }
+                String fileName = in.readUTF();
+                int length = in.readInt();
+                if (length < 0 || length > MAX_BYTES) {
+                    //The source cannot be skipped, so the connection ends with this reply
+                    writeResult(out, failure(fileName, "source of " + length + " bytes refused, the limit is " + MAX_BYTES));
+                    out.flush();
+                    return;
+                }
+                byte[] source = new byte[length];
+                in.readFully(source);
+                CompilationResult result;
+                try {
+                    result = compile(fileName, new String(source, StandardCharsets.UTF_8));
+                } catch (RuntimeException re) {
+                    //A bad request must not take the daemon or other requests down with it.
+                    result = failure(fileName, "internal compiler error: " + re);
+                }
+                writeResult(out, result);
+                out.flush();
+            }
+        } catch (IOException ioe) {
+            System.err.println("MiniJava compile daemon: " + ioe);
+        }
+    }
+
+    private static CompilationResult failure(String fileName, String message) {
+        String diagnostics = fileName + ": error: " + message + "\n";
+        return new CompilationResult(fileName, 0, false, diagnostics, Collections.emptyList(), Collections.emptyMap(), new PhaseTimings());
+    }
+
+    private CompilationResult compile(String fileName, String source) {
+        String key = ArtifactCache.key(fileName, source);
+        CompilationResult result = cache.get(key);
+        if (result == null) {
+            result = compiler.compile(fileName, source);
+            cache.put(key, result);
+        }
+        return result;
+    }
+
+    static void writeResult(DataOutputStream out, CompilationResult result) throws IOException {
+        out.writeBoolean(result.isSuccess());
+        writeBytes(out, result.getDiagnostics().getBytes(StandardCharsets.UTF_8));
+        out.writeInt(result.getErrors().size());
+        for (Diagnostic error : result.getErrors()) {
+            out.writeInt(error.getLine());
+            out.writeInt(error.getColumn());
+            writeBytes(out, error.getMessage().getBytes(StandardCharsets.UTF_8));
+            writeBytes(out, error.getText().getBytes(StandardCharsets.UTF_8));
+        }
+        out.writeInt(result.getClasses().size());
+        for (Map.Entry<String, byte[]> klass : result.getClasses().entrySet()) {
+            out.writeUTF(klass.getKey());
+            writeBytes(out, klass.getValue());
+        }
+    }
+
+    static CompilationResult readResult(DataInputStream in, String fileName, int lines) throws IOException {
+        boolean success = in.readBoolean();
+        String diagnostics = new String(readBytes(in), StandardCharsets.UTF_8);
+        List<Diagnostic> errors = new ArrayList<>();
+        for (int count = in.readInt(); count > 0; count--) {
+            int line = in.readInt();
+            int column = in.readInt();
+            String message = new String(readBytes(in), StandardCharsets.UTF_8);
+            errors.add(new Diagnostic(fileName, line, column, message, new String(readBytes(in), StandardCharsets.UTF_8)));
+        }
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        for (int count = in.readInt(); count > 0; count--) {
+            String name = in.readUTF();
+            classes.put(name, readBytes(in));
+        }
+        //Timings stay with the daemon: a cached result would report those of its first compile
+        return new CompilationResult(fileName, lines, success, diagnostics, errors, classes, new PhaseTimings());
+    }
+
+    static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_BYTES) {
+            throw new IOException("length " + length + " is not between 0 and " + MAX_BYTES);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,381 @@
+package MiniJava;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Runs the compiler phases over a source file. A Compiler holds no per-compilation state:
+ * everything a compilation needs lives in its own CompilationContext, so a single instance
+ * can be shared by any number of threads.
+ */
+public class Compiler {
+    private boolean grammarDebug = false;
+    private int optimizationLevel = 1;
+    private boolean verifyIr = false;
+    private boolean dumpIr = false;
+    private boolean optimizationReport = false;
+    private Set<Peephole.Rule> peepholeRules = null;
+    private int memoEntries = 0;
+    private boolean memoCounters = false;
+    private final List<ClassSink> sinks = new ArrayList<>();
+
+    /**
+     * Parse with ambiguity detection and report every ambiguity in the grammar. Meant for
+     * debugging MiniJava.g4, not for production compiles.
+     */
+    public void setGrammarDebug(boolean grammarDebug) {
+        this.grammarDebug = grammarDebug;
+    }
+
+    /**
+     * 0 generates bytecode straight from the parse tree; 1 and above go through the IR and run
+     * the optimization passes of that level, see PassManager.
+     */
+    public void setOptimizationLevel(int optimizationLevel) {
+        if (optimizationLevel < 0 || optimizationLevel > PassManager.MAX_LEVEL) {
+            throw new IllegalArgumentException("optimization level " + optimizationLevel);
+        }
+        this.optimizationLevel = optimizationLevel;
+    }
+
+    /**
+     * Verify the IR after every optimization pass. Meant for debugging the optimizer.
+     */
+    public void setVerifyIr(boolean verifyIr) {
+        this.verifyIr = verifyIr;
+    }
+
+    /**
+     * Print the optimized IR of every compilation with its diagnostics.
+     */
+    public void setDumpIr(boolean dumpIr) {
+        this.dumpIr = dumpIr;
+    }
+
+    /**
+     * Print what the optimization passes did to each method with the diagnostics.
+     */
+    public void setOptimizationReport(boolean optimizationReport) {
+        this.optimizationReport = optimizationReport;
+    }
+
+    /**
+     * The peephole rules to run over the generated bytecode. By default all of them run when
+     * optimizing, and none at level 0.
+     */
+    public void setPeepholeRules(Set<Peephole.Rule> peepholeRules) {
+        this.peepholeRules = EnumSet.copyOf(peepholeRules);
+    }
+
+    /**
+     * Cache the results of the methods that depend on their int arguments alone, in a cache of
+     * entries results per method, see Memoization. Only done when optimizing; 0, the default,
+     * turns it off.
+     *
+     * @param entries 0 or a power of two up to 65536, see Memoization.MAX_ENTRIES.
+     */
+    public void setMemoEntries(int entries) {
+        if (entries < 0 || entries > Memoization.MAX_ENTRIES || Integer.bitCount(entries) > 1) {
+            throw new IllegalArgumentException("memo cache entries " + entries + " is not a power of two up to " + Memoization.MAX_ENTRIES);
+        }
+        this.memoEntries = entries;
+    }
+
+    /**
+     * Count the hits and misses of every memo cache in private static fields of the generated
+     * class, for benchmarks to read. Every call of a memoized method pays for the counting.
+     */
+    public void setMemoCounters(boolean memoCounters) {
+        this.memoCounters = memoCounters;
+    }
+
+    /**
+     * Publishes the classes of every successful compilation to sink, in addition to returning
+     * them in the CompilationResult. Sinks may be called from several threads at once.
+     */
+    public void addClassSink(ClassSink sink) {
+        sinks.add(sink);
+    }
+
+    public CompilationResult compile(String fileName, String source) {
+        return compile(fileName, new ANTLRInputStream(source));
+    }
+
+    /**
+     * Compiles input in memory, buffering the diagnostics so that concurrent compilations never
+     * interleave their output.
+     *
+     * @param fileName the name used to identify input in diagnostics.
+     */
+    public CompilationResult compile(String fileName, CharStream input) {
+        ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+        PrintStream err = new PrintStream(diagnostics, true);
+        ErrorStrategy errors = new ErrorStrategy(fileName, err);
+        PhaseTimings timings = new PhaseTimings();
+        boolean success;
+        Map<String, byte[]> classes = Collections.emptyMap();
+
+        try {
+            err.println("\n-----" + fileName + "-----");
+            classes = compile(fileName, input, errors, new PhaseRecorder(fileName, timings));
+            for (ClassSink sink : sinks) {
+                for (Map.Entry<String, byte[]> klass : classes.entrySet()) {
+                    sink.accept(klass.getKey(), klass.getValue());
+                }
+            }
+            success = true;
+        } catch (IOException ioe) {
+            err.println(fileName + ": error: cannot write class files: " + ioe);
+            success = false;
+        } catch (CompilationException ce) {
+            success = false;
+        } catch (RuntimeException re) {
+            //A bug in a later phase must not take other compilations down with it.
+            err.println(fileName + ": internal compiler error: " + re);
+            success = false;
+        }
+        err.flush();
+        int lines = countLines(input.getText(Interval.of(0, input.size() - 1)));
+        return new CompilationResult(fileName, lines, success, diagnostics.toString(), errors.getDiagnostics(), classes, timings);
+    }
+
+    private Map<String, byte[]> compile(String fileName, CharStream input, ErrorStrategy errors, PhaseRecorder recorder) {
+        //-------------------------------LEXER/PARSER SETUP--------------------------
+        //---------------------------------------------------------------------------
+
+        //Lexer for tokenizing the input
+        MiniJavaLexer lexer = new MiniJavaLexer(input);
+
+        //Stream view of tokenized file, built by lexer
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+
+        //Lexer errors go to this compilation's diagnostics instead of the console
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(new UnderlineListener(errors));
+
+        //Tokenize the whole file up front, so that lexing is timed on its own
+        recorder.start(Phase.LEX);
+        tokens.fill();
+        recorder.tokens = tokens;
+        recorder.end();
+
+        //Takes the token stream for parse tree construction
+        MiniJavaParser parser = new MiniJavaParser(tokens);
+
+        //Diagnostics sink, file identity and symbol tables of this compilation
+        CompilationContext context = new CompilationContext(fileName, errors, parser);
+
+        //Construct the parse tree and report syntax errors
+        recorder.start(Phase.PARSE);
+        ParseTree tree = parse(parser, tokens, errors);
+        recorder.tree = tree;
+        recorder.end();
+        //If errors were encountered during parsing, print them and stop compiling.
+        errors.exitOnErrors();
+
+        // print LISP-style tree
+        // System.out.println(tree.toStringTree(parser));
+
+
+        //-------------------------------STATIC SEMANTICS----------------------------
+        //---------------------------------------------------------------------------
+
+        //A listener for naming the classes in the symbol table
+        ClassNamer namer = new ClassNamer(context);
+        //Walk the parse tree, creating klasses and naming them
+        recorder.start(Phase.CLASS_NAMER);
+        ParseTreeWalker.DEFAULT.walk(namer, tree);
+        recorder.end();
+        //If there were errors during naming (two classes with same name)
+        errors.exitOnErrors();
+
+        //Build the symbol Table
+        AssignmentListener AListener = new AssignmentListener(context);
+        //ParseTreeWalker.PopulateSymbolTable()
+        recorder.start(Phase.ASSIGNMENT_LISTENER);
+        ParseTreeWalker.DEFAULT.walk(AListener, tree);
+        recorder.end();
+        //If there were errors during naming (Cyclic inheritance)
+        errors.exitOnErrors();
+
+        //Visitor for Type checking
+        TypeCheckVisitor TCVisitor = new TypeCheckVisitor(context);
+        //ParseTreeWalker.TypeCheck()
+        recorder.start(Phase.TYPE_CHECK);
+        TCVisitor.visit(tree);
+        recorder.end();
+        //If there were errors during naming ( int x; x = 0; x = new int[] + x; )
+        errors.exitOnErrors();
+
+        //Visitor for ensuring variables are initialized before use
+        InitializationBeforeUseCheckVisitor IBUCVisitor = new InitializationBeforeUseCheckVisitor(context);
+        //Walk the parse tree
+        recorder.start(Phase.INIT_BEFORE_USE);
+        IBUCVisitor.visit(tree);
+        recorder.end();
+        //If there were errors during naming ( int x; x = x + 0; x not initialized )
+        errors.exitOnErrors();
+
+        OptimizationReport report = new OptimizationReport(optimizationReport);
+        Map<String, byte[]> classes = optimizationLevel == 0 ? generate(context, tree, recorder)
+                : optimizeAndGenerate(fileName, context, tree, recorder, report, errors);
+
+        //-------------------------------PEEPHOLE------------------------------------
+        //---------------------------------------------------------------------------
+
+        Set<Peephole.Rule> rules = peepholeRules != null ? peepholeRules
+                : optimizationLevel > 0 ? EnumSet.allOf(Peephole.Rule.class) : EnumSet.noneOf(Peephole.Rule.class);
+        if (!rules.isEmpty()) {
+            recorder.start(Phase.PEEPHOLE);
+            classes = new Peephole(rules).optimize(classes, context.getKlasses(), report);
+            recorder.end();
+        }
+        for (String remark : report.getRemarks()) {
+            errors.err().println(remark);
+        }
+        return classes;
+    }
+
+    private static Map<String, byte[]> generate(CompilationContext context, ParseTree tree, PhaseRecorder recorder) {
+        //A listener for generating java byte code from the parse tree.
+        BytecodeGenerator codeGen = new BytecodeGenerator(context);
+        //Traverse the parse tree, generating java byte code
+        recorder.start(Phase.CODEGEN);
+        codeGen.generate(tree);
+        recorder.end();
+        return codeGen.getClasses();
+    }
+
+    private Map<String, byte[]> optimizeAndGenerate(String fileName, CompilationContext context, ParseTree tree, PhaseRecorder recorder,
+                                                    OptimizationReport report, ErrorStrategy errors) {
+        //-------------------------------OPTIMIZER-----------------------------------
+        //---------------------------------------------------------------------------
+
+        //Lower the parse tree to a control flow graph per method
+        recorder.start(Phase.IR_BUILD);
+        IrProgram program = new IrBuilder(context).build(tree);
+        recorder.end();
+
+        //Run the passes of the optimization level
+        recorder.start(Phase.OPTIMIZE);
+        new PassManager(optimizationLevel, memoEntries).run(program, recorder.timings, report, verifyIr);
+        recorder.end();
+        if (dumpIr) {
+            errors.err().print(program);
+        }
+
+        //Generate java byte code from the IR
+        IrCodeGenerator codeGen = new IrCodeGenerator(program, fileName);
+        codeGen.setMemoCounters(memoCounters);
+        recorder.start(Phase.CODEGEN);
+        Map<String, byte[]> classes = codeGen.generate();
+        recorder.end();
+        return classes;
+    }
+
+    /**
+     * Times the phases of one compilation, and emits a PhaseEvent for each while a flight
+     * recording is running. Counting the parse tree nodes for the events takes a walk of its own,
+     * so it is only done when an event is actually recorded.
+     */
+    private static final class PhaseRecorder {
+        private final String fileName;
+        private final PhaseTimings timings;
+        CommonTokenStream tokens;
+        ParseTree tree;
+        private int nodes = -1;
+
+        private Phase phase;
+        private PhaseEvent event;
+        private long start;
+
+        PhaseRecorder(String fileName, PhaseTimings timings) {
+            this.fileName = fileName;
+            this.timings = timings;
+        }
+
+        void start(Phase phase) {
+            this.phase = phase;
+            event = new PhaseEvent();
+            event.begin();
+            start = System.nanoTime();
+        }
+
+        void end() {
+            timings.record(phase, System.nanoTime() - start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.file = fileName;
+                event.phase = phase.getLabel();
+                event.tokens = tokens != null ? tokens.size() : 0;
+                if (tree != null && nodes < 0) {
+                    nodes = countNodes(tree);
+                }
+                event.nodes = Math.max(nodes, 0);
+                event.commit();
+            }
+        }
+    }
+
+    static int countNodes(ParseTree tree) {
+        int nodes = 1;
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            nodes += countNodes(tree.getChild(i));
+        }
+        return nodes;
+    }
+
+    /**
+     * Parses in two stages. SLL prediction is much faster than full LL and succeeds for nearly all
+     * valid programs, so it is tried first without error recovery. Only when it fails, because of a
+     * syntax error or an input that needs full context, is the file reparsed with full LL and the
+     * usual error reporting.
+     */
+    ParseTree parse(MiniJavaParser parser, CommonTokenStream tokens, ErrorStrategy errors) {
+        //Remove default error listeners and add custom listeners
+        parser.removeErrorListeners();
+
+        if (grammarDebug) {
+            //Report every ambiguity in the grammar. This is the slowest prediction mode ANTLR has.
+            parser.addErrorListener(new DiagnosticErrorListener());
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL_EXACT_AMBIG_DETECTION);
+            parser.addErrorListener(new UnderlineListener(errors));
+            return parser.goal();
+        }
+
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.setErrorHandler(new BailErrorStrategy());
+        try {
+            return parser.goal();
+        } catch (ParseCancellationException pce) {
+            tokens.seek(0);
+            parser.reset();
+
+            //Reports syntax errors upon construction of the parse tree.
+            parser.addErrorListener(new UnderlineListener(errors));
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            return parser.goal();
+        }
+    }
+
+    private static int countLines(String source) {
+        int lines = 0;
+        for (int i = 0; i < source.length(); i++) {
+            if (source.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        if (!source.isEmpty() && source.charAt(source.length() - 1) != '\n') {
+            lines++;
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,211 @@
+package MiniJava;
+
+import java.util.*;
+
+/**
+ * Evaluates the operations whose operands are constants at compile time, with the wrapping int
+ * arithmetic of Java, and simplifies operations with an identity or absorbing constant, like
+ * x + 0, x * 1 or true && x. Branches on a constant condition become gotos.
+ *
+ * A local that is assigned only once, from a constant, is replaced by that constant everywhere.
+ * Every read of a local other than a parameter comes after an assignment on every path (the
+ * IrVerifier checks it), so every read of such a local sees the constant. Parameters hold their
+ * argument until they are assigned, as after TailRecursionElimination, so they are left alone.
+ * Folding and propagation repeat until neither finds anything more.
+ */
+class ConstantFolding implements IrPass {
+
+    @Override
+    public String getName() {
+        return "constant folding";
+    }
+
+    @Override
+    public void run(IrProgram program, OptimizationReport report) {
+        for (IrMethod method : program.getMethods()) {
+            do {
+                foldMethod(method);
+            } while (propagate(method));
+        }
+    }
+
+    private static void foldMethod(IrMethod method) {
+        for (BasicBlock block : method.getBlocks()) {
+            for (IrStatement statement : block.getStatements()) {
+                List<IrExpression> operands = statement.getOperands();
+                for (int i = 0; i < operands.size(); i++) {
+                    operands.set(i, fold(operands.get(i)));
+                }
+            }
+            if (block.getExitValue() != null) {
+                block.setExitValue(fold(block.getExitValue()));
+            }
+            if (block.getExit() == BasicBlock.Exit.BRANCH && block.getExitValue().isConstant()) {
+                block.jumpTo(block.getExitValue().getValue() != 0 ? block.getTarget() : block.getElseTarget());
+            }
+        }
+    }
+
+    /**
+     * @return expression, or a simpler tree that computes the same value with the same effects.
+     */
+    static IrExpression fold(IrExpression expression) {
+        List<IrExpression> operands = expression.getOperands();
+        for (int i = 0; i < operands.size(); i++) {
+            operands.set(i, fold(operands.get(i)));
+        }
+        if (operands.isEmpty()) {
+            return expression;
+        }
+        IrExpression left = operands.get(0);
+        IrExpression right = operands.size() > 1 ? operands.get(1) : null;
+        boolean constants = left.isConstant() && (right == null || right.isConstant());
+        switch (expression.getKind()) {
+            case ADD:
+                if (constants) {
+                    return IrExpression.constant(left.getValue() + right.getValue());
+                }
+                if (isConstant(right, 0)) {
+                    return left;
+                }
+                if (isConstant(left, 0)) {
+                    return right;
+                }
+                break;
+            case SUB:
+                if (constants) {
+                    return IrExpression.constant(left.getValue() - right.getValue());
+                }
+                if (isConstant(right, 0)) {
+                    return left;
+                }
+                break;
+            case MUL:
+                if (constants) {
+                    return IrExpression.constant(left.getValue() * right.getValue());
+                }
+                if (isConstant(right, 1)) {
+                    return left;
+                }
+                if (isConstant(left, 1)) {
+                    return right;
+                }
+                if (isConstant(right, 0) && left.isPure() || isConstant(left, 0) && right.isPure()) {
+                    return IrExpression.constant(0);
+                }
+                break;
+            case DIV:
+                //Division by zero is left to throw at run time
+                if (constants && right.getValue() != 0) {
+                    return IrExpression.constant(left.getValue() / right.getValue());
+                }
+                if (isConstant(right, 1)) {
+                    return left;
+                }
+                break;
+            case POW:
+                if (constants) {
+                    return IrExpression.constant(BytecodeGenerator.pow(left.getValue(), right.getValue()));
+                }
+                if (isConstant(right, 1)) {
+                    return left;
+                }
+                //x ** 0 is 1 even for x = 0, and 1 ** n is 1 for every n
+                if (isConstant(right, 0) && left.isPure() || isConstant(left, 1) && right.isPure()) {
+                    return IrExpression.constant(1);
+                }
+                break;
+            case LT:
+                if (constants) {
+                    return IrExpression.constant(left.getValue() < right.getValue());
+                }
+                break;
+            case EQ:
+                if (constants) {
+                    return IrExpression.constant(left.getValue() == right.getValue());
+                }
+                break;
+            case AND:
+                if (left.isConstant()) {
+                    //The right operand is only evaluated when the left one is true
+                    return left.getValue() != 0 ? right : left;
+                }
+                if (isConstant(right, 1)) {
+                    return left;
+                }
+                if (isConstant(right, 0) && left.isPure()) {
+                    return right;
+                }
+                break;
+            case NOT:
+                if (left.isConstant()) {
+                    return IrExpression.constant(left.getValue() == 0);
+                }
+                if (left.getKind() == IrExpression.Kind.NOT) {
+                    return left.getOperand(0);
+                }
+                break;
+            default:
+                break;
+        }
+        return expression;
+    }
+
+    private static boolean isConstant(IrExpression expression, int value) {
+        return expression.isConstant() && expression.getValue() == value;
+    }
+
+    /**
+     * Replaces the locals other than parameters that are assigned once, from a constant, by the
+     * constant and removes their assignment.
+     *
+     * @return true if any local was replaced.
+     */
+    private static boolean propagate(IrMethod method) {
+        Map<IrLocal, IrStatement> assignments = new HashMap<>();
+        Set<IrLocal> reassigned = new HashSet<>();
+        for (BasicBlock block : method.getBlocks()) {
+            for (IrStatement statement : block.getStatements()) {
+                if (statement.getKind() == IrStatement.Kind.ASSIGN && assignments.put(statement.getTarget(), statement) != null) {
+                    reassigned.add(statement.getTarget());
+                }
+            }
+        }
+        Map<IrLocal, IrExpression> constants = new HashMap<>();
+        for (Map.Entry<IrLocal, IrStatement> assignment : assignments.entrySet()) {
+            if (!reassigned.contains(assignment.getKey()) && !method.getParameters().contains(assignment.getKey())
+                    && assignment.getValue().getValue().isConstant()) {
+                constants.put(assignment.getKey(), assignment.getValue().getValue());
+            }
+        }
+        if (constants.isEmpty()) {
+            return false;
+        }
+
+        for (BasicBlock block : method.getBlocks()) {
+            block.getStatements().removeIf(s -> s.getKind() == IrStatement.Kind.ASSIGN && constants.containsKey(s.getTarget()));
+            for (IrStatement statement : block.getStatements()) {
+                List<IrExpression> operands = statement.getOperands();
+                for (int i = 0; i < operands.size(); i++) {
+                    operands.set(i, substitute(operands.get(i), constants));
+                }
+            }
+            if (block.getExitValue() != null) {
+                block.setExitValue(substitute(block.getExitValue(), constants));
+            }
+        }
+        return true;
+    }
+
+    private static IrExpression substitute(IrExpression expression, Map<IrLocal, IrExpression> constants) {
+        if (expression.getKind() == IrExpression.Kind.LOCAL) {
+            IrExpression constant = constants.get(expression.getLocal());
+            return constant != null ? constant.copy() : expression;
+        }
+        List<IrExpression> operands = expression.getOperands();
+        for (int i = 0; i < operands.size(); i++) {
+            operands.set(i, substitute(operands.get(i), constants));
+        }
+        return expression;
+    }
+}
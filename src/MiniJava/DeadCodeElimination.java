@@ -0,0 +1,147 @@
+package MiniJava;
+
+import java.util.*;
+
+/**
+ * Removes code that cannot run or whose results are never used:
+ * <ul>
+ * <li>branches on constant conditions become gotos, and branches whose targets are the same
+ * block become gotos after evaluating the condition for its side effects only;</li>
+ * <li>jumps to empty blocks go straight to where those blocks lead, and a block that is the
+ * only successor of its only predecessor is merged into it;</li>
+ * <li>blocks that cannot be reached from the entry are dropped, which also drops the code after
+ * loops whose condition is constantly true;</li>
+ * <li>stores to locals that are not live afterwards are dropped when their value has no side
+ * effects and cannot throw, and only their value is evaluated otherwise.</li>
+ * </ul>
+ * The report gives the bytes of code saved for every method that got smaller.
+ */
+class DeadCodeElimination implements IrPass {
+
+    @Override
+    public String getName() {
+        return "dead code elimination";
+    }
+
+    @Override
+    public void run(IrProgram program, OptimizationReport report) {
+        for (IrMethod method : program.getMethods()) {
+            int before = report.isEnabled() ? IrCodeGenerator.codeSize(method) : 0;
+            simplifyControlFlow(method);
+            while (removeDeadStores(method)) {
+                //Every removed store may make the stores to the locals it read dead as well
+            }
+            if (report.isEnabled()) {
+                int after = IrCodeGenerator.codeSize(method);
+                if (after < before) {
+                    report.add(this, method, "saved " + (before - after) + " bytes (" + before + " -> " + after + ")");
+                }
+            }
+        }
+    }
+
+    private static void simplifyControlFlow(IrMethod method) {
+        for (BasicBlock block : method.getBlocks()) {
+            if (block.getExit() == BasicBlock.Exit.BRANCH) {
+                IrExpression condition = block.getExitValue();
+                if (condition.isConstant()) {
+                    block.jumpTo(condition.getValue() != 0 ? block.getTarget() : block.getElseTarget());
+                } else if (block.getTarget() == block.getElseTarget()) {
+                    if (!condition.isPure()) {
+                        block.getStatements().add(IrStatement.eval(condition));
+                    }
+                    block.jumpTo(block.getTarget());
+                }
+            }
+        }
+
+        //Jump over empty blocks; the entry has to stay where it is
+        for (BasicBlock block : method.getBlocks()) {
+            if (block.getExit() == BasicBlock.Exit.GOTO) {
+                block.jumpTo(skipEmpty(method, block.getTarget()));
+            } else if (block.getExit() == BasicBlock.Exit.BRANCH) {
+                block.branch(block.getExitValue(), skipEmpty(method, block.getTarget()), skipEmpty(method, block.getElseTarget()));
+            }
+        }
+        method.getBlocks().retainAll(method.getReachableBlocks());
+
+        Map<BasicBlock, List<BasicBlock>> predecessors = method.getPredecessors();
+        for (int i = 0; i < method.getBlocks().size(); i++) {
+            BasicBlock block = method.getBlocks().get(i);
+            while (block.getExit() == BasicBlock.Exit.GOTO) {
+                BasicBlock successor = block.getTarget();
+                if (successor == block || successor == method.getEntry() || predecessors.get(successor).size() != 1) {
+                    break;
+                }
+                block.getStatements().addAll(successor.getStatements());
+                copyExit(successor, block);
+                for (BasicBlock next : successor.getSuccessors()) {
+                    List<BasicBlock> nextPredecessors = predecessors.get(next);
+                    nextPredecessors.set(nextPredecessors.indexOf(successor), block);
+                }
+                method.getBlocks().remove(successor);
+                if (method.getBlocks().indexOf(block) < i) {
+                    i--;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the first block that is not empty on the way from block, or the last empty one if
+     * they form a loop.
+     */
+    static BasicBlock skipEmpty(IrMethod method, BasicBlock block) {
+        Set<BasicBlock> visited = new HashSet<>();
+        while (block != method.getEntry() && block.getStatements().isEmpty() && block.getExit() == BasicBlock.Exit.GOTO
+                && visited.add(block) && !visited.contains(block.getTarget())) {
+            block = block.getTarget();
+        }
+        return block;
+    }
+
+    private static void copyExit(BasicBlock from, BasicBlock to) {
+        switch (from.getExit()) {
+            case GOTO:
+                to.jumpTo(from.getTarget());
+                break;
+            case BRANCH:
+                to.branch(from.getExitValue(), from.getTarget(), from.getElseTarget());
+                break;
+            default:
+                to.returnValue(from.getExitValue());
+        }
+    }
+
+    /**
+     * Walks every block backwards from the locals live at its end, dropping the stores to locals
+     * that are not live after them.
+     *
+     * @return true if any statement was removed or simplified.
+     */
+    private static boolean removeDeadStores(IrMethod method) {
+        Liveness liveness = Liveness.analyze(method);
+        boolean removed = false;
+        for (BasicBlock block : method.getBlocks()) {
+            Set<IrLocal> live = liveness.liveOut(block);
+            List<IrStatement> statements = block.getStatements();
+            for (int s = statements.size() - 1; s >= 0; s--) {
+                IrStatement statement = statements.get(s);
+                if (statement.getKind() == IrStatement.Kind.ASSIGN && !live.contains(statement.getTarget())
+                        || statement.getKind() == IrStatement.Kind.EVAL) {
+                    if (statement.getValue().isPure()) {
+                        statements.remove(s);
+                        removed = true;
+                        continue;
+                    } else if (statement.getKind() == IrStatement.Kind.ASSIGN) {
+                        statement = IrStatement.eval(statement.getValue());
+                        statements.set(s, statement);
+                        removed = true;
+                    }
+                }
+                Liveness.transfer(statement, live);
+            }
+        }
+        return removed;
+    }
+}
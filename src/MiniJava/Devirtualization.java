@@ -0,0 +1,112 @@
+package MiniJava;
+
+import org.objectweb.asm.Opcodes;
+
+import java.util.*;
+
+/**
+ * Class hierarchy analysis. A MiniJava program is a closed world: every class that can ever
+ * exist at run time is in the source file, so whether a class has subclasses, or a method
+ * overrides, is known at compile time.
+ *
+ * Classes without subclasses and methods that no subclass overrides are made final, and calls
+ * that can only run one method are bound to the class that declares it. The JVM has no direct
+ * call for instance methods of other classes, so a bound call is still an invokevirtual, but of
+ * a final method: the interpreter calls those without a vtable lookup, and C1 calls them
+ * statically or inlines them without a class check. Later passes use the bound callee too.
+ */
+class Devirtualization implements IrPass {
+
+    @Override
+    public String getName() {
+        return "devirtualization";
+    }
+
+    @Override
+    public void run(IrProgram program, OptimizationReport report) {
+        Map<String, List<IrClass>> subclasses = new HashMap<>();
+        for (IrClass klass : program.getClasses()) {
+            subclasses.computeIfAbsent(klass.getSuperName(), name -> new ArrayList<>()).add(klass);
+        }
+
+        for (IrClass klass : program.getClasses()) {
+            List<IrClass> descendants = descendants(klass.getName(), subclasses);
+            if (descendants.isEmpty()) {
+                klass.setAccess(klass.getAccess() | Opcodes.ACC_FINAL);
+            }
+            for (IrMethod method : klass.getMethods()) {
+                if (!method.isStatic() && implementations(program, klass.getName(), method.getName(), descendants).size() == 1) {
+                    method.setAccess(method.getAccess() | Opcodes.ACC_FINAL);
+                }
+            }
+        }
+
+        for (IrMethod method : program.getMethods()) {
+            int calls = 0;
+            int bound = 0;
+            for (BasicBlock block : method.getBlocks()) {
+                List<IrExpression> roots = new ArrayList<>();
+                for (IrStatement statement : block.getStatements()) {
+                    roots.addAll(statement.getOperands());
+                }
+                if (block.getExitValue() != null) {
+                    roots.add(block.getExitValue());
+                }
+                for (IrExpression root : roots) {
+                    for (IrExpression call : calls(root)) {
+                        calls++;
+                        Set<IrMethod> targets = implementations(program, call.getOwner(), call.getName(), descendants(call.getOwner(), subclasses));
+                        if (targets.size() == 1) {
+                            call.bindTo(targets.iterator().next().getOwner().getName());
+                            bound++;
+                        }
+                    }
+                }
+            }
+            if (calls > 0) {
+                report.add(this, method, bound + " of " + calls + " calls bound to a single method");
+            }
+        }
+    }
+
+    private static List<IrExpression> calls(IrExpression expression) {
+        List<IrExpression> calls = new ArrayList<>();
+        expression.forEach(e -> {
+            if (e.getKind() == IrExpression.Kind.CALL && !e.isDirect()) {
+                calls.add(e);
+            }
+        });
+        return calls;
+    }
+
+    /**
+     * @return all direct and indirect subclasses of klass.
+     */
+    private static List<IrClass> descendants(String klass, Map<String, List<IrClass>> subclasses) {
+        List<IrClass> descendants = new ArrayList<>();
+        Deque<String> work = new ArrayDeque<>();
+        work.push(klass);
+        while (!work.isEmpty()) {
+            for (IrClass subclass : subclasses.getOrDefault(work.pop(), Collections.emptyList())) {
+                descendants.add(subclass);
+                work.push(subclass.getName());
+            }
+        }
+        return descendants;
+    }
+
+    /**
+     * @return the methods a call of name on an object whose static type is klass may run.
+     */
+    private static Set<IrMethod> implementations(IrProgram program, String klass, String name, List<IrClass> descendants) {
+        Set<IrMethod> implementations = new HashSet<>();
+        implementations.add(program.resolveMethod(klass, name));
+        for (IrClass descendant : descendants) {
+            IrMethod override = descendant.getMethod(name);
+            if (override != null) {
+                implementations.add(override);
+            }
+        }
+        return implementations;
+    }
+}
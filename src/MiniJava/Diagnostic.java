@@ -0,0 +1,56 @@
+package MiniJava;
+
+/**
+ * An error reported while compiling a source file.
+ */
+public class Diagnostic {
+    private final String fileName;
+    private final int line;
+    private final int column;
+    private final String message;
+    private final String text;
+
+    public Diagnostic(String fileName, int line, int column, String message, String text) {
+        this.fileName = fileName;
+        this.line = line;
+        this.column = column;
+        this.message = message;
+        this.text = text;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return the line of the offending token, starting at 1.
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return the position of the offending token in its line, starting at 0.
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * @return the one-line description of the error, e.g. "error: cannot find symbol".
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the diagnostic as printed: location, message, underlined source line and details.
+     */
+    public String getText() {
+        return text;
+    }
+
+    public String toString() {
+        return fileName + ":" + line + ":" + column + ": " + message;
+    }
+}
@@ -0,0 +1,20 @@
+package MiniJava;
+
+import java.io.*;
+import java.nio.file.Files;
+
+/**
+ * Writes each class to &lt;directory&gt;/&lt;Name&gt;.class.
+ */
+public class DirectoryClassSink implements ClassSink {
+    private final File directory;
+
+    public DirectoryClassSink(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public void accept(String className, byte[] bytes) throws IOException {
+        Files.write(new File(directory, className + ".class").toPath(), bytes);
+    }
+}
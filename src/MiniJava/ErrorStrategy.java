@@ -2,129 +2,212 @@ package MiniJava;
 
 import org.antlr.v4.runtime.*;
 
+import java.io.*;
+import java.util.*;
+
+/**
+ * Collects and prints the diagnostics of a single compilation. Every compilation owns its own
+ * ErrorStrategy, so compilations running concurrently in one JVM never see each other's errors.
+ *
+ * Everything printed between one reported error and the next (message, underline, details)
+ * is also recorded as a structured Diagnostic.
+ */
 public final class ErrorStrategy {
-    private static boolean hasError = false;
-    private static int errorCount = 0;
+    private final String fileName;
+    private final PrintStream err;
+    private boolean hasError = false;
+    private int errorCount = 0;
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+
+    //Text of the diagnostic being reported, or null between diagnostics
+    private ByteArrayOutputStream current = null;
+    private Token currentToken = null;
+    private int currentPrefixLength;
+
+    public ErrorStrategy(String fileName, PrintStream out) {
+        this.fileName = fileName;
+        this.err = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                out.write(b);
+                if (current != null) current.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                out.write(b, off, len);
+                if (current != null) current.write(b, off, len);
+            }
+
+            @Override
+            public void flush() {
+                out.flush();
+            }
+        }, true);
+    }
+
+    public PrintStream err() {
+        return err;
+    }
 
-    public static boolean noErrors() {
+    public boolean noErrors() {
         return !hasError;
     }
 
-    public static void reportError() {
+    public void reportError() {
         hasError = true;
         errorCount++;
     }
 
-    public static int getErrorCount() {
+    public int getErrorCount() {
         return errorCount;
     }
 
+    /**
+     * @return the errors reported so far, in the order they were reported.
+     */
+    public List<Diagnostic> getDiagnostics() {
+        closeDiagnostic();
+        return Collections.unmodifiableList(diagnostics);
+    }
+
 
-    public static void exitOnErrors() {
-        if (!ErrorStrategy.noErrors()) {
-            System.err.println("[" + ErrorStrategy.getErrorCount() + "] errors found.\n\n");
-            System.exit(1);
+    /**
+     * Stops the compilation if any errors have been reported.
+     */
+    public void exitOnErrors() {
+        closeDiagnostic();
+        if (!noErrors()) {
+            err.println("[" + getErrorCount() + "] errors found.\n\n");
+            throw new CompilationException(getErrorCount());
         }
     }
 
-    public static void reportFileNameAndLineNumber(Token offendingToken) {
+    public void reportFileNameAndLineNumber(Token offendingToken) {
+        closeDiagnostic();
         reportError();
-        System.err.print(Main.getFileName() + ":" + offendingToken.getLine() + ": ");
+        current = new ByteArrayOutputStream();
+        currentToken = offendingToken;
+        String prefix = fileName + ":" + offendingToken.getLine() + ": ";
+        currentPrefixLength = prefix.length();
+        err.print(prefix);
+
+    }
 
+    /**
+     * Lexer errors have no offending token and the lexer recovers by skipping the character,
+     * so they are printed but do not fail the compilation.
+     */
+    public void reportLexerWarning(int line, int charPositionInLine, String message) {
+        closeDiagnostic();
+        err.println("line " + line + ":" + charPositionInLine + " " + message);
+    }
+
+    private void closeDiagnostic() {
+        if (current == null) {
+            return;
+        }
+        err.flush();
+        String text = current.toString();
+        int endOfMessage = text.indexOf('\n');
+        String message = text.substring(Math.min(currentPrefixLength, text.length()), endOfMessage < 0 ? text.length() : endOfMessage).trim();
+        diagnostics.add(new Diagnostic(fileName, currentToken.getLine(), currentToken.getCharPositionInLine(), message, text));
+        current = null;
+        currentToken = null;
     }
 
-    public static void reportFullError(Recognizer recognizer, Token offendingToken, String message, String symbol, String location) {
-        ErrorStrategy.reportFileNameAndLineNumber(offendingToken);
-        System.err.println(message);
-        ErrorStrategy.reportUnderlineError(recognizer, offendingToken);
-        System.err.println("  " + symbol);
-        System.err.println("  " + location);
+    public void reportFullError(Recognizer recognizer, Token offendingToken, String message, String symbol, String location) {
+        reportFileNameAndLineNumber(offendingToken);
+        err.println(message);
+        reportUnderlineError(recognizer, offendingToken);
+        err.println("  " + symbol);
+        err.println("  " + location);
     }
 
-    public static void reportIncompatibleReturnTypeError(Recognizer recognizer, Token offendingToken, Klass originalKlass, Klass overwritingKlass, Method originalMethod, Method overwritingMethod) {
-        ErrorStrategy.reportFileNameAndLineNumber(offendingToken);
-        System.err.println("error: " + overwritingMethod + " in class " + overwritingKlass + " cannot override " + originalMethod + " in class " + originalKlass);
-        ErrorStrategy.reportUnderlineError(recognizer, offendingToken);
-        System.err.println("return type " + overwritingMethod.getType() + " is not compatible with type " + originalMethod.getType());
+    public void reportIncompatibleReturnTypeError(Recognizer recognizer, Token offendingToken, Klass originalKlass, Klass overwritingKlass, Method originalMethod, Method overwritingMethod) {
+        reportFileNameAndLineNumber(offendingToken);
+        err.println("error: " + overwritingMethod + " in class " + overwritingKlass + " cannot override " + originalMethod + " in class " + originalKlass);
+        reportUnderlineError(recognizer, offendingToken);
+        err.println("return type " + overwritingMethod.getType() + " is not compatible with type " + originalMethod.getType());
     }
 
-    public static void reportDuplicateClassError(Recognizer recognizer, Token offendingToken, String className) {
-        ErrorStrategy.reportFileNameAndLineNumber(offendingToken);
-        System.err.println("error: duplicate class: " + className);
-        ErrorStrategy.reportUnderlineError(recognizer, offendingToken);
+    public void reportDuplicateClassError(Recognizer recognizer, Token offendingToken, String className) {
+        reportFileNameAndLineNumber(offendingToken);
+        err.println("error: duplicate class: " + className);
+        reportUnderlineError(recognizer, offendingToken);
     }
 
-    public static void reportVariableMayNotHaveBeenInitializedError(Recognizer recognizer, Token offendingToken, String symbolName) {
-        ErrorStrategy.reportFileNameAndLineNumber(offendingToken);
-        System.err.println("error: " + symbolName + " might not have been initialized");
-        ErrorStrategy.reportUnderlineError(recognizer, offendingToken);
+    public void reportVariableMayNotHaveBeenInitializedError(Recognizer recognizer, Token offendingToken, String symbolName) {
+        reportFileNameAndLineNumber(offendingToken);
+        err.println("error: " + symbolName + " might not have been initialized");
+        reportUnderlineError(recognizer, offendingToken);
     }
 
-    public static void reportSymbolAlreadyDefinedError(Recognizer recognizer, Token offendingToken, String symbolType, String symbol, String className) {
-        ErrorStrategy.reportFileNameAndLineNumber(offendingToken);
-        System.err.println("error: " + symbolType + " " + symbol + " already defined in class " + className);
-        ErrorStrategy.reportUnderlineError(recognizer, offendingToken);
+    public void reportSymbolAlreadyDefinedError(Recognizer recognizer, Token offendingToken, String symbolType, String symbol, String className) {
+        reportFileNameAndLineNumber(offendingToken);
+        err.println("error: " + symbolType + " " + symbol + " already defined in class " + className);
+        reportUnderlineError(recognizer, offendingToken);
     }
 
-    public static void reportRequiredFoundError(String message, Recognizer recognizer, Token offendingToken, String required, String found) {
-        ErrorStrategy.reportFileNameAndLineNumber(offendingToken);
-        System.err.println(message);
-        ErrorStrategy.reportUnderlineError(recognizer, offendingToken);
-        System.err.println("  required: " + required);
-        System.err.println("  found:    " + found);
+    public void reportRequiredFoundError(String message, Recognizer recognizer, Token offendingToken, String required, String found) {
+        reportFileNameAndLineNumber(offendingToken);
+        err.println(message);
+        reportUnderlineError(recognizer, offendingToken);
+        err.println("  required: " + required);
+        err.println("  found:    " + found);
     }
 
-    public static void reportBinaryOperatorTypeError(Recognizer recognizer, ParserRuleContext ctx, Token operator, Klass foundLeft, Klass foundRight, Klass expectedLeft, Klass expectedRight) {
+    public void reportBinaryOperatorTypeError(Recognizer recognizer, ParserRuleContext ctx, Token operator, Klass foundLeft, Klass foundRight, Klass expectedLeft, Klass expectedRight) {
         if (foundLeft != null && foundRight != null && !(foundLeft == expectedLeft && foundRight == expectedRight)) {
-            ErrorStrategy.reportFileNameAndLineNumber(operator);
-            System.err.println("error: bad operand types for binary operator '" + operator.getText() + "'");
-            ErrorStrategy.reportUnderlineError(recognizer, operator);
-            System.err.println("  first type:   " + foundLeft);
-            System.err.println("  second type:  " + foundRight);
+            reportFileNameAndLineNumber(operator);
+            err.println("error: bad operand types for binary operator '" + operator.getText() + "'");
+            reportUnderlineError(recognizer, operator);
+            err.println("  first type:   " + foundLeft);
+            err.println("  second type:  " + foundRight);
         }
     }
 
-    public static void reportUnresolvedSymbolError(Recognizer recognizer, Token offendingToken, String symbolType, Klass location) {
-        ErrorStrategy.reportFileNameAndLineNumber(offendingToken);
-        System.err.println("error: cannot find symbol");
-        ErrorStrategy.reportUnderlineError(recognizer, offendingToken);
-        System.err.println("  symbol:   " + symbolType + " " + offendingToken.getText());
-        System.err.println("  location: " + "class" + " " + location);
+    public void reportUnresolvedSymbolError(Recognizer recognizer, Token offendingToken, String symbolType, Klass location) {
+        reportFileNameAndLineNumber(offendingToken);
+        err.println("error: cannot find symbol");
+        reportUnderlineError(recognizer, offendingToken);
+        err.println("  symbol:   " + symbolType + " " + offendingToken.getText());
+        err.println("  location: " + "class" + " " + location);
 
     }
 
-    public static void reportUnderlineError(Recognizer recognizer, Token offendingToken) {
+    public void reportUnderlineError(Recognizer recognizer, Token offendingToken) {
         int line = offendingToken.getLine();
         int charPositionInLine = offendingToken.getCharPositionInLine();
         CommonTokenStream tokens = (CommonTokenStream) recognizer.getInputStream();
         String input = tokens.getTokenSource().getInputStream().toString();
         String[] lines = input.split("\n");
         String errorLine = lines[line - 1];
-        System.err.println(errorLine);
+        err.println(errorLine);
         for (int i = 0; i < charPositionInLine; i++) {
             if (errorLine.charAt(i) == '\t') {
-                System.err.print("\t");
+                err.print("\t");
             } else {
-                System.err.print(" ");
+                err.print(" ");
             }
         }
         int start = offendingToken.getStartIndex();
         int stop = offendingToken.getStopIndex();
         if (start >= 0 && stop >= 0) {
-            for (int i = start; i <= stop; i++) System.err.print("^");
+            for (int i = start; i <= stop; i++) err.print("^");
         }
-        System.err.println();
+        err.println();
     }
 
-    public static void reportCyclicInheritanceError(Recognizer recognizer, MiniJavaParser.ClassDeclarationContext ctx, Klass klass) {
+    public void reportCyclicInheritanceError(Recognizer recognizer, MiniJavaParser.ClassDeclarationContext ctx, Klass klass) {
         Klass original = klass;
         while (klass != null) {
             klass = klass.getSuperKlass();
             if (klass == original) {
-                ErrorStrategy.reportFileNameAndLineNumber(ctx.Identifier(1).getSymbol());
-                System.err.println("error: cyclic inheritance.");
-                ErrorStrategy.reportUnderlineError(recognizer, ctx.Identifier(1).getSymbol());
-                System.exit(1);
+                reportFileNameAndLineNumber(ctx.Identifier(1).getSymbol());
+                err.println("error: cyclic inheritance.");
+                reportUnderlineError(recognizer, ctx.Identifier(1).getSymbol());
+                exitOnErrors();
             }
         }
     }
@@ -0,0 +1,410 @@
+package MiniJava;
+
+import org.objectweb.asm.Type;
+
+import java.util.*;
+
+/**
+ * Replaces the long ways that MiniJava programs compute division and equality, for lack of
+ * operators, by DIV and EQ:
+ * <ul>
+ * <li>A loop that only adds loop-invariant amounts to locals, and runs while one of them stays
+ * below a bound, as in {@code while (count02 < aux03) { count01 = count01 + 1; count02 = count02
+ * + 2; }}, runs (bound - local - 1) / step + 1 times, so a block before the loop adds each
+ * amount times that count to its local at once and skips the loop. A local counting down to a
+ * bound, and the {@code <=} forms, work the same way.</li>
+ * <li>Two tests in a row whose false outcomes run the same code, like
+ * {@code if (num1 < num2) r = false; else if (!(num1 < num2 + 1)) r = false; else r = true;},
+ * become one test, when together they bound a value by another from below and from above.</li>
+ * </ul>
+ * Both only apply where they give the same results as the code they replace, int overflow
+ * included. A counting loop runs as before when the division could overflow: when the lower
+ * bound is negative, when the step is not positive, or when the local that counts up would
+ * overflow at the bound, which would make the loop run on. The last is also why num1 < num2 + 1
+ * only means num1 <= num2 as long as num2 < Integer.MAX_VALUE, which the new test keeps.
+ *
+ * The report gives every loop and every pair of tests that was replaced.
+ */
+class IdiomRecognition implements IrPass {
+
+    @Override
+    public String getName() {
+        return "idiom recognition";
+    }
+
+    @Override
+    public void run(IrProgram program, OptimizationReport report) {
+        for (IrMethod method : program.getMethods()) {
+            //A counting loop has no loops inside, so replacing one never changes the others
+            List<Loop> loops = Loop.find(method);
+            for (Loop loop : loops) {
+                CountingLoop counting = CountingLoop.match(loop);
+                if (counting != null) {
+                    replaceLoop(method, loop, loops, counting, report);
+                }
+            }
+            for (BasicBlock block : method.getBlocks()) {
+                replaceTests(method, block, report);
+            }
+        }
+    }
+
+    /**
+     * A loop whose header only tests low < high, or low <= high, and whose other blocks only add
+     * amounts that do not change in the loop to locals, each at most once. One of the bounds is a
+     * local that counts toward the other: low going up or high going down.
+     */
+    private static final class CountingLoop {
+        final BasicBlock exit;
+        final IrExpression condition;
+        final IrExpression low;
+        final IrExpression high;
+        final boolean strict;
+        final IrExpression step;
+        final boolean countsUp;
+        //The locals the loop adds to or subtracts from, and the statements that do it
+        final Map<IrLocal, IrStatement> increments;
+
+        private CountingLoop(BasicBlock exit, IrExpression condition, IrExpression low, IrExpression high, boolean strict,
+                             IrExpression step, boolean countsUp, Map<IrLocal, IrStatement> increments) {
+            this.exit = exit;
+            this.condition = condition;
+            this.low = low;
+            this.high = high;
+            this.strict = strict;
+            this.step = step;
+            this.countsUp = countsUp;
+            this.increments = increments;
+        }
+
+        static CountingLoop match(Loop loop) {
+            BasicBlock header = loop.getHeader();
+            if (!header.getStatements().isEmpty() || header.getExit() != BasicBlock.Exit.BRANCH
+                    || loop.contains(header.getTarget()) == loop.contains(header.getElseTarget())) {
+                return null;
+            }
+            Map<IrLocal, IrStatement> increments = new LinkedHashMap<>();
+            for (BasicBlock block : loop.getBlocks()) {
+                if (block == header) {
+                    continue;
+                }
+                if (block.getExit() != BasicBlock.Exit.GOTO || !loop.contains(block.getTarget())) {
+                    return null;
+                }
+                for (IrStatement statement : block.getStatements()) {
+                    if (statement.getKind() != IrStatement.Kind.ASSIGN || amount(statement) == null
+                            || increments.put(statement.getTarget(), statement) != null) {
+                        return null;
+                    }
+                }
+            }
+            for (IrStatement increment : increments.values()) {
+                if (!isInvariant(amount(increment), increments)) {
+                    return null;
+                }
+            }
+
+            //The condition to run the loop once more
+            boolean exitsIfTrue = !loop.contains(header.getTarget());
+            IrExpression condition = header.getExitValue();
+            boolean negated = exitsIfTrue;
+            IrExpression test = condition;
+            while (test.getKind() == IrExpression.Kind.NOT) {
+                negated = !negated;
+                test = test.getOperand(0);
+            }
+            if (test.getKind() != IrExpression.Kind.LT) {
+                return null;
+            }
+            //!(a < b) is b <= a
+            IrExpression low = test.getOperand(negated ? 1 : 0);
+            IrExpression high = test.getOperand(negated ? 0 : 1);
+            boolean countsUp = low.getKind() == IrExpression.Kind.LOCAL && increments.containsKey(low.getLocal());
+            IrExpression counter = countsUp ? low : high;
+            IrExpression bound = countsUp ? high : low;
+            if (counter.getKind() != IrExpression.Kind.LOCAL || !increments.containsKey(counter.getLocal())
+                    || !isInvariant(bound, increments)) {
+                return null;
+            }
+            IrStatement increment = increments.get(counter.getLocal());
+            if (increment.getValue().getKind() != (countsUp ? IrExpression.Kind.ADD : IrExpression.Kind.SUB)) {
+                return null;
+            }
+            IrExpression step = amount(increment);
+            if (step.isConstant() && step.getValue() <= 0) {
+                return null;
+            }
+            return new CountingLoop(exitsIfTrue ? header.getTarget() : header.getElseTarget(),
+                    exitsIfTrue ? IrExpression.not(condition.copy()) : condition.copy(), low, high, !negated, step, countsUp, increments);
+        }
+
+        /**
+         * @return the amount that increment adds to or subtracts from its target, or null if it
+         * is not of the form x = x + amount, x = amount + x or x = x - amount.
+         */
+        static IrExpression amount(IrStatement increment) {
+            IrExpression value = increment.getValue();
+            if (value.getKind() != IrExpression.Kind.ADD && value.getKind() != IrExpression.Kind.SUB) {
+                return null;
+            }
+            if (isLocal(value.getOperand(0), increment.getTarget())) {
+                return value.getOperand(1);
+            } else if (value.getKind() == IrExpression.Kind.ADD && isLocal(value.getOperand(1), increment.getTarget())) {
+                return value.getOperand(0);
+            }
+            return null;
+        }
+
+        private static boolean isInvariant(IrExpression expression, Map<IrLocal, IrStatement> increments) {
+            return expression.isConstant() || expression.getKind() == IrExpression.Kind.LOCAL && !increments.containsKey(expression.getLocal());
+        }
+    }
+
+    private void replaceLoop(IrMethod method, Loop loop, List<Loop> loops, CountingLoop counting, OptimizationReport report) {
+        Map<IrLocal, IrExpression> entryValues = entryValues(method, loop, counting.increments.keySet());
+        BasicBlock preheader = loop.createPreheader(method, loops);
+
+        //The loop runs (high - low) / step + 1 times, or (high - low - 1) / step + 1 if it stops at high
+        IrExpression distance = IrExpression.binary(IrExpression.Kind.SUB, counting.high.copy(), counting.low.copy());
+        if (counting.strict) {
+            distance = IrExpression.binary(IrExpression.Kind.SUB, distance, IrExpression.constant(1));
+        }
+        IrLocal trips = method.addTemporary(Type.INT_TYPE);
+        BasicBlock division = method.newBlock();
+        division.getStatements().add(IrStatement.assign(trips, IrExpression.binary(IrExpression.Kind.ADD,
+                IrExpression.binary(IrExpression.Kind.DIV, distance, counting.step.copy()), IrExpression.constant(1))));
+        for (IrStatement increment : counting.increments.values()) {
+            IrExpression amount = CountingLoop.amount(increment);
+            IrExpression total = amount.isConstant() && amount.getValue() == 1 ? IrExpression.local(trips)
+                    : IrExpression.binary(IrExpression.Kind.MUL, amount.copy(), IrExpression.local(trips));
+            division.getStatements().add(IrStatement.assign(increment.getTarget(),
+                    IrExpression.binary(increment.getValue().getKind(), IrExpression.local(increment.getTarget()), total)));
+        }
+        division.jumpTo(counting.exit);
+        method.getBlocks().add(method.getBlocks().indexOf(counting.exit), division);
+
+        //Only skip the loop if it runs at all and the division computes what it would
+        IrExpression guard = IrExpression.not(IrExpression.binary(IrExpression.Kind.LT, counting.low.copy(), IrExpression.constant(0)));
+        if (!counting.step.isConstant()) {
+            guard = IrExpression.binary(IrExpression.Kind.AND, guard,
+                    IrExpression.binary(IrExpression.Kind.LT, IrExpression.constant(0), counting.step.copy()));
+        }
+        if (counting.countsUp) {
+            //The counter stops below high + step, which must not overflow
+            IrExpression last = counting.strict
+                    ? IrExpression.binary(IrExpression.Kind.SUB, counting.high.copy(), IrExpression.constant(1)) : counting.high.copy();
+            guard = IrExpression.binary(IrExpression.Kind.AND, guard, IrExpression.not(IrExpression.binary(IrExpression.Kind.LT,
+                    IrExpression.binary(IrExpression.Kind.SUB, IrExpression.constant(Integer.MAX_VALUE), counting.step.copy()), last)));
+        }
+        preheader.branch(IrExpression.binary(IrExpression.Kind.AND, counting.condition.copy(), guard), division, loop.getHeader());
+
+        for (IrStatement statement : division.getStatements()) {
+            statement.setValue(substitute(statement.getValue(), entryValues));
+        }
+        preheader.setExitValue(substitute(preheader.getExitValue(), entryValues));
+        report.add(this, method, "replaced the loop at " + loop.getHeader() + " by a division by " + counting.step);
+    }
+
+    /**
+     * @return the constants that locals hold when the loop is entered, for those that the only
+     * block jumping into the loop assigns a constant last.
+     */
+    private static Map<IrLocal, IrExpression> entryValues(IrMethod method, Loop loop, Set<IrLocal> locals) {
+        Map<IrLocal, IrExpression> values = new HashMap<>();
+        BasicBlock entering = null;
+        for (BasicBlock block : method.getPredecessors().get(loop.getHeader())) {
+            if (!loop.contains(block)) {
+                if (entering != null || block.getExit() != BasicBlock.Exit.GOTO) {
+                    return values;
+                }
+                entering = block;
+            }
+        }
+        if (entering == null) {
+            return values;
+        }
+        Set<IrLocal> seen = new HashSet<>();
+        List<IrStatement> statements = entering.getStatements();
+        for (int s = statements.size() - 1; s >= 0; s--) {
+            IrStatement statement = statements.get(s);
+            if (statement.getKind() == IrStatement.Kind.ASSIGN && locals.contains(statement.getTarget())
+                    && seen.add(statement.getTarget()) && statement.getValue().isConstant()) {
+                values.put(statement.getTarget(), statement.getValue());
+            }
+        }
+        return values;
+    }
+
+    private static IrExpression substitute(IrExpression expression, Map<IrLocal, IrExpression> values) {
+        if (expression.getKind() == IrExpression.Kind.LOCAL) {
+            IrExpression value = values.get(expression.getLocal());
+            return value != null ? value.copy() : expression;
+        }
+        List<IrExpression> operands = expression.getOperands();
+        for (int i = 0; i < operands.size(); i++) {
+            operands.set(i, substitute(operands.get(i), values));
+        }
+        return expression;
+    }
+
+    /**
+     * low <= high, which only holds while guard, if any, is true as well.
+     */
+    private static final class Bound {
+        final IrExpression low;
+        final IrExpression high;
+        final IrExpression guard;
+
+        Bound(IrExpression low, IrExpression high, IrExpression guard) {
+            this.low = low;
+            this.high = high;
+            this.guard = guard;
+        }
+    }
+
+    /**
+     * Turns block, when it branches to a block that only tests again, and one outcome of each
+     * test runs the same code, into a single test for the other outcome, if that is equality.
+     */
+    private void replaceTests(IrMethod method, BasicBlock block, OptimizationReport report) {
+        if (block.getExit() != BasicBlock.Exit.BRANCH) {
+            return;
+        }
+        for (BasicBlock second : block.getSuccessors()) {
+            BasicBlock other = second == block.getTarget() ? block.getElseTarget() : block.getTarget();
+            //Other blocks may still jump to second, which stays as it is
+            if (second == block || second == other || !second.getStatements().isEmpty() || second.getExit() != BasicBlock.Exit.BRANCH) {
+                continue;
+            }
+            BasicBlock both;
+            if (sameCode(method, second.getTarget(), other)) {
+                both = second.getElseTarget();
+            } else if (sameCode(method, second.getElseTarget(), other)) {
+                both = second.getTarget();
+            } else {
+                continue;
+            }
+            //Both tests lead to both when first and then
+            IrExpression first = second == block.getTarget() ? block.getExitValue() : IrExpression.not(block.getExitValue().copy());
+            IrExpression then = both == second.getTarget() ? second.getExitValue() : IrExpression.not(second.getExitValue().copy());
+            Bound one = bound(first, block);
+            Bound two = bound(then, block);
+            if (one == null || two == null || !one.low.sameAs(two.high) || !one.high.sameAs(two.low)) {
+                continue;
+            }
+            IrExpression equal = IrExpression.binary(IrExpression.Kind.EQ, two.low.copy(), two.high.copy());
+            for (Bound guarded : Arrays.asList(one, two)) {
+                if (guarded.guard != null) {
+                    equal = IrExpression.binary(IrExpression.Kind.AND, equal, guarded.guard);
+                }
+            }
+            block.branch(equal, both, other);
+            report.add(this, method, "replaced the tests in " + block + " and " + second + " by " + equal);
+            return;
+        }
+    }
+
+    /**
+     * @return condition as a bound, if it is !(a < b), which is b <= a, or a < b + 1, which is
+     * a <= b unless b is Integer.MAX_VALUE; b + 1 may also be a local that block assigns it to.
+     */
+    private static Bound bound(IrExpression condition, BasicBlock block) {
+        boolean negated = false;
+        while (condition.getKind() == IrExpression.Kind.NOT) {
+            negated = !negated;
+            condition = condition.getOperand(0);
+        }
+        if (condition.getKind() != IrExpression.Kind.LT || !isSimple(condition.getOperand(0))) {
+            return null;
+        }
+        IrExpression left = condition.getOperand(0);
+        IrExpression right = condition.getOperand(1);
+        if (negated) {
+            return isSimple(right) ? new Bound(right, left, null) : null;
+        }
+        IrExpression plusOne = right.getKind() == IrExpression.Kind.LOCAL ? definition(block, right.getLocal()) : right;
+        if (plusOne == null || plusOne.getKind() != IrExpression.Kind.ADD) {
+            return null;
+        }
+        IrExpression high;
+        if (isConstant(plusOne.getOperand(1), 1)) {
+            high = plusOne.getOperand(0);
+        } else if (isConstant(plusOne.getOperand(0), 1)) {
+            high = plusOne.getOperand(1);
+        } else {
+            return null;
+        }
+        if (!isSimple(high)) {
+            return null;
+        }
+        return new Bound(left, high, IrExpression.binary(IrExpression.Kind.LT, high.copy(), IrExpression.constant(Integer.MAX_VALUE)));
+    }
+
+    /**
+     * @return the value of the last assignment to local in block, if it still holds at the end
+     * of block, or null.
+     */
+    private static IrExpression definition(BasicBlock block, IrLocal local) {
+        List<IrStatement> statements = block.getStatements();
+        Set<IrLocal> assignedLater = new HashSet<>();
+        for (int s = statements.size() - 1; s >= 0; s--) {
+            IrStatement statement = statements.get(s);
+            if (statement.getKind() != IrStatement.Kind.ASSIGN) {
+                continue;
+            }
+            if (statement.getTarget() == local) {
+                boolean[] changed = {false};
+                statement.getValue().forEach(e -> changed[0] |= e.getKind() == IrExpression.Kind.LOCAL && assignedLater.contains(e.getLocal()));
+                return changed[0] ? null : statement.getValue();
+            }
+            assignedLater.add(statement.getTarget());
+        }
+        return null;
+    }
+
+    /**
+     * @return true if both blocks run the same statements and go to the same block, after
+     * jumping over empty blocks.
+     */
+    private static boolean sameCode(IrMethod method, BasicBlock block, BasicBlock other) {
+        block = DeadCodeElimination.skipEmpty(method, block);
+        other = DeadCodeElimination.skipEmpty(method, other);
+        if (block == other) {
+            return true;
+        }
+        List<IrStatement> statements = block.getStatements();
+        List<IrStatement> otherStatements = other.getStatements();
+        if (block.getExit() != BasicBlock.Exit.GOTO || other.getExit() != BasicBlock.Exit.GOTO
+                || DeadCodeElimination.skipEmpty(method, block.getTarget()) != DeadCodeElimination.skipEmpty(method, other.getTarget())
+                || statements.size() != otherStatements.size()) {
+            return false;
+        }
+        for (int s = 0; s < statements.size(); s++) {
+            IrStatement statement = statements.get(s);
+            IrStatement otherStatement = otherStatements.get(s);
+            if (statement.getKind() != otherStatement.getKind() || statement.getTarget() != otherStatement.getTarget()
+                    || !Objects.equals(statement.getName(), otherStatement.getName())
+                    || statement.getOperands().size() != otherStatement.getOperands().size()) {
+                return false;
+            }
+            for (int i = 0; i < statement.getOperands().size(); i++) {
+                if (!statement.getOperands().get(i).sameAs(otherStatement.getOperands().get(i))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSimple(IrExpression expression) {
+        return expression.isConstant() || expression.getKind() == IrExpression.Kind.LOCAL;
+    }
+
+    private static boolean isLocal(IrExpression expression, IrLocal local) {
+        return expression.getKind() == IrExpression.Kind.LOCAL && expression.getLocal() == local;
+    }
+
+    private static boolean isConstant(IrExpression expression, int value) {
+        return expression.isConstant() && expression.getValue() == value;
+    }
+}
@@ -10,12 +10,14 @@ public class InitializationBeforeUseCheckVisitor extends MiniJavaBaseVisitor<Set
     final Map<String, Klass> klasses;
     ParseTreeProperty<Scope> scopes;
     Scope currentScope = null;
+    final ErrorStrategy errors;
 
 
-    public InitializationBeforeUseCheckVisitor(final Map<String, Klass> klasses, ParseTreeProperty<Scope> scopes, MiniJavaParser parser) {
-        this.scopes = scopes;
-        this.klasses = klasses;
-        this.parser = parser;
+    public InitializationBeforeUseCheckVisitor(CompilationContext context) {
+        this.scopes = context.getScopes();
+        this.klasses = context.getKlasses();
+        this.parser = context.getParser();
+        this.errors = context.getErrors();
     }
 
     @Override
@@ -82,7 +84,7 @@ public class InitializationBeforeUseCheckVisitor extends MiniJavaBaseVisitor<Set
     public Set<Symbol> visitIdentifierExpression(MiniJavaParser.IdentifierExpressionContext ctx) {
         String identifier = ctx.Identifier().getText();
         if (!currentScope.hasBeenInitialized(identifier)) {
-            ErrorStrategy.reportVariableMayNotHaveBeenInitializedError(parser, ctx.Identifier().getSymbol(), identifier);
+            errors.reportVariableMayNotHaveBeenInitializedError(parser, ctx.Identifier().getSymbol(), identifier);
         }
         return visitChildren(ctx);
     }
@@ -0,0 +1,436 @@
+package MiniJava;
+
+import java.util.*;
+
+/**
+ * Replaces calls of small methods by a copy of their body. Only direct calls are inlined, whose
+ * callee Devirtualization has proven to be the only method they can run, and only callees that
+ * cannot reach themselves through calls. Callees are done before their callers, so a caller
+ * inlines the already inlined body of a callee.
+ *
+ * The sizes follow HotSpot's defaults: callees of at most 35 bytes of code (MaxInlineSize), into
+ * callers while they stay below 325 bytes (FreqInlineSize). The report lists every inlined call.
+ *
+ * Inlining a call in the middle of a statement first evaluates everything the statement
+ * evaluates before the call into temporaries, then the receiver and the arguments, and checks
+ * the receiver for null like the call would. The statement itself moves to a new block after the
+ * inlined body, and reads the result from a temporary. Calls in the right operand of an AND,
+ * which only run sometimes, are not inlined.
+ */
+class Inlining implements IrPass {
+    static final int MAX_CALLEE_BYTES = 35;
+    static final int MAX_CALLER_BYTES = 325;
+
+    @Override
+    public String getName() {
+        return "inlining";
+    }
+
+    @Override
+    public void run(IrProgram program, OptimizationReport report) {
+        Map<IrMethod, Set<IrMethod>> callees = new HashMap<>();
+        for (IrMethod method : program.getMethods()) {
+            callees.put(method, callees(program, method));
+        }
+        Set<IrMethod> recursive = new HashSet<>();
+        for (IrMethod method : program.getMethods()) {
+            if (reaches(method, method, callees)) {
+                recursive.add(method);
+            }
+        }
+
+        Map<IrMethod, Integer> sizes = new HashMap<>();
+        for (IrMethod caller : bottomUp(program, callees)) {
+            new Inliner(program, caller, recursive, sizes).run(this, report);
+        }
+    }
+
+    /**
+     * @return the methods that the calls of method may run.
+     */
+    private static Set<IrMethod> callees(IrProgram program, IrMethod method) {
+        Set<IrMethod> callees = new HashSet<>();
+        for (BasicBlock block : method.getBlocks()) {
+            for (IrExpression root : roots(block)) {
+                root.forEach(e -> {
+                    if (e.getKind() != IrExpression.Kind.CALL) {
+                        return;
+                    }
+                    if (e.isDirect()) {
+                        callees.add(program.getClass(e.getOwner()).getMethod(e.getName()));
+                        return;
+                    }
+                    for (IrMethod candidate : program.getMethods()) {
+                        if (candidate.getName().equals(e.getName())) {
+                            callees.add(candidate);
+                        }
+                    }
+                });
+            }
+        }
+        return callees;
+    }
+
+    private static boolean reaches(IrMethod from, IrMethod to, Map<IrMethod, Set<IrMethod>> callees) {
+        Set<IrMethod> visited = new HashSet<>();
+        Deque<IrMethod> work = new ArrayDeque<>(callees.get(from));
+        while (!work.isEmpty()) {
+            IrMethod method = work.pop();
+            if (method == to) {
+                return true;
+            }
+            if (visited.add(method)) {
+                work.addAll(callees.get(method));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return every method of the program, each after the methods it calls, except where calls
+     * form a cycle.
+     */
+    private static List<IrMethod> bottomUp(IrProgram program, Map<IrMethod, Set<IrMethod>> callees) {
+        List<IrMethod> order = new ArrayList<>();
+        Set<IrMethod> visited = new HashSet<>();
+        for (IrMethod method : program.getMethods()) {
+            postorder(method, callees, visited, order);
+        }
+        return order;
+    }
+
+    private static void postorder(IrMethod method, Map<IrMethod, Set<IrMethod>> callees, Set<IrMethod> visited, List<IrMethod> order) {
+        if (visited.add(method)) {
+            for (IrMethod callee : callees.get(method)) {
+                postorder(callee, callees, visited, order);
+            }
+            order.add(method);
+        }
+    }
+
+    private static List<IrExpression> roots(BasicBlock block) {
+        List<IrExpression> roots = new ArrayList<>();
+        for (IrStatement statement : block.getStatements()) {
+            roots.addAll(statement.getOperands());
+        }
+        if (block.getExitValue() != null) {
+            roots.add(block.getExitValue());
+        }
+        return roots;
+    }
+
+    /**
+     * Inlines the calls of one caller.
+     */
+    private static final class Inliner {
+        private final IrProgram program;
+        private final IrMethod caller;
+        private final Set<IrMethod> recursive;
+        private final Map<IrMethod, Integer> sizes;
+        private int callerSize;
+
+        //The call being inlined, and the local or receiver each variable of its callee becomes
+        private IrMethod callee;
+        private final Map<IrLocal, IrExpression> variables = new HashMap<>();
+        private IrExpression receiver;
+
+        Inliner(IrProgram program, IrMethod caller, Set<IrMethod> recursive, Map<IrMethod, Integer> sizes) {
+            this.program = program;
+            this.caller = caller;
+            this.recursive = recursive;
+            this.sizes = sizes;
+        }
+
+        void run(IrPass pass, OptimizationReport report) {
+            callerSize = IrCodeGenerator.codeSize(caller);
+            Set<BasicBlock> inlined = new HashSet<>();
+            for (int i = 0; i < caller.getBlocks().size(); i++) {
+                BasicBlock block = caller.getBlocks().get(i);
+                if (inlined.contains(block)) {
+                    continue;
+                }
+                Deque<IrExpression> path = new ArrayDeque<>();
+                List<IrStatement> statements = block.getStatements();
+                for (int s = 0; s <= statements.size(); s++) {
+                    List<IrExpression> roots = s < statements.size() ? statements.get(s).getOperands()
+                            : block.getExitValue() != null ? Collections.singletonList(block.getExitValue()) : Collections.emptyList();
+                    for (int r = 0; r < roots.size(); r++) {
+                        if (find(roots.get(r), path)) {
+                            IrMethod target = calleeOf(path.getLast());
+                            int size = sizes.get(target);
+                            List<BasicBlock> body = inline(block, s, r, new ArrayList<>(path));
+                            inlined.addAll(body);
+                            callerSize += size;
+                            report.add(pass, caller, "inlined " + target.getQualifiedName() + " (" + size + " bytes)");
+                            break;
+                        }
+                    }
+                    if (!path.isEmpty()) {
+                        //The rest of the block moved to a new block after the inlined body
+                        break;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Searches root in evaluation order for the first call that can be inlined, leaving the
+         * nodes from root down to it in path.
+         */
+        private boolean find(IrExpression expression, Deque<IrExpression> path) {
+            path.addLast(expression);
+            List<IrExpression> operands = expression.getOperands();
+            for (int i = 0; i < operands.size(); i++) {
+                if (expression.getKind() == IrExpression.Kind.AND && i == 1) {
+                    break;
+                }
+                if (find(operands.get(i), path)) {
+                    return true;
+                }
+            }
+            if (expression.getKind() == IrExpression.Kind.CALL && canInline(expression)) {
+                return true;
+            }
+            path.removeLast();
+            return false;
+        }
+
+        private IrMethod calleeOf(IrExpression call) {
+            return program.getClass(call.getOwner()).getMethod(call.getName());
+        }
+
+        private boolean canInline(IrExpression call) {
+            if (!call.isDirect()) {
+                return false;
+            }
+            IrMethod target = calleeOf(call);
+            if (target == caller || recursive.contains(target)) {
+                return false;
+            }
+            int size = sizes.computeIfAbsent(target, IrCodeGenerator::codeSize);
+            return size <= MAX_CALLEE_BYTES && callerSize + size <= MAX_CALLER_BYTES;
+        }
+
+        /**
+         * Inlines the call at the end of path, which starts at operand r of statement s of block,
+         * or at its exit value if s is past the statements.
+         *
+         * @return the blocks of the inlined body.
+         */
+        private List<BasicBlock> inline(BasicBlock block, int s, int r, List<IrExpression> path) {
+            IrExpression call = path.get(path.size() - 1);
+            callee = calleeOf(call);
+            variables.clear();
+
+            //The statement with the call and everything after it continue in a new block
+            BasicBlock continuation = caller.newBlock();
+            List<IrStatement> statements = block.getStatements();
+            IrStatement statement = s < statements.size() ? statements.get(s) : null;
+            List<IrStatement> tail = statements.subList(Math.min(s, statements.size()), statements.size());
+            continuation.getStatements().addAll(tail);
+            tail.clear();
+            copyExit(block, continuation);
+
+            //Evaluate what the statement evaluates before the call
+            if (statement != null) {
+                spillBefore(block, statement.getOperands(), r);
+            }
+            for (int depth = 0; depth + 1 < path.size(); depth++) {
+                IrExpression node = path.get(depth);
+                spillBefore(block, node.getOperands(), node.getOperands().indexOf(path.get(depth + 1)));
+            }
+
+            //Then the receiver and the arguments
+            receiver = call.getOperand(0);
+            if (receiver.getKind() != IrExpression.Kind.THIS && receiver.getKind() != IrExpression.Kind.LOCAL) {
+                IrLocal temporary = caller.addTemporary(receiver.getType());
+                block.getStatements().add(IrStatement.assign(temporary, receiver));
+                receiver = IrExpression.local(temporary);
+            }
+            Set<IrLocal> assigned = assignedLocals(callee);
+            for (int i = 0; i < callee.getParameters().size(); i++) {
+                IrLocal parameter = callee.getParameters().get(i);
+                IrExpression argument = call.getOperand(i + 1);
+                if (!assigned.contains(parameter) && (argument.isConstant() || argument.getKind() == IrExpression.Kind.LOCAL)) {
+                    //Nothing in the callee can change the caller's locals
+                    variables.put(parameter, argument);
+                } else {
+                    IrLocal temporary = caller.addTemporary(parameter.getType());
+                    block.getStatements().add(IrStatement.assign(temporary, argument));
+                    variables.put(parameter, IrExpression.local(temporary));
+                }
+            }
+            if (call.getOperand(0).getKind() != IrExpression.Kind.THIS && call.getOperand(0).getKind() != IrExpression.Kind.NEW_OBJECT
+                    && !dereferencesThisFirst(callee)) {
+                block.getStatements().add(IrStatement.eval(IrExpression.nullCheck(receiver.copy())));
+            }
+            for (IrLocal local : callee.getLocals()) {
+                variables.put(local, IrExpression.local(caller.addTemporary(local.getType())));
+            }
+
+            //Copy the body, with its returns assigning the result and jumping to the continuation
+            IrLocal result = caller.addTemporary(callee.getReturnType());
+            Map<BasicBlock, BasicBlock> copies = new LinkedHashMap<>();
+            Set<BasicBlock> reachable = callee.getReachableBlocks();
+            for (BasicBlock original : callee.getBlocks()) {
+                if (reachable.contains(original)) {
+                    copies.put(original, caller.newBlock());
+                }
+            }
+            for (Map.Entry<BasicBlock, BasicBlock> copy : copies.entrySet()) {
+                BasicBlock original = copy.getKey();
+                BasicBlock body = copy.getValue();
+                for (IrStatement originalStatement : original.getStatements()) {
+                    body.getStatements().add(substitute(originalStatement));
+                }
+                switch (original.getExit()) {
+                    case GOTO:
+                        body.jumpTo(copies.get(original.getTarget()));
+                        break;
+                    case BRANCH:
+                        body.branch(substitute(original.getExitValue()), copies.get(original.getTarget()), copies.get(original.getElseTarget()));
+                        break;
+                    default:
+                        body.getStatements().add(IrStatement.assign(result, substitute(original.getExitValue())));
+                        body.jumpTo(continuation);
+                }
+            }
+            block.jumpTo(copies.get(callee.getEntry()));
+
+            //The statement reads the result instead of calling
+            IrExpression value = IrExpression.local(result);
+            if (path.size() > 1) {
+                List<IrExpression> operands = path.get(path.size() - 2).getOperands();
+                operands.set(operands.indexOf(call), value);
+            } else if (statement != null) {
+                statement.getOperands().set(r, value);
+            } else {
+                continuation.setExitValue(value);
+            }
+
+            List<BasicBlock> body = new ArrayList<>(copies.values());
+            int position = caller.getBlocks().indexOf(block) + 1;
+            caller.getBlocks().addAll(position, body);
+            caller.getBlocks().add(position + body.size(), continuation);
+            return body;
+        }
+
+        /**
+         * Evaluates the operands before index into temporaries, unless they are constants or
+         * locals, which the inlined body cannot change.
+         */
+        private void spillBefore(BasicBlock block, List<IrExpression> operands, int index) {
+            for (int i = 0; i < index; i++) {
+                IrExpression operand = operands.get(i);
+                if (operand.isConstant() || operand.getKind() == IrExpression.Kind.LOCAL || operand.getKind() == IrExpression.Kind.THIS) {
+                    continue;
+                }
+                IrLocal temporary = caller.addTemporary(operand.getType());
+                block.getStatements().add(IrStatement.assign(temporary, operand));
+                operands.set(i, IrExpression.local(temporary));
+            }
+        }
+
+        /**
+         * @return true if the first thing method does that can throw or be observed is to read or
+         * write a field of this, which throws the NullPointerException of a null receiver itself.
+         */
+        private static boolean dereferencesThisFirst(IrMethod method) {
+            BasicBlock entry = method.getEntry();
+            for (IrStatement statement : entry.getStatements()) {
+                for (IrExpression operand : statement.getOperands()) {
+                    IrExpression first = firstThrowing(operand);
+                    if (first != null) {
+                        return isFieldOfThis(first);
+                    }
+                }
+                switch (statement.getKind()) {
+                    case ASSIGN:
+                        continue;
+                    case PUT_FIELD:
+                        return statement.getOperands().get(0).getKind() == IrExpression.Kind.THIS;
+                    default:
+                        return false;
+                }
+            }
+            IrExpression first = entry.getExitValue() != null ? firstThrowing(entry.getExitValue()) : null;
+            return first != null && isFieldOfThis(first);
+        }
+
+        /**
+         * @return the first node of expression in evaluation order that may throw or is a field of
+         * this, or null.
+         */
+        private static IrExpression firstThrowing(IrExpression expression) {
+            for (IrExpression operand : expression.getOperands()) {
+                IrExpression first = firstThrowing(operand);
+                if (first != null) {
+                    return first;
+                }
+            }
+            return expression.mayThrowItself() || isFieldOfThis(expression) ? expression : null;
+        }
+
+        private static boolean isFieldOfThis(IrExpression expression) {
+            return expression.getKind() == IrExpression.Kind.GET_FIELD && expression.getOperand(0).getKind() == IrExpression.Kind.THIS;
+        }
+
+        private static Set<IrLocal> assignedLocals(IrMethod method) {
+            Set<IrLocal> assigned = new HashSet<>();
+            for (BasicBlock block : method.getBlocks()) {
+                for (IrStatement statement : block.getStatements()) {
+                    if (statement.getKind() == IrStatement.Kind.ASSIGN) {
+                        assigned.add(statement.getTarget());
+                    }
+                }
+            }
+            return assigned;
+        }
+
+        private IrStatement substitute(IrStatement statement) {
+            if (statement.getKind() == IrStatement.Kind.ASSIGN) {
+                IrLocal target = variables.get(statement.getTarget()).getLocal();
+                return IrStatement.assign(target, substitute(statement.getValue()));
+            }
+            IrStatement copy = statement.copy();
+            List<IrExpression> operands = copy.getOperands();
+            for (int i = 0; i < operands.size(); i++) {
+                operands.set(i, substituteInPlace(operands.get(i)));
+            }
+            return copy;
+        }
+
+        /**
+         * @return a copy of an expression of the callee, reading the caller's variables.
+         */
+        private IrExpression substitute(IrExpression expression) {
+            return substituteInPlace(expression.copy());
+        }
+
+        private IrExpression substituteInPlace(IrExpression expression) {
+            if (expression.getKind() == IrExpression.Kind.LOCAL) {
+                return variables.get(expression.getLocal()).copy();
+            } else if (expression.getKind() == IrExpression.Kind.THIS) {
+                return receiver.copy();
+            }
+            List<IrExpression> operands = expression.getOperands();
+            for (int i = 0; i < operands.size(); i++) {
+                operands.set(i, substituteInPlace(operands.get(i)));
+            }
+            return expression;
+        }
+
+        private static void copyExit(BasicBlock from, BasicBlock to) {
+            switch (from.getExit()) {
+                case GOTO:
+                    to.jumpTo(from.getTarget());
+                    break;
+                case BRANCH:
+                    to.branch(from.getExitValue(), from.getTarget(), from.getElseTarget());
+                    break;
+                default:
+                    to.returnValue(from.getExitValue());
+            }
+        }
+    }
+}
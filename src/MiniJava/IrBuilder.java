@@ -0,0 +1,252 @@
+package MiniJava;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeProperty;
+import org.objectweb.asm.Type;
+
+import java.util.*;
+
+/**
+ * Builds the IR of a program from its parse tree, once the semantic checks have passed.
+ * Statements become basic blocks, expressions become IrExpression trees, and every variable of
+ * the source program becomes an IrLocal or a field access.
+ */
+class IrBuilder extends MiniJavaBaseVisitor<IrExpression> {
+    private static final String OBJECT = "java/lang/Object";
+
+    private final Map<String, Klass> klasses;
+    private final ParseTreeProperty<Scope> scopes;
+    private final ParseTreeProperty<Klass> callerTypes;
+
+    private IrClass klass;
+    private IrMethod method;
+    private Scope scope;
+    private final Map<Symbol, IrLocal> locals = new HashMap<>();
+    private BasicBlock current;
+
+    IrBuilder(CompilationContext context) {
+        this.klasses = context.getKlasses();
+        this.scopes = context.getScopes();
+        this.callerTypes = context.getCallerTypes();
+    }
+
+    IrProgram build(ParseTree tree) {
+        MiniJavaParser.GoalContext goal = (MiniJavaParser.GoalContext) tree;
+        IrProgram program = new IrProgram(klasses);
+        program.addClass(mainClass(goal.mainClass()));
+        for (MiniJavaParser.ClassDeclarationContext declaration : goal.classDeclaration()) {
+            program.addClass(classDeclaration(declaration));
+        }
+        return program;
+    }
+
+    private IrClass mainClass(MiniJavaParser.MainClassContext ctx) {
+        String name = ctx.Identifier(0).getText();
+        klass = new IrClass(name, OBJECT, true, ctx);
+        method = new IrMethod(klass, "main", "([Ljava/lang/String;)V", true);
+        method.addParameter(ctx.Identifier(1).getText(), Type.getType(String[].class));
+        klass.getMethods().add(method);
+        scope = scopes.get(ctx);
+        startBlock(method.newBlock());
+        statement(ctx.statement());
+        current.returnValue(null);
+        return klass;
+    }
+
+    private IrClass classDeclaration(MiniJavaParser.ClassDeclarationContext ctx) {
+        Klass symbol = klasses.get(ctx.Identifier(0).getText());
+        klass = new IrClass(symbol.getScopeName(), symbol.getSuperKlass() != null ? symbol.getSuperKlass().getScopeName() : OBJECT, false, ctx);
+        for (MiniJavaParser.FieldDeclarationContext field : ctx.fieldDeclaration()) {
+            String name = field.varDeclaration().Identifier().getText();
+            klass.getFields().put(name, symbol.lookupLocally(name).getType().asAsmType());
+        }
+        for (MiniJavaParser.MethodDeclarationContext declaration : ctx.methodDeclaration()) {
+            klass.getMethods().add(methodDeclaration(declaration));
+        }
+        return klass;
+    }
+
+    private IrMethod methodDeclaration(MiniJavaParser.MethodDeclarationContext ctx) {
+        Method symbol = (Method) scopes.get(ctx);
+        method = new IrMethod(klass, ctx.Identifier().getText(), symbol.asAsmMethod().getDescriptor(), false);
+        scope = symbol;
+        locals.clear();
+        for (Symbol parameter : symbol.getParameterList()) {
+            locals.put(parameter, method.addParameter(parameter.getName(), parameter.getType().asAsmType()));
+        }
+        MiniJavaParser.MethodBodyContext body = ctx.methodBody();
+        for (MiniJavaParser.LocalDeclarationContext local : body.localDeclaration()) {
+            Symbol variable = symbol.lookupLocally(local.varDeclaration().Identifier().getText());
+            locals.put(variable, method.addLocal(variable.getName(), variable.getType().asAsmType()));
+        }
+
+        startBlock(method.newBlock());
+        for (MiniJavaParser.StatementContext statement : body.statement()) {
+            statement(statement);
+        }
+        current.returnValue(visit(body.expression()));
+        return method;
+    }
+
+    /* statements */
+    private void statement(MiniJavaParser.StatementContext ctx) {
+        if (ctx instanceof MiniJavaParser.NestedStatementContext) {
+            for (MiniJavaParser.StatementContext statement : ((MiniJavaParser.NestedStatementContext) ctx).statement()) {
+                statement(statement);
+            }
+        } else if (ctx instanceof MiniJavaParser.IfElseStatementContext) {
+            MiniJavaParser.IfElseStatementContext ifElse = (MiniJavaParser.IfElseStatementContext) ctx;
+            BasicBlock ifBlock = method.newBlock();
+            BasicBlock elseBlock = method.newBlock();
+            BasicBlock exitElse = method.newBlock();
+            current.branch(visit(ifElse.expression()), ifBlock, elseBlock);
+            startBlock(ifBlock);
+            statement(ifElse.ifBlock().statement());
+            current.jumpTo(exitElse);
+            startBlock(elseBlock);
+            statement(ifElse.elseBlock().statement());
+            current.jumpTo(exitElse);
+            startBlock(exitElse);
+        } else if (ctx instanceof MiniJavaParser.WhileStatementContext) {
+            //Laid out with the condition after the body, so that every iteration takes a single
+            //branch
+            MiniJavaParser.WhileStatementContext loop = (MiniJavaParser.WhileStatementContext) ctx;
+            BasicBlock enterWhile = method.newBlock();
+            BasicBlock testWhile = method.newBlock();
+            BasicBlock exitWhile = method.newBlock();
+            current.jumpTo(testWhile);
+            startBlock(enterWhile);
+            statement(loop.whileBlock().statement());
+            current.jumpTo(testWhile);
+            startBlock(testWhile);
+            current.branch(visit(loop.expression()), enterWhile, exitWhile);
+            startBlock(exitWhile);
+        } else if (ctx instanceof MiniJavaParser.PrintStatementContext) {
+            add(IrStatement.print(visit(((MiniJavaParser.PrintStatementContext) ctx).expression())));
+        } else if (ctx instanceof MiniJavaParser.VariableAssignmentStatementContext) {
+            MiniJavaParser.VariableAssignmentStatementContext assignment = (MiniJavaParser.VariableAssignmentStatementContext) ctx;
+            Symbol variable = scope.lookup(assignment.Identifier().getText());
+            IrExpression value = visit(assignment.expression());
+            if (variable.isField()) {
+                add(IrStatement.putField(IrExpression.thisReference(klass.getName()), klass.getName(), variable.getName(), variable.getType().asAsmType(), value));
+            } else {
+                add(IrStatement.assign(locals.get(variable), value));
+            }
+        } else if (ctx instanceof MiniJavaParser.ArrayAssignmentStatementContext) {
+            MiniJavaParser.ArrayAssignmentStatementContext assignment = (MiniJavaParser.ArrayAssignmentStatementContext) ctx;
+            IrExpression array = variable(assignment.Identifier().getText());
+            add(IrStatement.arrayStore(array, visit(assignment.expression(0)), visit(assignment.expression(1))));
+        }
+        //enum statements declare nothing that code is generated for
+    }
+
+    private void add(IrStatement statement) {
+        current.getStatements().add(statement);
+    }
+
+    private void startBlock(BasicBlock block) {
+        method.getBlocks().add(block);
+        current = block;
+    }
+
+    private IrExpression variable(String name) {
+        Symbol variable = scope.lookup(name);
+        if (variable.isField()) {
+            return IrExpression.getField(IrExpression.thisReference(klass.getName()), klass.getName(), variable.getName(), variable.getType().asAsmType());
+        }
+        return IrExpression.local(locals.get(variable));
+    }
+
+    /* expressions */
+    @Override
+    public IrExpression visitArrayAccessExpression(MiniJavaParser.ArrayAccessExpressionContext ctx) {
+        return IrExpression.arrayLoad(visit(ctx.expression(0)), visit(ctx.expression(1)));
+    }
+
+    @Override
+    public IrExpression visitArrayLengthExpression(MiniJavaParser.ArrayLengthExpressionContext ctx) {
+        return IrExpression.arrayLength(visit(ctx.expression()));
+    }
+
+    @Override
+    public IrExpression visitMethodCallExpression(MiniJavaParser.MethodCallExpressionContext ctx) {
+        Klass receiverType = callerTypes.get(ctx);
+        Method callee = (Method) receiverType.lookup(ctx.Identifier().getText() + "()");
+        IrExpression receiver = visit(ctx.expression(0));
+        List<IrExpression> arguments = new ArrayList<>();
+        for (int i = 1; i < ctx.expression().size(); i++) {
+            arguments.add(visit(ctx.expression(i)));
+        }
+        return IrExpression.call(receiverType.getScopeName(), ctx.Identifier().getText(), callee.asAsmMethod().getDescriptor(), receiver, arguments);
+    }
+
+    @Override
+    public IrExpression visitNotExpression(MiniJavaParser.NotExpressionContext ctx) {
+        return IrExpression.not(visit(ctx.expression()));
+    }
+
+    @Override
+    public IrExpression visitArrayInstantiationExpression(MiniJavaParser.ArrayInstantiationExpressionContext ctx) {
+        return IrExpression.newArray(visit(ctx.expression()));
+    }
+
+    @Override
+    public IrExpression visitObjectInstantiationExpression(MiniJavaParser.ObjectInstantiationExpressionContext ctx) {
+        return IrExpression.newObject(ctx.Identifier().getText());
+    }
+
+    @Override
+    public IrExpression visitPowExpression(MiniJavaParser.PowExpressionContext ctx) {
+        return IrExpression.binary(IrExpression.Kind.POW, visit(ctx.expression(0)), visit(ctx.expression(1)));
+    }
+
+    @Override
+    public IrExpression visitMulExpression(MiniJavaParser.MulExpressionContext ctx) {
+        return IrExpression.binary(IrExpression.Kind.MUL, visit(ctx.expression(0)), visit(ctx.expression(1)));
+    }
+
+    @Override
+    public IrExpression visitAddExpression(MiniJavaParser.AddExpressionContext ctx) {
+        return IrExpression.binary(IrExpression.Kind.ADD, visit(ctx.expression(0)), visit(ctx.expression(1)));
+    }
+
+    @Override
+    public IrExpression visitSubExpression(MiniJavaParser.SubExpressionContext ctx) {
+        return IrExpression.binary(IrExpression.Kind.SUB, visit(ctx.expression(0)), visit(ctx.expression(1)));
+    }
+
+    @Override
+    public IrExpression visitLtExpression(MiniJavaParser.LtExpressionContext ctx) {
+        return IrExpression.binary(IrExpression.Kind.LT, visit(ctx.expression(0)), visit(ctx.expression(1)));
+    }
+
+    @Override
+    public IrExpression visitAndExpression(MiniJavaParser.AndExpressionContext ctx) {
+        return IrExpression.binary(IrExpression.Kind.AND, visit(ctx.expression(0)), visit(ctx.expression(1)));
+    }
+
+    @Override
+    public IrExpression visitIntLitExpression(MiniJavaParser.IntLitExpressionContext ctx) {
+        return IrExpression.constant(Integer.parseInt(ctx.IntegerLiteral().getText()));
+    }
+
+    @Override
+    public IrExpression visitBooleanLitExpression(MiniJavaParser.BooleanLitExpressionContext ctx) {
+        return IrExpression.constant(Boolean.parseBoolean(ctx.BooleanLiteral().getText()));
+    }
+
+    @Override
+    public IrExpression visitIdentifierExpression(MiniJavaParser.IdentifierExpressionContext ctx) {
+        return variable(ctx.Identifier().getText());
+    }
+
+    @Override
+    public IrExpression visitThisExpression(MiniJavaParser.ThisExpressionContext ctx) {
+        return IrExpression.thisReference(klass.getName());
+    }
+
+    @Override
+    public IrExpression visitParenExpression(MiniJavaParser.ParenExpressionContext ctx) {
+        return visit(ctx.expression());
+    }
+}
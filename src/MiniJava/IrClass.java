@@ -0,0 +1,84 @@
+package MiniJava;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.util.*;
+
+/**
+ * A class of the program in IR form: its fields and methods, but no code for the constructor,
+ * which always just calls the one of the superclass.
+ */
+public final class IrClass {
+    private final String name;
+    private final String superName;
+    private final boolean main;
+    private final ParserRuleContext source;
+    private final Map<String, Type> fields = new LinkedHashMap<>();
+    private final List<IrMethod> methods = new ArrayList<>();
+    private int access = Opcodes.ACC_PUBLIC + Opcodes.ACC_SUPER;
+
+    IrClass(String name, String superName, boolean main, ParserRuleContext source) {
+        this.name = name;
+        this.superName = superName;
+        this.main = main;
+        this.source = source;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the internal name of the superclass, java/lang/Object if the source declares none.
+     */
+    public String getSuperName() {
+        return superName;
+    }
+
+    /**
+     * @return true for the class with the main method.
+     */
+    public boolean isMain() {
+        return main;
+    }
+
+    /**
+     * @return the declaration this class was built from.
+     */
+    public ParserRuleContext getSource() {
+        return source;
+    }
+
+    /**
+     * @return the types of the fields declared in this class, by name.
+     */
+    public Map<String, Type> getFields() {
+        return fields;
+    }
+
+    public List<IrMethod> getMethods() {
+        return methods;
+    }
+
+    /**
+     * @return the method declared in this class with this name, or null.
+     */
+    public IrMethod getMethod(String name) {
+        for (IrMethod method : methods) {
+            if (method.getName().equals(name)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    public int getAccess() {
+        return access;
+    }
+
+    public void setAccess(int access) {
+        this.access = access;
+    }
+}
@@ -0,0 +1,643 @@
+package MiniJava;
+
+import org.objectweb.asm.*;
+import org.objectweb.asm.commons.InstructionAdapter;
+
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Generates class files from the IR. Blocks are emitted in layout order, with jumps to the next
+ * block left out, and if and while conditions become compare-and-branch instructions.
+ *
+ * Instructions are picked for size: adding a constant to a local becomes an iinc, comparisons
+ * with zero and negations drop the zero, and ASM picks the short forms of constants and of loads
+ * and stores of the first four slots.
+ *
+ * A method that Memoization caches becomes a lookup in a static array of the class, and its own
+ * code moves to a private method that the lookup calls on a miss.
+ */
+class IrCodeGenerator implements Opcodes {
+    private static final String PRINT_STREAM = Type.getInternalName(PrintStream.class);
+    //The cache of a memoized method m is the static field m-memo, and its code the method m-body.
+    //A MiniJava identifier cannot contain '-', so these cannot clash with members of the program
+    private static final String MEMO_TABLE = "-memo";
+    private static final String MEMO_BODY = "-body";
+
+    private final IrProgram program;
+    private final String fileName;
+    private final Map<String, byte[]> classes = new LinkedHashMap<>();
+    private boolean memoCounters;
+
+    IrCodeGenerator(IrProgram program, String fileName) {
+        this.program = program;
+        this.fileName = fileName;
+    }
+
+    /**
+     * Count the hits and misses of every memoized method in private static fields of its class,
+     * see Memoization.memoHits and memoMisses.
+     */
+    void setMemoCounters(boolean memoCounters) {
+        this.memoCounters = memoCounters;
+    }
+
+    /**
+     * @return the generated classes, by class name, in the order they were generated.
+     */
+    Map<String, byte[]> generate() {
+        for (IrClass klass : program.getClasses()) {
+            generateClass(klass);
+        }
+        return classes;
+    }
+
+    /**
+     * @return the length in bytes of the code generated for method, for passes that report what
+     * they save.
+     */
+    static int codeSize(IrMethod method) {
+        MethodGenerator generator = new MethodGenerator(new ClassWriter(0), method);
+        generator.measure = true;
+        generator.generate();
+        return generator.codeSize;
+    }
+
+    /**
+     * @return the max_locals of the code generated for method: the slots of this, the
+     * parameters, the locals, and the scratch slot of **.
+     */
+    static int maxLocals(IrMethod method) {
+        MethodGenerator generator = new MethodGenerator(new ClassWriter(0), method);
+        generator.measure = true;
+        generator.generate();
+        return generator.nextSlot;
+    }
+
+    private void generateClass(IrClass klass) {
+        ClassCompiledEvent event = new ClassCompiledEvent();
+        event.begin();
+
+        ClassWriter cw = new KlassWriter(program.getKlasses());
+        cw.visit(V17, klass.getAccess(), klass.getName(), null, klass.getSuperName(), null);
+        for (Map.Entry<String, Type> field : klass.getFields().entrySet()) {
+            cw.visitField(ACC_PROTECTED, field.getKey(), field.getValue().getDescriptor(), null, null).visitEnd();
+        }
+
+        InstructionAdapter constructor = new InstructionAdapter(cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null));
+        constructor.visitCode();
+        constructor.load(0, Type.getObjectType(klass.getName()));
+        constructor.invokespecial(klass.getSuperName(), "<init>", "()V", false);
+        constructor.areturn(Type.VOID_TYPE);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+
+        boolean powHelperUsed = false;
+        List<IrMethod> memoized = new ArrayList<>();
+        for (IrMethod method : klass.getMethods()) {
+            MethodGenerator generator;
+            if (method.getMemoEntries() > 0) {
+                memoized.add(method);
+                generateMemoLookup(cw, method);
+                generator = new MethodGenerator(cw, method, method.getName() + MEMO_BODY, ACC_PRIVATE + ACC_SYNTHETIC);
+            } else {
+                generator = new MethodGenerator(cw, method);
+            }
+            generator.generate();
+            powHelperUsed |= generator.powHelperUsed;
+        }
+        if (powHelperUsed) {
+            BytecodeGenerator.generatePowHelper(cw);
+        }
+        if (!memoized.isEmpty()) {
+            generateMemoTables(cw, klass, memoized);
+        }
+        cw.visitEnd();
+        byte[] bytes = cw.toByteArray();
+        classes.put(klass.getName(), bytes);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = fileName;
+            event.className = klass.getName();
+            event.tokens = klass.getSource().stop.getTokenIndex() - klass.getSource().start.getTokenIndex() + 1;
+            event.nodes = Compiler.countNodes(klass.getSource());
+            event.bytes = bytes.length;
+            event.commit();
+        }
+    }
+
+    /**
+     * Generates method as a lookup in its cache, which calls the body of the method, generated
+     * separately, on a miss. An entry of the cache is a flag that it is used, the arguments and
+     * the result, in that order; the arguments hash to the entry to look in.
+     */
+    private void generateMemoLookup(ClassVisitor cw, IrMethod method) {
+        String owner = method.getOwner().getName();
+        String table = method.getName() + MEMO_TABLE;
+        List<IrLocal> parameters = method.getParameters();
+        int size = parameters.size() + 2;
+        int index = parameters.size() + 1;
+        int entries = index + 1;
+        int result = entries + 1;
+        cw.visitField(ACC_PRIVATE + ACC_STATIC + ACC_FINAL + ACC_SYNTHETIC, table, "[I", null, null).visitEnd();
+        if (memoCounters) {
+            cw.visitField(ACC_PRIVATE + ACC_STATIC + ACC_SYNTHETIC, Memoization.memoHits(method), "J", null, null).visitEnd();
+            cw.visitField(ACC_PRIVATE + ACC_STATIC + ACC_SYNTHETIC, Memoization.memoMisses(method), "J", null, null).visitEnd();
+        }
+
+        InstructionAdapter code = new InstructionAdapter(cw.visitMethod(method.getAccess(), method.getName(), method.getDescriptor(), null, null));
+        code.visitCode();
+        //index = (h ^ h >>> 16) & (entries - 1), where h is the hash of the arguments as in List.hashCode
+        code.load(1, Type.INT_TYPE);
+        for (int i = 1; i < parameters.size(); i++) {
+            code.iconst(31);
+            code.mul(Type.INT_TYPE);
+            code.load(i + 1, Type.INT_TYPE);
+            code.add(Type.INT_TYPE);
+        }
+        code.dup();
+        code.iconst(16);
+        code.ushr(Type.INT_TYPE);
+        code.xor(Type.INT_TYPE);
+        code.iconst(method.getMemoEntries() - 1);
+        code.and(Type.INT_TYPE);
+        code.iconst(size);
+        code.mul(Type.INT_TYPE);
+        code.store(index, Type.INT_TYPE);
+        code.getstatic(owner, table, "[I");
+        code.store(entries, Type.getType(int[].class));
+
+        Label miss = new Label();
+        code.load(entries, Type.getType(int[].class));
+        code.load(index, Type.INT_TYPE);
+        code.aload(Type.INT_TYPE);
+        code.ifeq(miss);
+        for (int i = 0; i < parameters.size(); i++) {
+            loadEntry(code, entries, index, i + 1);
+            code.load(i + 1, Type.INT_TYPE);
+            code.ificmpne(miss);
+        }
+        count(code, owner, Memoization.memoHits(method));
+        loadEntry(code, entries, index, size - 1);
+        code.areturn(method.getReturnType());
+
+        code.mark(miss);
+        count(code, owner, Memoization.memoMisses(method));
+        code.load(0, Type.getObjectType(owner));
+        for (int i = 0; i < parameters.size(); i++) {
+            code.load(i + 1, parameters.get(i).getType());
+        }
+        code.invokespecial(owner, method.getName() + MEMO_BODY, method.getDescriptor(), false);
+        code.store(result, Type.INT_TYPE);
+        for (int i = 0; i <= parameters.size(); i++) {
+            code.load(entries, Type.getType(int[].class));
+            code.load(index, Type.INT_TYPE);
+            code.iconst(i + 1);
+            code.add(Type.INT_TYPE);
+            code.load(i < parameters.size() ? i + 1 : result, Type.INT_TYPE);
+            code.astore(Type.INT_TYPE);
+        }
+        code.load(entries, Type.getType(int[].class));
+        code.load(index, Type.INT_TYPE);
+        code.iconst(1);
+        code.astore(Type.INT_TYPE);
+        code.load(result, Type.INT_TYPE);
+        code.areturn(method.getReturnType());
+        code.visitMaxs(0, 0);
+        code.visitEnd();
+    }
+
+    /**
+     * Pushes the word at offset of the cache entry at index.
+     */
+    private static void loadEntry(InstructionAdapter code, int entries, int index, int offset) {
+        code.load(entries, Type.getType(int[].class));
+        code.load(index, Type.INT_TYPE);
+        code.iconst(offset);
+        code.add(Type.INT_TYPE);
+        code.aload(Type.INT_TYPE);
+    }
+
+    private void count(InstructionAdapter code, String owner, String counter) {
+        if (!memoCounters) {
+            return;
+        }
+        code.getstatic(owner, counter, "J");
+        code.lconst(1);
+        code.add(Type.LONG_TYPE);
+        code.putstatic(owner, counter, "J");
+    }
+
+    /**
+     * Generates the static initializer that allocates the caches of the memoized methods of
+     * klass.
+     */
+    private static void generateMemoTables(ClassVisitor cw, IrClass klass, List<IrMethod> memoized) {
+        InstructionAdapter code = new InstructionAdapter(cw.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null));
+        code.visitCode();
+        for (IrMethod method : memoized) {
+            code.iconst(method.getMemoEntries() * (method.getParameters().size() + 2));
+            code.newarray(Type.INT_TYPE);
+            code.putstatic(klass.getName(), method.getName() + MEMO_TABLE, "[I");
+        }
+        code.areturn(Type.VOID_TYPE);
+        code.visitMaxs(0, 0);
+        code.visitEnd();
+    }
+
+    /**
+     * Generates the code of one method.
+     */
+    private static final class MethodGenerator {
+        private final IrMethod method;
+        private final InstructionAdapter code;
+        private final Map<IrLocal, Integer> slots = new HashMap<>();
+        private final Map<BasicBlock, Label> labels = new HashMap<>();
+        private int nextSlot;
+        private int powScratch = -1;
+        boolean powHelperUsed;
+        boolean measure;
+        int codeSize;
+
+        MethodGenerator(ClassVisitor cw, IrMethod method) {
+            this(cw, method, method.getName(), method.getAccess());
+        }
+
+        /**
+         * Generates method under another name and with other access flags.
+         */
+        MethodGenerator(ClassVisitor cw, IrMethod method, String name, int access) {
+            this.method = method;
+            this.code = new InstructionAdapter(cw.visitMethod(access, name, method.getDescriptor(), null, null));
+        }
+
+        void generate() {
+            nextSlot = method.isStatic() ? 0 : 1;
+            for (IrLocal parameter : method.getParameters()) {
+                slots.put(parameter, nextSlot++);
+            }
+            for (IrLocal local : method.getLocals()) {
+                slots.put(local, nextSlot++);
+            }
+
+            code.visitCode();
+            Set<BasicBlock> reachable = method.getReachableBlocks();
+            List<BasicBlock> layout = new ArrayList<>();
+            for (BasicBlock block : method.getBlocks()) {
+                if (reachable.contains(block)) {
+                    layout.add(block);
+                    labels.put(block, new Label());
+                }
+            }
+            for (int i = 0; i < layout.size(); i++) {
+                BasicBlock block = layout.get(i);
+                code.mark(labels.get(block));
+                for (IrStatement statement : block.getStatements()) {
+                    statement(statement);
+                }
+                exit(block, i + 1 < layout.size() ? layout.get(i + 1) : null);
+            }
+            if (measure) {
+                Label end = new Label();
+                code.mark(end);
+                codeSize = end.getOffset();
+            }
+            code.visitMaxs(0, 0);
+            code.visitEnd();
+        }
+
+        private void statement(IrStatement statement) {
+            switch (statement.getKind()) {
+                case ASSIGN:
+                    Integer increment = increment(statement);
+                    if (increment != null) {
+                        code.iinc(slots.get(statement.getTarget()), increment);
+                        break;
+                    }
+                    expression(statement.getValue());
+                    code.store(slots.get(statement.getTarget()), statement.getTarget().getType());
+                    break;
+                case PUT_FIELD:
+                    expression(statement.getOperands().get(0));
+                    expression(statement.getValue());
+                    code.putfield(statement.getOwner(), statement.getName(), statement.getFieldType().getDescriptor());
+                    break;
+                case ARRAY_STORE:
+                    for (IrExpression operand : statement.getOperands()) {
+                        expression(operand);
+                    }
+                    code.astore(Type.INT_TYPE);
+                    break;
+                case PRINT:
+                    code.getstatic("java/lang/System", "out", "L" + PRINT_STREAM + ";");
+                    expression(statement.getValue());
+                    code.invokevirtual(PRINT_STREAM, "println", "(I)V", false);
+                    break;
+                case EVAL:
+                    if (statement.getValue().getKind() == IrExpression.Kind.NULL_CHECK) {
+                        //Only the check is needed, not the checked object
+                        expression(statement.getValue().getOperand(0));
+                        code.invokestatic("java/util/Objects", "requireNonNull", "(Ljava/lang/Object;)Ljava/lang/Object;", false);
+                    } else {
+                        expression(statement.getValue());
+                    }
+                    code.pop();
+                    break;
+                default:
+                    throw new AssertionError(statement.getKind());
+            }
+        }
+
+        /**
+         * @return c if statement is x = x + c, x = c + x or x = x - c, and c fits the 16 bits
+         * that iinc takes, or null.
+         */
+        private static Integer increment(IrStatement statement) {
+            IrExpression value = statement.getValue();
+            if (value.getKind() != IrExpression.Kind.ADD && value.getKind() != IrExpression.Kind.SUB) {
+                return null;
+            }
+            IrExpression left = value.getOperand(0);
+            IrExpression right = value.getOperand(1);
+            long increment;
+            if (isLocal(left, statement.getTarget()) && right.isConstant()) {
+                increment = value.getKind() == IrExpression.Kind.ADD ? (long) right.getValue() : -(long) right.getValue();
+            } else if (value.getKind() == IrExpression.Kind.ADD && left.isConstant() && isLocal(right, statement.getTarget())) {
+                increment = left.getValue();
+            } else {
+                return null;
+            }
+            return increment >= Short.MIN_VALUE && increment <= Short.MAX_VALUE ? (int) increment : null;
+        }
+
+        private static boolean isLocal(IrExpression expression, IrLocal local) {
+            return expression.getKind() == IrExpression.Kind.LOCAL && expression.getLocal() == local;
+        }
+
+        private static boolean isZero(IrExpression expression) {
+            return expression.isConstant() && expression.getValue() == 0;
+        }
+
+        private void exit(BasicBlock block, BasicBlock next) {
+            switch (block.getExit()) {
+                case GOTO:
+                    if (block.getTarget() != next) {
+                        code.goTo(labels.get(block.getTarget()));
+                    }
+                    break;
+                case BRANCH:
+                    IrExpression condition = block.getExitValue();
+                    if (block.getElseTarget() == next) {
+                        condition(condition, labels.get(block.getTarget()), true);
+                    } else if (block.getTarget() == next) {
+                        condition(condition, labels.get(block.getElseTarget()), false);
+                    } else {
+                        condition(condition, labels.get(block.getTarget()), true);
+                        code.goTo(labels.get(block.getElseTarget()));
+                    }
+                    break;
+                default:
+                    if (block.getExitValue() != null) {
+                        expression(block.getExitValue());
+                    }
+                    code.areturn(method.getReturnType());
+            }
+        }
+
+        /**
+         * Generates a jump to target if condition evaluates to jumpIfTrue, and a fall through
+         * otherwise.
+         */
+        private void condition(IrExpression condition, Label target, boolean jumpIfTrue) {
+            switch (condition.getKind()) {
+                case CONST:
+                    if ((condition.getValue() != 0) == jumpIfTrue) {
+                        code.goTo(target);
+                    }
+                    break;
+                case NOT:
+                    condition(condition.getOperand(0), target, !jumpIfTrue);
+                    break;
+                case LT:
+                    //Comparisons with zero have instructions of their own
+                    if (isZero(condition.getOperand(1))) {
+                        expression(condition.getOperand(0));
+                        if (jumpIfTrue) {
+                            code.iflt(target);
+                        } else {
+                            code.ifge(target);
+                        }
+                        break;
+                    } else if (isZero(condition.getOperand(0))) {
+                        expression(condition.getOperand(1));
+                        if (jumpIfTrue) {
+                            code.ifgt(target);
+                        } else {
+                            code.ifle(target);
+                        }
+                        break;
+                    }
+                    expression(condition.getOperand(0));
+                    expression(condition.getOperand(1));
+                    if (jumpIfTrue) {
+                        code.ificmplt(target);
+                    } else {
+                        code.ificmpge(target);
+                    }
+                    break;
+                case EQ:
+                    if (isZero(condition.getOperand(1))) {
+                        expression(condition.getOperand(0));
+                        if (jumpIfTrue) {
+                            code.ifeq(target);
+                        } else {
+                            code.ifne(target);
+                        }
+                        break;
+                    }
+                    expression(condition.getOperand(0));
+                    expression(condition.getOperand(1));
+                    if (jumpIfTrue) {
+                        code.ificmpeq(target);
+                    } else {
+                        code.ificmpne(target);
+                    }
+                    break;
+                case AND:
+                    if (jumpIfTrue) {
+                        Label exitAnd = new Label();
+                        condition(condition.getOperand(0), exitAnd, false);
+                        condition(condition.getOperand(1), target, true);
+                        code.mark(exitAnd);
+                    } else {
+                        condition(condition.getOperand(0), target, false);
+                        condition(condition.getOperand(1), target, false);
+                    }
+                    break;
+                default:
+                    expression(condition);
+                    if (jumpIfTrue) {
+                        code.ifne(target);
+                    } else {
+                        code.ifeq(target);
+                    }
+            }
+        }
+
+        private void expression(IrExpression expression) {
+            switch (expression.getKind()) {
+                case CONST:
+                    code.iconst(expression.getValue());
+                    break;
+                case LOCAL:
+                    code.load(slots.get(expression.getLocal()), expression.getType());
+                    break;
+                case THIS:
+                    code.load(0, expression.getType());
+                    break;
+                case GET_FIELD:
+                    expression(expression.getOperand(0));
+                    code.getfield(expression.getOwner(), expression.getName(), expression.getType().getDescriptor());
+                    break;
+                case ARRAY_LOAD:
+                    expression(expression.getOperand(0));
+                    expression(expression.getOperand(1));
+                    code.aload(Type.INT_TYPE);
+                    break;
+                case ARRAY_LENGTH:
+                    expression(expression.getOperand(0));
+                    code.arraylength();
+                    break;
+                case NEW_ARRAY:
+                    expression(expression.getOperand(0));
+                    code.newarray(Type.INT_TYPE);
+                    break;
+                case NEW_OBJECT:
+                    code.anew(expression.getType());
+                    code.dup();
+                    code.invokespecial(expression.getOwner(), "<init>", "()V", false);
+                    break;
+                case ADD:
+                    expression(expression.getOperand(0));
+                    expression(expression.getOperand(1));
+                    code.add(Type.INT_TYPE);
+                    break;
+                case SUB:
+                    if (isZero(expression.getOperand(0))) {
+                        expression(expression.getOperand(1));
+                        code.neg(Type.INT_TYPE);
+                        break;
+                    }
+                    expression(expression.getOperand(0));
+                    expression(expression.getOperand(1));
+                    code.sub(Type.INT_TYPE);
+                    break;
+                case MUL:
+                    expression(expression.getOperand(0));
+                    expression(expression.getOperand(1));
+                    code.mul(Type.INT_TYPE);
+                    break;
+                case DIV:
+                    expression(expression.getOperand(0));
+                    expression(expression.getOperand(1));
+                    code.div(Type.INT_TYPE);
+                    break;
+                case POW:
+                    pow(expression);
+                    break;
+                case LT:
+                case EQ:
+                    Label isTrue = new Label();
+                    Label exitCompare = new Label();
+                    condition(expression, isTrue, true);
+                    code.iconst(0);
+                    code.goTo(exitCompare);
+                    code.mark(isTrue);
+                    code.iconst(1);
+                    code.mark(exitCompare);
+                    break;
+                case AND:
+                    //When the left operand is false, it is also the result
+                    Label exitAnd = new Label();
+                    expression(expression.getOperand(0));
+                    code.dup();
+                    code.ifeq(exitAnd);
+                    code.pop();
+                    expression(expression.getOperand(1));
+                    code.mark(exitAnd);
+                    break;
+                case NOT:
+                    expression(expression.getOperand(0));
+                    code.iconst(1);
+                    code.xor(Type.INT_TYPE);
+                    break;
+                case NULL_CHECK:
+                    expression(expression.getOperand(0));
+                    code.dup();
+                    code.invokestatic("java/util/Objects", "requireNonNull", "(Ljava/lang/Object;)Ljava/lang/Object;", false);
+                    code.pop();
+                    break;
+                case CALL:
+                    for (IrExpression operand : expression.getOperands()) {
+                        expression(operand);
+                    }
+                    code.invokevirtual(expression.getOwner(), expression.getName(), expression.getDescriptor(), false);
+                    break;
+                default:
+                    throw new AssertionError(expression.getKind());
+            }
+        }
+
+        /**
+         * Generates ** like BytecodeGenerator: constant operands folded, constant exponents
+         * unrolled into squarings, any other exponent passed to the helper method of the class.
+         */
+        private void pow(IrExpression pow) {
+            Integer base = constantValue(pow.getOperand(0));
+            Integer exponent = constantValue(pow.getOperand(1));
+            if (base != null && exponent != null) {
+                code.iconst(BytecodeGenerator.pow(base, exponent));
+                return;
+            }
+            expression(pow.getOperand(0));
+            if (exponent == null) {
+                expression(pow.getOperand(1));
+                code.invokestatic(method.getOwner().getName(), BytecodeGenerator.POW_HELPER.getName(), BytecodeGenerator.POW_HELPER.getDescriptor(), false);
+                powHelperUsed = true;
+                return;
+            }
+            if (exponent == 0) {
+                code.pop();
+                code.iconst(1);
+                return;
+            }
+            if (Integer.bitCount(exponent) > 1) {
+                if (powScratch < 0) {
+                    powScratch = nextSlot++;
+                }
+                code.dup();
+                code.store(powScratch, Type.INT_TYPE);
+            }
+            for (int bit = 30 - Integer.numberOfLeadingZeros(exponent); bit >= 0; bit--) {
+                code.dup();
+                code.mul(Type.INT_TYPE);
+                if ((exponent >>> bit & 1) != 0) {
+                    code.load(powScratch, Type.INT_TYPE);
+                    code.mul(Type.INT_TYPE);
+                }
+            }
+        }
+
+        private static Integer constantValue(IrExpression expression) {
+            if (expression.isConstant()) {
+                return expression.getValue();
+            } else if (expression.getKind() == IrExpression.Kind.POW) {
+                Integer base = constantValue(expression.getOperand(0));
+                Integer exponent = constantValue(expression.getOperand(1));
+                return base != null && exponent != null ? BytecodeGenerator.pow(base, exponent) : null;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package MiniJava;
+
+import org.objectweb.asm.Type;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * An expression of the IR: a typed tree whose leaves are constants, locals and this. Operands are
+ * evaluated left to right before the operation itself, as in the Java they stand for, except that
+ * the right operand of AND is only evaluated when the left one is true.
+ *
+ * Every node belongs to a single tree, so passes may rewrite the operands of a node in place.
+ * Use copy() to put an expression in a second place.
+ */
+public final class IrExpression {
+    public enum Kind {
+        CONST, LOCAL, THIS, GET_FIELD, ARRAY_LOAD, ARRAY_LENGTH, NEW_ARRAY, NEW_OBJECT,
+        ADD, SUB, MUL, POW, LT, AND, NOT, CALL,
+        //int division and equality, which MiniJava has no syntax for; IdiomRecognition
+        //introduces them where a method computes them the long way
+        DIV, EQ,
+        //the operand, after checking that it is not null, as a call on it would
+        NULL_CHECK
+    }
+
+    private final Kind kind;
+    private final Type type;
+    private final List<IrExpression> operands;
+
+    //CONST: the value, with booleans as 0 and 1
+    private int value;
+    //LOCAL
+    private IrLocal local;
+    //GET_FIELD: the class the field is accessed through; CALL: the static type of the receiver,
+    //or the class that declares the callee of a direct call
+    private String owner;
+    //GET_FIELD, CALL
+    private String name;
+    //CALL
+    private String descriptor;
+    //CALL: whether the call always runs the method declared in owner
+    private boolean direct;
+
+    private IrExpression(Kind kind, Type type, IrExpression... operands) {
+        this.kind = kind;
+        this.type = type;
+        this.operands = new ArrayList<>(Arrays.asList(operands));
+    }
+
+    public static IrExpression constant(int value) {
+        IrExpression constant = new IrExpression(Kind.CONST, Type.INT_TYPE);
+        constant.value = value;
+        return constant;
+    }
+
+    public static IrExpression constant(boolean value) {
+        IrExpression constant = new IrExpression(Kind.CONST, Type.BOOLEAN_TYPE);
+        constant.value = value ? 1 : 0;
+        return constant;
+    }
+
+    public static IrExpression local(IrLocal local) {
+        IrExpression load = new IrExpression(Kind.LOCAL, local.getType());
+        load.local = local;
+        return load;
+    }
+
+    public static IrExpression thisReference(String klass) {
+        return new IrExpression(Kind.THIS, Type.getObjectType(klass));
+    }
+
+    /**
+     * @param object the object whose field is read, which the source program only ever writes
+     *               as this, but which is any object once methods are inlined.
+     */
+    public static IrExpression getField(IrExpression object, String owner, String name, Type type) {
+        IrExpression field = new IrExpression(Kind.GET_FIELD, type, object);
+        field.owner = owner;
+        field.name = name;
+        return field;
+    }
+
+    public static IrExpression arrayLoad(IrExpression array, IrExpression index) {
+        return new IrExpression(Kind.ARRAY_LOAD, Type.INT_TYPE, array, index);
+    }
+
+    public static IrExpression arrayLength(IrExpression array) {
+        return new IrExpression(Kind.ARRAY_LENGTH, Type.INT_TYPE, array);
+    }
+
+    public static IrExpression newArray(IrExpression length) {
+        return new IrExpression(Kind.NEW_ARRAY, Type.getType(int[].class), length);
+    }
+
+    public static IrExpression newObject(String klass) {
+        IrExpression instantiation = new IrExpression(Kind.NEW_OBJECT, Type.getObjectType(klass));
+        instantiation.owner = klass;
+        return instantiation;
+    }
+
+    /**
+     * @param kind ADD, SUB, MUL, DIV, POW, LT, EQ or AND.
+     */
+    public static IrExpression binary(Kind kind, IrExpression left, IrExpression right) {
+        Type type = kind == Kind.LT || kind == Kind.EQ || kind == Kind.AND ? Type.BOOLEAN_TYPE : Type.INT_TYPE;
+        return new IrExpression(kind, type, left, right);
+    }
+
+    public static IrExpression nullCheck(IrExpression object) {
+        return new IrExpression(Kind.NULL_CHECK, object.getType(), object);
+    }
+
+    public static IrExpression not(IrExpression operand) {
+        return new IrExpression(Kind.NOT, Type.BOOLEAN_TYPE, operand);
+    }
+
+    public static IrExpression call(String owner, String name, String descriptor, IrExpression receiver, List<IrExpression> arguments) {
+        IrExpression call = new IrExpression(Kind.CALL, Type.getReturnType(descriptor), receiver);
+        call.operands.addAll(arguments);
+        call.owner = owner;
+        call.name = name;
+        call.descriptor = descriptor;
+        return call;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the operands, which passes may replace.
+     */
+    public List<IrExpression> getOperands() {
+        return operands;
+    }
+
+    public IrExpression getOperand(int i) {
+        return operands.get(i);
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    public IrLocal getLocal() {
+        return local;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * @return true if this call always runs the method declared in getOwner(), so that the
+     * callee is known at compile time.
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Makes this call direct: declaringClass must declare the only method it can run.
+     */
+    public void bindTo(String declaringClass) {
+        owner = declaringClass;
+        direct = true;
+    }
+
+    public boolean isConstant() {
+        return kind == Kind.CONST;
+    }
+
+    /**
+     * @return a deep copy of this tree.
+     */
+    public IrExpression copy() {
+        IrExpression copy = new IrExpression(kind, type);
+        for (IrExpression operand : operands) {
+            copy.operands.add(operand.copy());
+        }
+        copy.value = value;
+        copy.local = local;
+        copy.owner = owner;
+        copy.name = name;
+        copy.descriptor = descriptor;
+        copy.direct = direct;
+        return copy;
+    }
+
+    /**
+     * Calls action on every node of this tree, operands first, in evaluation order.
+     */
+    public void forEach(Consumer<IrExpression> action) {
+        for (IrExpression operand : operands) {
+            operand.forEach(action);
+        }
+        action.accept(this);
+    }
+
+    public boolean contains(Predicate<IrExpression> predicate) {
+        if (predicate.test(this)) {
+            return true;
+        }
+        for (IrExpression operand : operands) {
+            if (operand.contains(predicate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if evaluating this tree can change state other than the operand stack: calls
+     * run arbitrary code, and allocations are observable through identity.
+     */
+    public boolean hasSideEffects() {
+        return contains(e -> e.kind == Kind.CALL || e.kind == Kind.NEW_OBJECT || e.kind == Kind.NEW_ARRAY);
+    }
+
+    /**
+     * @return true if evaluating this tree can throw: array accesses may be out of bounds or on
+     * a null array field, fields of other objects than this may be read through null,
+     * divisions may be by zero, allocations may fail, and calls may do anything.
+     */
+    public boolean mayThrow() {
+        return contains(IrExpression::mayThrowItself);
+    }
+
+    /**
+     * @return true if this node can throw, assuming its operands do not.
+     */
+    public boolean mayThrowItself() {
+        switch (kind) {
+            case GET_FIELD:
+                return operands.get(0).kind != Kind.THIS;
+            case DIV:
+                return !operands.get(1).isConstant() || operands.get(1).value == 0;
+            case ARRAY_LOAD:
+            case ARRAY_LENGTH:
+            case NEW_ARRAY:
+            case NEW_OBJECT:
+            case CALL:
+            case NULL_CHECK:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return true if this tree can be dropped, or evaluated a different number of times,
+     * without changing what the program does.
+     */
+    public boolean isPure() {
+        return !hasSideEffects() && !mayThrow();
+    }
+
+    /**
+     * @return true if both trees compute the same value from the same state.
+     */
+    public boolean sameAs(IrExpression other) {
+        if (kind != other.kind || !type.equals(other.type) || value != other.value || local != other.local
+                || !Objects.equals(owner, other.owner) || !Objects.equals(name, other.name)
+                || !Objects.equals(descriptor, other.descriptor) || direct != other.direct || operands.size() != other.operands.size()) {
+            return false;
+        }
+        for (int i = 0; i < operands.size(); i++) {
+            if (!operands.get(i).sameAs(other.operands.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case CONST:
+                return type == Type.BOOLEAN_TYPE ? Boolean.toString(value != 0) : Integer.toString(value);
+            case LOCAL:
+                return local.getName();
+            case THIS:
+                return "this";
+            case GET_FIELD:
+                return operands.get(0) + "." + name;
+            case ARRAY_LOAD:
+                return operands.get(0) + "[" + operands.get(1) + "]";
+            case ARRAY_LENGTH:
+                return operands.get(0) + ".length";
+            case NEW_ARRAY:
+                return "new int[" + operands.get(0) + "]";
+            case NEW_OBJECT:
+                return "new " + owner + "()";
+            case NOT:
+                return "!" + operands.get(0);
+            case NULL_CHECK:
+                return "nullcheck(" + operands.get(0) + ")";
+            case CALL:
+                StringBuilder call = new StringBuilder(operands.get(0) + "." + (direct ? owner + "::" : "") + name + "(");
+                for (int i = 1; i < operands.size(); i++) {
+                    call.append(i > 1 ? ", " : "").append(operands.get(i));
+                }
+                return call.append(")").toString();
+            default:
+                String operator = kind == Kind.ADD ? "+" : kind == Kind.SUB ? "-" : kind == Kind.MUL ? "*"
+                        : kind == Kind.DIV ? "/" : kind == Kind.POW ? "**" : kind == Kind.LT ? "<" : kind == Kind.EQ ? "==" : "&&";
+                return "(" + operands.get(0) + " " + operator + " " + operands.get(1) + ")";
+        }
+    }
+}
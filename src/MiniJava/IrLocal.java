@@ -0,0 +1,37 @@
+package MiniJava;
+
+import org.objectweb.asm.Type;
+
+/**
+ * A local variable of an IrMethod: a parameter, a variable of the source program or a temporary
+ * introduced by a pass. Locals are identified by object, not by name; the backend decides which
+ * JVM slot each one lives in.
+ */
+public final class IrLocal {
+    private final String name;
+    private final Type type;
+    private final boolean parameter;
+
+    IrLocal(String name, Type type, boolean parameter) {
+        this.name = name;
+        this.type = type;
+        this.parameter = parameter;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public boolean isParameter() {
+        return parameter;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,186 @@
+package MiniJava;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.util.*;
+
+/**
+ * A method as a control-flow graph of basic blocks. The blocks are kept in layout order, the
+ * order the backend emits them in, and the first one is the entry.
+ */
+public final class IrMethod {
+    private final IrClass owner;
+    private final String name;
+    private final String descriptor;
+    private final boolean isStatic;
+    private int access;
+    //How many results the generated class keeps in the cache of this method, or 0 for none
+    private int memoEntries;
+    private final List<IrLocal> parameters = new ArrayList<>();
+    private final List<IrLocal> locals = new ArrayList<>();
+    private final List<BasicBlock> blocks = new ArrayList<>();
+    private int nextBlockId;
+    private int nextTemporary;
+
+    IrMethod(IrClass owner, String name, String descriptor, boolean isStatic) {
+        this.owner = owner;
+        this.name = name;
+        this.descriptor = descriptor;
+        this.isStatic = isStatic;
+        this.access = Opcodes.ACC_PUBLIC + (isStatic ? Opcodes.ACC_STATIC : 0);
+    }
+
+    public IrClass getOwner() {
+        return owner;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    public Type getReturnType() {
+        return Type.getReturnType(descriptor);
+    }
+
+    public boolean isStatic() {
+        return isStatic;
+    }
+
+    public int getAccess() {
+        return access;
+    }
+
+    public void setAccess(int access) {
+        this.access = access;
+    }
+
+    public int getMemoEntries() {
+        return memoEntries;
+    }
+
+    /**
+     * Has the generated class cache the results of this method, see Memoization.
+     */
+    public void setMemoEntries(int memoEntries) {
+        this.memoEntries = memoEntries;
+    }
+
+    public List<IrLocal> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @return the locals that are not parameters, in declaration order.
+     */
+    public List<IrLocal> getLocals() {
+        return locals;
+    }
+
+    public List<BasicBlock> getBlocks() {
+        return blocks;
+    }
+
+    public BasicBlock getEntry() {
+        return blocks.get(0);
+    }
+
+    IrLocal addParameter(String name, Type type) {
+        IrLocal parameter = new IrLocal(name, type, true);
+        parameters.add(parameter);
+        return parameter;
+    }
+
+    public IrLocal addLocal(String name, Type type) {
+        IrLocal local = new IrLocal(name, type, false);
+        locals.add(local);
+        return local;
+    }
+
+    /**
+     * @return a new local whose name cannot clash with a variable of the source program.
+     */
+    public IrLocal addTemporary(Type type) {
+        return addLocal("$t" + nextTemporary++, type);
+    }
+
+    /**
+     * @return a new block, which is not part of the method until it is added to getBlocks().
+     */
+    public BasicBlock newBlock() {
+        return new BasicBlock(nextBlockId++);
+    }
+
+    /**
+     * @return the predecessors of every block, in layout order. Blocks that are not reachable
+     * may appear as predecessors.
+     */
+    public Map<BasicBlock, List<BasicBlock>> getPredecessors() {
+        Map<BasicBlock, List<BasicBlock>> predecessors = new HashMap<>();
+        for (BasicBlock block : blocks) {
+            predecessors.put(block, new ArrayList<>());
+        }
+        for (BasicBlock block : blocks) {
+            for (BasicBlock successor : block.getSuccessors()) {
+                predecessors.get(successor).add(block);
+            }
+        }
+        return predecessors;
+    }
+
+    /**
+     * @return the blocks reachable from the entry.
+     */
+    public Set<BasicBlock> getReachableBlocks() {
+        Set<BasicBlock> reachable = new HashSet<>();
+        Deque<BasicBlock> work = new ArrayDeque<>();
+        work.push(getEntry());
+        while (!work.isEmpty()) {
+            BasicBlock block = work.pop();
+            if (reachable.add(block)) {
+                for (BasicBlock successor : block.getSuccessors()) {
+                    work.push(successor);
+                }
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * @return the signature of this method, as "Owner.name(descriptor)".
+     */
+    public String getQualifiedName() {
+        return owner.getName() + "." + name + descriptor;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(getQualifiedName());
+        if (memoEntries > 0) {
+            text.append(" memoized(").append(memoEntries).append(")");
+        }
+        text.append(" {\n");
+        for (BasicBlock block : blocks) {
+            text.append("  ").append(block).append(":\n");
+            for (IrStatement statement : block.getStatements()) {
+                text.append("    ").append(statement).append('\n');
+            }
+            switch (block.getExit()) {
+                case GOTO:
+                    text.append("    goto ").append(block.getTarget()).append('\n');
+                    break;
+                case BRANCH:
+                    text.append("    if ").append(block.getExitValue()).append(" goto ").append(block.getTarget())
+                            .append(" else ").append(block.getElseTarget()).append('\n');
+                    break;
+                default:
+                    text.append("    return").append(block.getExitValue() != null ? " " + block.getExitValue() : "").append('\n');
+            }
+        }
+        return text.append("}\n").toString();
+    }
+}
@@ -0,0 +1,18 @@
+package MiniJava;
+
+/**
+ * An optimization over the IR of a whole program. Passes rewrite the IR in place and must leave
+ * it valid for the IrVerifier. A pass may be run on several programs, on several threads at once,
+ * so it keeps no state between runs.
+ */
+interface IrPass {
+    /**
+     * @return the name shown in pass timings and verifier errors.
+     */
+    String getName();
+
+    /**
+     * @param report where to describe what the pass did, when it is enabled.
+     */
+    void run(IrProgram program, OptimizationReport report);
+}
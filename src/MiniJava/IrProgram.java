@@ -0,0 +1,66 @@
+package MiniJava;
+
+import java.util.*;
+
+/**
+ * The IR of a whole source file, with the main class first. Passes that look across methods,
+ * such as inlining, work on the program.
+ */
+public final class IrProgram {
+    private final Map<String, IrClass> classes = new LinkedHashMap<>();
+    private final Map<String, Klass> klasses;
+
+    IrProgram(Map<String, Klass> klasses) {
+        this.klasses = klasses;
+    }
+
+    void addClass(IrClass klass) {
+        classes.put(klass.getName(), klass);
+    }
+
+    public Collection<IrClass> getClasses() {
+        return classes.values();
+    }
+
+    public IrClass getClass(String name) {
+        return classes.get(name);
+    }
+
+    /**
+     * @return the symbol table klasses, for the class hierarchy.
+     */
+    public Map<String, Klass> getKlasses() {
+        return klasses;
+    }
+
+    /**
+     * @return the method that a call of name on an object of class klass runs if the object is
+     * exactly of that class: the declaration in klass or in its nearest superclass, or null.
+     */
+    public IrMethod resolveMethod(String klass, String name) {
+        for (IrClass owner = classes.get(klass); owner != null; owner = classes.get(owner.getSuperName())) {
+            IrMethod method = owner.getMethod(name);
+            if (method != null) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    public List<IrMethod> getMethods() {
+        List<IrMethod> methods = new ArrayList<>();
+        for (IrClass klass : classes.values()) {
+            methods.addAll(klass.getMethods());
+        }
+        return methods;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (IrMethod method : getMethods()) {
+            text.append(method);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,128 @@
+package MiniJava;
+
+import org.objectweb.asm.Type;
+
+import java.util.*;
+
+/**
+ * A statement of the IR. Statements only appear inside basic blocks; control flow is expressed
+ * by the exits of the blocks.
+ */
+public final class IrStatement {
+    public enum Kind {
+        //local = value
+        ASSIGN,
+        //object.field = value
+        PUT_FIELD,
+        //array[index] = value
+        ARRAY_STORE,
+        //System.out.println(value)
+        PRINT,
+        //evaluates value for its side effects only
+        EVAL
+    }
+
+    private final Kind kind;
+    private final List<IrExpression> operands;
+    //ASSIGN
+    private IrLocal target;
+    //PUT_FIELD
+    private String owner;
+    private String name;
+    private Type fieldType;
+
+    private IrStatement(Kind kind, IrExpression... operands) {
+        this.kind = kind;
+        this.operands = new ArrayList<>(Arrays.asList(operands));
+    }
+
+    public static IrStatement assign(IrLocal target, IrExpression value) {
+        IrStatement assignment = new IrStatement(Kind.ASSIGN, value);
+        assignment.target = target;
+        return assignment;
+    }
+
+    public static IrStatement putField(IrExpression object, String owner, String name, Type type, IrExpression value) {
+        IrStatement assignment = new IrStatement(Kind.PUT_FIELD, object, value);
+        assignment.owner = owner;
+        assignment.name = name;
+        assignment.fieldType = type;
+        return assignment;
+    }
+
+    public static IrStatement arrayStore(IrExpression array, IrExpression index, IrExpression value) {
+        return new IrStatement(Kind.ARRAY_STORE, array, index, value);
+    }
+
+    public static IrStatement print(IrExpression value) {
+        return new IrStatement(Kind.PRINT, value);
+    }
+
+    public static IrStatement eval(IrExpression value) {
+        return new IrStatement(Kind.EVAL, value);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the expressions of this statement in evaluation order, which passes may replace.
+     * The value stored or printed is always the last one.
+     */
+    public List<IrExpression> getOperands() {
+        return operands;
+    }
+
+    public IrExpression getValue() {
+        return operands.get(operands.size() - 1);
+    }
+
+    public void setValue(IrExpression value) {
+        operands.set(operands.size() - 1, value);
+    }
+
+    public IrLocal getTarget() {
+        return target;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Type getFieldType() {
+        return fieldType;
+    }
+
+    public IrStatement copy() {
+        IrStatement copy = new IrStatement(kind);
+        for (IrExpression operand : operands) {
+            copy.operands.add(operand.copy());
+        }
+        copy.target = target;
+        copy.owner = owner;
+        copy.name = name;
+        copy.fieldType = fieldType;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case ASSIGN:
+                return target + " = " + getValue();
+            case PUT_FIELD:
+                return operands.get(0) + "." + name + " = " + getValue();
+            case ARRAY_STORE:
+                return operands.get(0) + "[" + operands.get(1) + "] = " + getValue();
+            case PRINT:
+                return "print " + getValue();
+            default:
+                return "eval " + getValue();
+        }
+    }
+}
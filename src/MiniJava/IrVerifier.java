@@ -0,0 +1,308 @@
+package MiniJava;
+
+import org.objectweb.asm.Type;
+
+import java.util.*;
+
+/**
+ * Checks that the IR of a program is well formed: every block has an exit whose targets belong
+ * to its method, expressions and statements are well typed, no expression node is shared
+ * between two trees, and every local is assigned on all paths before it is read, as the JVM
+ * verifier will demand of the generated code.
+ *
+ * A pass that breaks any of these produces an IllegalStateException naming the method and the
+ * problems, rather than a class file the JVM rejects.
+ */
+class IrVerifier {
+    private final IrProgram program;
+    private final List<String> problems = new ArrayList<>();
+
+    private IrMethod method;
+    private Set<IrLocal> locals;
+    private Set<IrExpression> nodes;
+
+    IrVerifier(IrProgram program) {
+        this.program = program;
+    }
+
+    /**
+     * @param stage what was done to the IR last, for the error message.
+     */
+    void verify(String stage) {
+        for (IrMethod method : program.getMethods()) {
+            verify(method);
+            if (!problems.isEmpty()) {
+                throw new IllegalStateException("invalid IR after " + stage + " in " + method.getQualifiedName() + ": "
+                        + String.join("; ", problems) + "\n" + method);
+            }
+        }
+    }
+
+    private void verify(IrMethod method) {
+        this.method = method;
+        locals = new HashSet<>(method.getParameters());
+        locals.addAll(method.getLocals());
+        nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        if (method.getBlocks().isEmpty()) {
+            problems.add("no entry block");
+            return;
+        }
+        Set<BasicBlock> blocks = new HashSet<>(method.getBlocks());
+        if (blocks.size() != method.getBlocks().size()) {
+            problems.add("a block appears twice");
+        }
+        for (BasicBlock block : method.getBlocks()) {
+            for (IrStatement statement : block.getStatements()) {
+                statement(block, statement);
+            }
+            if (block.getExit() == null) {
+                problems.add(block + " has no exit");
+                continue;
+            }
+            for (BasicBlock successor : block.getSuccessors()) {
+                if (!blocks.contains(successor)) {
+                    problems.add(block + " jumps to " + successor + ", which is not in the method");
+                }
+            }
+            if (block.getExit() == BasicBlock.Exit.BRANCH) {
+                expect(block + " condition", Type.BOOLEAN_TYPE, expression(block.getExitValue()));
+            } else if (block.getExit() == BasicBlock.Exit.RETURN) {
+                if (method.getReturnType() == Type.VOID_TYPE) {
+                    if (block.getExitValue() != null) {
+                        problems.add(block + " returns a value from a void method");
+                    }
+                } else if (block.getExitValue() == null) {
+                    problems.add(block + " returns no value");
+                } else {
+                    expect(block + " return value", method.getReturnType(), expression(block.getExitValue()));
+                }
+            }
+        }
+        if (problems.isEmpty()) {
+            checkDefiniteAssignment();
+        }
+    }
+
+    private void statement(BasicBlock block, IrStatement statement) {
+        String where = block + " '" + statement + "'";
+        List<IrExpression> operands = statement.getOperands();
+        switch (statement.getKind()) {
+            case ASSIGN:
+                if (!locals.contains(statement.getTarget())) {
+                    problems.add(where + " assigns a local of another method");
+                }
+                expect(where, statement.getTarget().getType(), expression(statement.getValue()));
+                break;
+            case PUT_FIELD:
+                expect(where, Type.getObjectType(statement.getOwner()), expression(operands.get(0)));
+                expect(where, fieldType(statement.getOwner(), statement.getName()), Type.getType(statement.getFieldType().getDescriptor()));
+                expect(where, statement.getFieldType(), expression(statement.getValue()));
+                break;
+            case ARRAY_STORE:
+                expect(where, Type.getType(int[].class), expression(operands.get(0)));
+                expect(where, Type.INT_TYPE, expression(operands.get(1)));
+                expect(where, Type.INT_TYPE, expression(operands.get(2)));
+                break;
+            case PRINT:
+                expect(where, Type.INT_TYPE, expression(statement.getValue()));
+                break;
+            default:
+                expression(statement.getValue());
+        }
+    }
+
+    /**
+     * @return the type of expression, after checking its operands.
+     */
+    private Type expression(IrExpression expression) {
+        if (!nodes.add(expression)) {
+            problems.add("'" + expression + "' is shared between trees");
+        }
+        List<IrExpression> operands = expression.getOperands();
+        String where = "'" + expression + "'";
+        switch (expression.getKind()) {
+            case CONST:
+                if (expression.getType() == Type.BOOLEAN_TYPE && (expression.getValue() & ~1) != 0) {
+                    problems.add(where + " is not a boolean");
+                }
+                break;
+            case LOCAL:
+                if (!locals.contains(expression.getLocal())) {
+                    problems.add(where + " reads a local of another method");
+                }
+                expect(where, expression.getLocal().getType(), expression.getType());
+                break;
+            case THIS:
+                if (method.isStatic()) {
+                    problems.add(where + " in a static method");
+                }
+                break;
+            case GET_FIELD:
+                expect(where, Type.getObjectType(expression.getOwner()), expression(operands.get(0)));
+                expect(where, fieldType(expression.getOwner(), expression.getName()), expression.getType());
+                break;
+            case ARRAY_LOAD:
+                expect(where, Type.getType(int[].class), expression(operands.get(0)));
+                expect(where, Type.INT_TYPE, expression(operands.get(1)));
+                break;
+            case ARRAY_LENGTH:
+                expect(where, Type.getType(int[].class), expression(operands.get(0)));
+                break;
+            case NEW_ARRAY:
+                expect(where, Type.INT_TYPE, expression(operands.get(0)));
+                break;
+            case NEW_OBJECT:
+                if (program.getClass(expression.getOwner()) == null) {
+                    problems.add(where + " instantiates an unknown class");
+                }
+                break;
+            case AND:
+                expect(where, Type.BOOLEAN_TYPE, expression(operands.get(0)));
+                expect(where, Type.BOOLEAN_TYPE, expression(operands.get(1)));
+                break;
+            case NOT:
+                expect(where, Type.BOOLEAN_TYPE, expression(operands.get(0)));
+                break;
+            case NULL_CHECK:
+                expect(where, expression.getType(), expression(operands.get(0)));
+                if (expression.getType().getSort() != Type.OBJECT && expression.getType().getSort() != Type.ARRAY) {
+                    problems.add(where + " checks a " + expression.getType());
+                }
+                break;
+            case CALL:
+                expect(where, Type.getObjectType(expression.getOwner()), expression(operands.get(0)));
+                IrMethod callee = program.resolveMethod(expression.getOwner(), expression.getName());
+                if (callee == null || !callee.getDescriptor().equals(expression.getDescriptor())) {
+                    problems.add(where + " calls an unknown method");
+                }
+                if (expression.isDirect() && (callee == null || !callee.getOwner().getName().equals(expression.getOwner()))) {
+                    problems.add(where + " is direct, but " + expression.getOwner() + " does not declare the callee");
+                }
+                Type[] parameters = Type.getArgumentTypes(expression.getDescriptor());
+                if (parameters.length != operands.size() - 1) {
+                    problems.add(where + " passes " + (operands.size() - 1) + " arguments for " + parameters.length + " parameters");
+                    break;
+                }
+                for (int i = 0; i < parameters.length; i++) {
+                    expect(where, parameters[i], expression(operands.get(i + 1)));
+                }
+                break;
+            default:
+                //ADD, SUB, MUL, DIV, POW, LT and EQ
+                expect(where, Type.INT_TYPE, expression(operands.get(0)));
+                expect(where, Type.INT_TYPE, expression(operands.get(1)));
+        }
+        return expression.getType();
+    }
+
+    private Type fieldType(String klass, String name) {
+        for (IrClass owner = program.getClass(klass); owner != null; owner = program.getClass(owner.getSuperName())) {
+            Type type = owner.getFields().get(name);
+            if (type != null) {
+                return type;
+            }
+        }
+        problems.add("no field " + name + " in " + klass);
+        return null;
+    }
+
+    private void expect(String where, Type expected, Type actual) {
+        if (expected != null && !isAssignable(actual, expected)) {
+            problems.add(where + ": " + actual + " where " + expected + " is expected");
+        }
+    }
+
+    private boolean isAssignable(Type from, Type to) {
+        if (from.equals(to)) {
+            return true;
+        }
+        if (from.getSort() != Type.OBJECT || to.getSort() != Type.OBJECT) {
+            return false;
+        }
+        Klass fromKlass = program.getKlasses().get(from.getInternalName());
+        Klass toKlass = program.getKlasses().get(to.getInternalName());
+        return fromKlass != null && toKlass != null && fromKlass.isInstanceOf(toKlass);
+    }
+
+    /**
+     * Forward dataflow over the reachable blocks: a local is definitely assigned at the start of
+     * a block if it is on every path from the entry.
+     */
+    private void checkDefiniteAssignment() {
+        List<IrLocal> all = new ArrayList<>(method.getParameters());
+        all.addAll(method.getLocals());
+        Map<IrLocal, Integer> index = new HashMap<>();
+        for (IrLocal local : all) {
+            index.put(local, index.size());
+        }
+
+        Set<BasicBlock> reachable = method.getReachableBlocks();
+        Map<BasicBlock, List<BasicBlock>> predecessors = method.getPredecessors();
+        Map<BasicBlock, BitSet> out = new HashMap<>();
+        BitSet everything = new BitSet();
+        everything.set(0, all.size());
+        for (BasicBlock block : method.getBlocks()) {
+            out.put(block, (BitSet) everything.clone());
+        }
+        BitSet parameters = new BitSet();
+        parameters.set(0, method.getParameters().size());
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (BasicBlock block : method.getBlocks()) {
+                if (!reachable.contains(block)) {
+                    continue;
+                }
+                BitSet assigned = assignedOnEntry(block, predecessors, reachable, out, parameters, everything);
+                for (IrStatement statement : block.getStatements()) {
+                    if (statement.getKind() == IrStatement.Kind.ASSIGN) {
+                        assigned.set(index.get(statement.getTarget()));
+                    }
+                }
+                if (!assigned.equals(out.get(block))) {
+                    out.put(block, assigned);
+                    changed = true;
+                }
+            }
+        }
+
+        for (BasicBlock block : method.getBlocks()) {
+            if (!reachable.contains(block)) {
+                continue;
+            }
+            BitSet assigned = assignedOnEntry(block, predecessors, reachable, out, parameters, everything);
+            for (IrStatement statement : block.getStatements()) {
+                for (IrExpression operand : statement.getOperands()) {
+                    checkAssigned(block, operand, assigned, index);
+                }
+                if (statement.getKind() == IrStatement.Kind.ASSIGN) {
+                    assigned.set(index.get(statement.getTarget()));
+                }
+            }
+            if (block.getExitValue() != null) {
+                checkAssigned(block, block.getExitValue(), assigned, index);
+            }
+        }
+    }
+
+    private BitSet assignedOnEntry(BasicBlock block, Map<BasicBlock, List<BasicBlock>> predecessors, Set<BasicBlock> reachable,
+                                   Map<BasicBlock, BitSet> out, BitSet parameters, BitSet everything) {
+        BitSet assigned = (BitSet) (block == method.getEntry() ? parameters : everything).clone();
+        for (BasicBlock predecessor : predecessors.get(block)) {
+            if (reachable.contains(predecessor)) {
+                assigned.and(out.get(predecessor));
+            }
+        }
+        return assigned;
+    }
+
+    private void checkAssigned(BasicBlock block, IrExpression expression, BitSet assigned, Map<IrLocal, Integer> index) {
+        expression.forEach(e -> {
+            if (e.getKind() == IrExpression.Kind.LOCAL && !assigned.get(index.get(e.getLocal()))) {
+                problems.add(block + " reads " + e.getLocal() + " before it is assigned");
+            }
+        });
+    }
+}
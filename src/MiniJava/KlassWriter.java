@@ -0,0 +1,47 @@
+package MiniJava;
+
+import org.objectweb.asm.ClassWriter;
+
+import java.util.*;
+
+/**
+ * A ClassWriter that computes stack map frames from the klasses of the compilation instead of
+ * loading classes. ASM asks for the common superclass of two types wherever values of different
+ * reference types meet, e.g. a local assigned a Dog in one branch and a Bird in the other. The
+ * default implementation loads both classes, which fails for classes that have not been written
+ * yet and would pick up stale ones from an earlier compile.
+ */
+class KlassWriter extends ClassWriter {
+    private static final String OBJECT = "java/lang/Object";
+
+    private final Map<String, Klass> klasses;
+
+    KlassWriter(Map<String, Klass> klasses) {
+        super(ClassWriter.COMPUTE_FRAMES);
+        this.klasses = klasses;
+    }
+
+    @Override
+    protected String getCommonSuperClass(String type1, String type2) {
+        if (type1.equals(type2)) {
+            return type1;
+        }
+        Klass klass1 = klasses.get(type1);
+        Klass klass2 = klasses.get(type2);
+        if (klass1 == null || klass2 == null) {
+            //MiniJava has no other reference types that can meet in a frame except int[], whose
+            //only common superclass with a class is Object.
+            return OBJECT;
+        }
+        Set<Klass> ancestors = new HashSet<>();
+        for (Klass klass = klass1; klass != null; klass = klass.getSuperKlass()) {
+            ancestors.add(klass);
+        }
+        for (Klass klass = klass2; klass != null; klass = klass.getSuperKlass()) {
+            if (ancestors.contains(klass)) {
+                return klass.getScopeName();
+            }
+        }
+        return OBJECT;
+    }
+}
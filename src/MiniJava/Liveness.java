@@ -0,0 +1,77 @@
+package MiniJava;
+
+import java.util.*;
+
+/**
+ * Which locals of a method are live at the start of every block: those that some path from
+ * there reads before assigning them. Computed backwards to a fixed point, visiting the blocks in
+ * reverse layout order, which is close to reverse postorder of the reversed graph.
+ */
+final class Liveness {
+    private final Map<BasicBlock, Set<IrLocal>> liveIn = new HashMap<>();
+
+    private Liveness() {
+    }
+
+    static Liveness analyze(IrMethod method) {
+        Liveness liveness = new Liveness();
+        for (BasicBlock block : method.getBlocks()) {
+            liveness.liveIn.put(block, new HashSet<>());
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = method.getBlocks().size() - 1; i >= 0; i--) {
+                BasicBlock block = method.getBlocks().get(i);
+                Set<IrLocal> live = liveness.liveOut(block);
+                for (int s = block.getStatements().size() - 1; s >= 0; s--) {
+                    transfer(block.getStatements().get(s), live);
+                }
+                if (!live.equals(liveness.liveIn.get(block))) {
+                    liveness.liveIn.put(block, live);
+                    changed = true;
+                }
+            }
+        }
+        return liveness;
+    }
+
+    Set<IrLocal> getLiveIn(BasicBlock block) {
+        return liveIn.get(block);
+    }
+
+    /**
+     * @return a new set of the locals live after the last statement of block, which includes
+     * the locals its exit reads.
+     */
+    Set<IrLocal> liveOut(BasicBlock block) {
+        Set<IrLocal> live = new HashSet<>();
+        for (BasicBlock successor : block.getSuccessors()) {
+            live.addAll(liveIn.get(successor));
+        }
+        if (block.getExitValue() != null) {
+            addReads(block.getExitValue(), live);
+        }
+        return live;
+    }
+
+    /**
+     * Turns the locals live after statement into those live before it.
+     */
+    static void transfer(IrStatement statement, Set<IrLocal> live) {
+        if (statement.getKind() == IrStatement.Kind.ASSIGN) {
+            live.remove(statement.getTarget());
+        }
+        for (IrExpression operand : statement.getOperands()) {
+            addReads(operand, live);
+        }
+    }
+
+    static void addReads(IrExpression expression, Set<IrLocal> live) {
+        expression.forEach(e -> {
+            if (e.getKind() == IrExpression.Kind.LOCAL) {
+                live.add(e.getLocal());
+            }
+        });
+    }
+}
@@ -0,0 +1,211 @@
+package MiniJava;
+
+import java.util.*;
+
+/**
+ * A natural loop of a method: a header block that dominates every block of the loop, and the
+ * blocks from which a back edge to the header can be reached without passing through it. Loops
+ * with the same header are merged into one.
+ */
+final class Loop {
+    private final BasicBlock header;
+    private final Set<BasicBlock> blocks = new LinkedHashSet<>();
+
+    private Loop(BasicBlock header) {
+        this.header = header;
+        blocks.add(header);
+    }
+
+    BasicBlock getHeader() {
+        return header;
+    }
+
+    /**
+     * @return the blocks of the loop, header first.
+     */
+    Set<BasicBlock> getBlocks() {
+        return blocks;
+    }
+
+    boolean contains(BasicBlock block) {
+        return blocks.contains(block);
+    }
+
+    /**
+     * @return the loops of method, inner loops before the loops that contain them.
+     */
+    static List<Loop> find(IrMethod method) {
+        Dominators dominators = new Dominators(method);
+        Map<BasicBlock, List<BasicBlock>> predecessors = method.getPredecessors();
+        Map<BasicBlock, Loop> loops = new LinkedHashMap<>();
+        for (BasicBlock block : method.getBlocks()) {
+            if (!dominators.isReachable(block)) {
+                continue;
+            }
+            for (BasicBlock successor : block.getSuccessors()) {
+                if (dominators.dominates(successor, block)) {
+                    //A back edge: collect everything that reaches it backwards, up to the header
+                    Loop loop = loops.computeIfAbsent(successor, Loop::new);
+                    Deque<BasicBlock> work = new ArrayDeque<>();
+                    work.push(block);
+                    while (!work.isEmpty()) {
+                        BasicBlock member = work.pop();
+                        if (loop.blocks.add(member)) {
+                            for (BasicBlock predecessor : predecessors.get(member)) {
+                                if (dominators.isReachable(predecessor)) {
+                                    work.push(predecessor);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        List<Loop> result = new ArrayList<>(loops.values());
+        result.sort(Comparator.comparingInt(loop -> loop.blocks.size()));
+        return result;
+    }
+
+    /**
+     * The dominator tree of the reachable blocks of a method. The immediate dominators are found
+     * with the iterative algorithm of Cooper, Harvey and Kennedy over reverse postorder, and the
+     * tree is numbered in depth-first order, so that a dominance test compares two intervals.
+     */
+    private static final class Dominators {
+        private final Map<BasicBlock, Integer> enter = new HashMap<>();
+        private final Map<BasicBlock, Integer> exit = new HashMap<>();
+
+        Dominators(IrMethod method) {
+            List<BasicBlock> postorder = postorder(method.getEntry());
+            Map<BasicBlock, Integer> number = new HashMap<>();
+            for (int i = 0; i < postorder.size(); i++) {
+                number.put(postorder.get(i), i);
+            }
+            Map<BasicBlock, List<BasicBlock>> predecessors = method.getPredecessors();
+            Map<BasicBlock, BasicBlock> idom = new HashMap<>();
+            idom.put(method.getEntry(), method.getEntry());
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int i = postorder.size() - 2; i >= 0; i--) {
+                    BasicBlock block = postorder.get(i);
+                    BasicBlock dominator = null;
+                    for (BasicBlock predecessor : predecessors.get(block)) {
+                        if (idom.containsKey(predecessor)) {
+                            dominator = dominator == null ? predecessor : intersect(predecessor, dominator, idom, number);
+                        }
+                    }
+                    if (idom.put(block, dominator) != dominator) {
+                        changed = true;
+                    }
+                }
+            }
+
+            Map<BasicBlock, List<BasicBlock>> children = new HashMap<>();
+            for (Map.Entry<BasicBlock, BasicBlock> entry : idom.entrySet()) {
+                if (entry.getKey() != entry.getValue()) {
+                    children.computeIfAbsent(entry.getValue(), block -> new ArrayList<>()).add(entry.getKey());
+                }
+            }
+            //Iterative, because the tree of a long method is deep
+            int counter = 0;
+            Deque<BasicBlock> work = new ArrayDeque<>();
+            work.push(method.getEntry());
+            while (!work.isEmpty()) {
+                BasicBlock block = work.peek();
+                if (enter.putIfAbsent(block, counter) == null) {
+                    counter++;
+                    for (BasicBlock child : children.getOrDefault(block, Collections.emptyList())) {
+                        work.push(child);
+                    }
+                } else {
+                    work.pop();
+                    exit.put(block, counter++);
+                }
+            }
+        }
+
+        private static BasicBlock intersect(BasicBlock a, BasicBlock b, Map<BasicBlock, BasicBlock> idom, Map<BasicBlock, Integer> number) {
+            while (a != b) {
+                while (number.get(a) < number.get(b)) {
+                    a = idom.get(a);
+                }
+                while (number.get(b) < number.get(a)) {
+                    b = idom.get(b);
+                }
+            }
+            return a;
+        }
+
+        private static List<BasicBlock> postorder(BasicBlock entry) {
+            List<BasicBlock> postorder = new ArrayList<>();
+            Set<BasicBlock> visited = new HashSet<>();
+            Deque<Iterator<BasicBlock>> successors = new ArrayDeque<>();
+            Deque<BasicBlock> path = new ArrayDeque<>();
+            visited.add(entry);
+            path.push(entry);
+            successors.push(entry.getSuccessors().iterator());
+            while (!path.isEmpty()) {
+                if (successors.peek().hasNext()) {
+                    BasicBlock successor = successors.peek().next();
+                    if (visited.add(successor)) {
+                        path.push(successor);
+                        successors.push(successor.getSuccessors().iterator());
+                    }
+                } else {
+                    postorder.add(path.pop());
+                    successors.pop();
+                }
+            }
+            return postorder;
+        }
+
+        boolean isReachable(BasicBlock block) {
+            return enter.containsKey(block);
+        }
+
+        /**
+         * @return true if every path from the entry to block passes through dominator, which
+         * both must be reachable.
+         */
+        boolean dominates(BasicBlock dominator, BasicBlock block) {
+            return enter.get(dominator) <= enter.get(block) && exit.get(block) <= exit.get(dominator);
+        }
+    }
+
+    /**
+     * Makes a new block that runs once before the loop is entered: every edge from outside the
+     * loop to the header is redirected to it. It is laid out before the first block of the loop,
+     * so the block that used to jump into the loop usually falls through into it.
+     *
+     * @param loops the loops of method found along with this one. The preheader joins those that
+     *              contain this loop, so that they stay valid without finding them again.
+     * @return the preheader, which ends with a goto to the header.
+     */
+    BasicBlock createPreheader(IrMethod method, List<Loop> loops) {
+        BasicBlock preheader = method.newBlock();
+        preheader.jumpTo(header);
+        for (BasicBlock block : method.getBlocks()) {
+            if (contains(block)) {
+                continue;
+            }
+            if (block.getExit() == BasicBlock.Exit.GOTO && block.getTarget() == header) {
+                block.jumpTo(preheader);
+            } else if (block.getExit() == BasicBlock.Exit.BRANCH && (block.getTarget() == header || block.getElseTarget() == header)) {
+                block.branch(block.getExitValue(), block.getTarget() == header ? preheader : block.getTarget(),
+                        block.getElseTarget() == header ? preheader : block.getElseTarget());
+            }
+        }
+        int first = method.getBlocks().size();
+        for (BasicBlock block : blocks) {
+            first = Math.min(first, method.getBlocks().indexOf(block));
+        }
+        method.getBlocks().add(first, preheader);
+        for (Loop loop : loops) {
+            if (loop != this && loop.contains(header)) {
+                loop.blocks.add(preheader);
+            }
+        }
+        return preheader;
+    }
+}
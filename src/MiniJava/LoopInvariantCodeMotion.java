@@ -0,0 +1,235 @@
+package MiniJava;
+
+import java.util.*;
+
+/**
+ * Moves expressions whose value cannot change while a loop runs into a new block before the
+ * loop, the preheader, and has the loop read a temporary instead. Assignments of invariant values
+ * to locals that are assigned nowhere else move to the preheader as a whole. Inner loops are done
+ * first, so code that is invariant in several nested loops moves out step by step.
+ *
+ * An expression is invariant when it only reads locals the loop does not assign and fields that
+ * neither the loop nor the methods it calls write, as far as MethodEffects can tell. Array
+ * elements are never invariant. Only expressions that cannot throw are moved, because they run
+ * even when the loop body does not; the exception is an expression like an array length that
+ * the loop header computes before anything else that can throw, which then throws at the same
+ * point as before.
+ */
+class LoopInvariantCodeMotion implements IrPass {
+
+    @Override
+    public String getName() {
+        return "loop-invariant code motion";
+    }
+
+    @Override
+    public void run(IrProgram program, OptimizationReport report) {
+        MethodEffects effects = MethodEffects.analyze(program);
+        for (IrMethod method : program.getMethods()) {
+            //How often each local is assigned, kept up to date as temporaries are added
+            Map<IrLocal, Integer> assignments = new HashMap<>();
+            for (IrLocal parameter : method.getParameters()) {
+                assignments.put(parameter, 1);
+            }
+            for (BasicBlock block : method.getBlocks()) {
+                for (IrStatement statement : block.getStatements()) {
+                    if (statement.getKind() == IrStatement.Kind.ASSIGN) {
+                        assignments.merge(statement.getTarget(), 1, Integer::sum);
+                    }
+                }
+            }
+            List<Loop> loops = Loop.find(method);
+            for (Loop loop : loops) {
+                new Hoister(method, loop, loops, assignments, effects).hoist(this, report);
+            }
+        }
+    }
+
+    /**
+     * Hoists the invariant expressions of one loop.
+     */
+    private static final class Hoister {
+        private final IrMethod method;
+        private final Loop loop;
+        private final List<Loop> loops;
+        private final Set<IrLocal> assigned = new HashSet<>();
+        //A parameter counts as assigned once more, with its argument on entry
+        private final Map<IrLocal, Integer> assignments;
+        private final Set<String> fieldsWritten = new HashSet<>();
+        //Each hoisted expression, and the temporary that now holds its value
+        private final List<IrExpression> hoisted = new ArrayList<>();
+        private final List<IrLocal> temporaries = new ArrayList<>();
+        //Whole assignments moved out of the loop
+        private final List<IrStatement> moved = new ArrayList<>();
+        //Whether anything that can throw or has side effects has run in the header yet
+        private boolean clean;
+
+        /**
+         * @param loops       every loop of the method, which the preheader is added to.
+         * @param assignments how often each local of the method is assigned.
+         */
+        Hoister(IrMethod method, Loop loop, List<Loop> loops, Map<IrLocal, Integer> assignments, MethodEffects effects) {
+            this.method = method;
+            this.loop = loop;
+            this.loops = loops;
+            this.assignments = assignments;
+            for (BasicBlock block : loop.getBlocks()) {
+                for (IrStatement statement : block.getStatements()) {
+                    if (statement.getKind() == IrStatement.Kind.ASSIGN) {
+                        assigned.add(statement.getTarget());
+                    } else if (statement.getKind() == IrStatement.Kind.PUT_FIELD) {
+                        fieldsWritten.add(statement.getName());
+                    }
+                    for (IrExpression operand : statement.getOperands()) {
+                        addCalleeWrites(operand, effects);
+                    }
+                }
+                if (block.getExitValue() != null) {
+                    addCalleeWrites(block.getExitValue(), effects);
+                }
+            }
+        }
+
+        private void addCalleeWrites(IrExpression expression, MethodEffects effects) {
+            expression.forEach(e -> {
+                if (e.getKind() == IrExpression.Kind.CALL) {
+                    fieldsWritten.addAll(effects.getFieldsWritten(e.getName()));
+                }
+            });
+        }
+
+        void hoist(IrPass pass, OptimizationReport report) {
+            moveInvariantAssignments();
+            for (BasicBlock block : loop.getBlocks()) {
+                clean = block == loop.getHeader() && block.getStatements().isEmpty();
+                for (IrStatement statement : block.getStatements()) {
+                    List<IrExpression> operands = statement.getOperands();
+                    for (int i = 0; i < operands.size(); i++) {
+                        operands.set(i, rewrite(operands.get(i), false));
+                    }
+                }
+                if (block.getExitValue() != null) {
+                    block.setExitValue(rewrite(block.getExitValue(), false));
+                }
+            }
+            if (moved.isEmpty() && hoisted.isEmpty()) {
+                return;
+            }
+
+            //The hoisted expressions may read the locals of the moved assignments
+            BasicBlock preheader = loop.createPreheader(method, loops);
+            for (IrStatement statement : moved) {
+                preheader.getStatements().add(statement);
+                report.add(pass, method, "hoisted " + statement + " out of the loop at " + loop.getHeader());
+            }
+            for (int i = 0; i < hoisted.size(); i++) {
+                preheader.getStatements().add(IrStatement.assign(temporaries.get(i), hoisted.get(i)));
+                assignments.put(temporaries.get(i), 1);
+                report.add(pass, method, "hoisted " + hoisted.get(i) + " out of the loop at " + loop.getHeader());
+            }
+        }
+
+        /**
+         * Takes the assignments out of the loop whose local is assigned nowhere else and whose
+         * value is invariant and cannot throw. Such a local is not a parameter, which is assigned
+         * on entry too, so every read of it comes after its only assignment and sees the same
+         * value when the assignment runs before the loop. Moving one assignment may make others
+         * invariant, so this repeats until nothing moves.
+         */
+        private void moveInvariantAssignments() {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (BasicBlock block : loop.getBlocks()) {
+                    for (Iterator<IrStatement> i = block.getStatements().iterator(); i.hasNext(); ) {
+                        IrStatement statement = i.next();
+                        if (statement.getKind() == IrStatement.Kind.ASSIGN && assignments.get(statement.getTarget()) == 1
+                                && isInvariant(statement.getValue()) && statement.getValue().isPure()) {
+                            i.remove();
+                            moved.add(statement);
+                            assigned.remove(statement.getTarget());
+                            changed = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * @param conditional whether expression is only evaluated on some runs of its statement,
+         *                    as the right operand of an AND.
+         * @return expression, or a read of the temporary it was hoisted into.
+         */
+        private IrExpression rewrite(IrExpression expression, boolean conditional) {
+            if (isInvariant(expression) && isWorthHoisting(expression)) {
+                for (int i = 0; i < hoisted.size(); i++) {
+                    if (hoisted.get(i).sameAs(expression)) {
+                        return IrExpression.local(temporaries.get(i));
+                    }
+                }
+                if (expression.isPure() || clean && !conditional) {
+                    IrLocal temporary = method.addTemporary(expression.getType());
+                    hoisted.add(expression);
+                    temporaries.add(temporary);
+                    return IrExpression.local(temporary);
+                }
+            }
+            List<IrExpression> operands = expression.getOperands();
+            for (int i = 0; i < operands.size(); i++) {
+                operands.set(i, rewrite(operands.get(i), conditional || expression.getKind() == IrExpression.Kind.AND && i == 1));
+            }
+            if (expression.mayThrowItself()) {
+                clean = false;
+            }
+            return expression;
+        }
+
+        private boolean isInvariant(IrExpression expression) {
+            switch (expression.getKind()) {
+                case CONST:
+                case THIS:
+                    return true;
+                case LOCAL:
+                    return !assigned.contains(expression.getLocal());
+                case GET_FIELD:
+                    return !fieldsWritten.contains(expression.getName()) && operandsInvariant(expression);
+                case ARRAY_LENGTH:
+                case ADD:
+                case SUB:
+                case MUL:
+                case DIV:
+                case POW:
+                case LT:
+                case EQ:
+                case AND:
+                case NOT:
+                    return operandsInvariant(expression);
+                default:
+                    return false;
+            }
+        }
+
+        private boolean operandsInvariant(IrExpression expression) {
+            for (IrExpression operand : expression.getOperands()) {
+                if (!isInvariant(operand)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return false for the expressions that are as cheap to compute as to read from a local.
+         */
+        private static boolean isWorthHoisting(IrExpression expression) {
+            switch (expression.getKind()) {
+                case CONST:
+                case LOCAL:
+                case THIS:
+                    return false;
+                default:
+                    return true;
+            }
+        }
+    }
+}
@@ -1,135 +1,200 @@
 package MiniJava;
 
 
-import org.antlr.v4.runtime.*;
-import org.antlr.v4.runtime.atn.PredictionMode;
-import org.antlr.v4.runtime.tree.ParseTree;
-import org.antlr.v4.runtime.tree.ParseTreeProperty;
-import org.antlr.v4.runtime.tree.ParseTreeWalker;
-
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 
 public class Main {
 
-    private static String inputFile = null;
+    public static void main(String[] args) throws IOException, InterruptedException {
 
-    public static void main(String[] args) throws IOException {
+        //-------------------------------ARGUMENTS-----------------------------------
+        //---------------------------------------------------------------------------
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean grammarDebug = false;
+        boolean timings = false;
+        int optimizationLevel = 1;
+        boolean verifyIr = false;
+        boolean dumpIr = false;
+        boolean optimizationReport = false;
+        Set<Peephole.Rule> peepholeRules = null;
+        int memoEntries = 0;
+        File outputDirectory = new File(".");
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-j") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-d") && i + 1 < args.length) {
+                outputDirectory = new File(args[++i]);
+            } else if (args[i].equals("--grammar-debug")) {
+                grammarDebug = true;
+            } else if (args[i].equals("--timings")) {
+                timings = true;
+            } else if (args[i].matches("-O[0-9]")) {
+                optimizationLevel = args[i].charAt(2) - '0';
+            } else if (args[i].equals("--verify-ir")) {
+                verifyIr = true;
+            } else if (args[i].equals("--dump-ir")) {
+                dumpIr = true;
+            } else if (args[i].equals("--opt-report")) {
+                optimizationReport = true;
+            } else if (args[i].startsWith("--peephole=")) {
+                try {
+                    peepholeRules = Peephole.Rule.parse(args[i].substring("--peephole=".length()));
+                } catch (IllegalArgumentException e) {
+                    System.err.println(e.getMessage());
+                    System.exit(2);
+                }
+            } else if (args[i].matches("--memoize=[0-9]{1,9}")) {
+                memoEntries = Integer.parseInt(args[i].substring("--memoize=".length()));
+            } else {
+                paths.add(args[i]);
+            }
+        }
+        if (paths.isEmpty() || threads < 1 || optimizationLevel > PassManager.MAX_LEVEL || Integer.bitCount(memoEntries) > 1
+                || memoEntries > Memoization.MAX_ENTRIES) {
+            System.err.println("usage: Main [-j threads] [-d directory] [-O0|-O1|-O2] [--grammar-debug] [--timings] [--verify-ir] [--dump-ir] [--opt-report] [--peephole=rule,...|all|none] [--memoize=entries] <file or directory>...");
+            System.err.println("  --memoize=entries takes a power of two up to " + Memoization.MAX_ENTRIES);
+            System.exit(2);
+        }
 
         //-------------------------------FILE I/O------------------------------------
         //---------------------------------------------------------------------------
 
-        String[] inputFiles;
-        inputFiles = new String[9];
-        inputFiles[0] = "C:\\Users\\Steve\\IdeaProjects\\MiniJavaCompiler\\samples\\clean\\BinarySearch.java";
-        inputFiles[1] = "C:\\Users\\Steve\\IdeaProjects\\MiniJavaCompiler\\samples\\clean\\BinaryTree.java";
-        inputFiles[2] = "C:\\Users\\Steve\\IdeaProjects\\MiniJavaCompiler\\samples\\clean\\BubbleSort.java";
-        inputFiles[3] = "C:\\Users\\Steve\\IdeaProjects\\MiniJavaCompiler\\samples\\clean\\Factorial.java";
-        inputFiles[4] = "C:\\Users\\Steve\\IdeaProjects\\MiniJavaCompiler\\samples\\clean\\LinearSearch.java";
-        inputFiles[5] = "C:\\Users\\Steve\\IdeaProjects\\MiniJavaCompiler\\samples\\clean\\LinkedList.java";
-        inputFiles[6] = "C:\\Users\\Steve\\IdeaProjects\\MiniJavaCompiler\\samples\\clean\\Quicksort.java";
-        inputFiles[7] = "C:\\Users\\Steve\\IdeaProjects\\MiniJavaCompiler\\samples\\clean\\TreeVisitor.java";
-        inputFiles[8] = "C:\\Users\\Steve\\IdeaProjects\\MiniJavaCompiler\\samples\\clean\\Power.java";
-
-        for (String file : inputFiles) {
-            inputFile = file;
-            FileInputStream is = null;
-//        if (args.length > 0) {
-//            inputFile = args[0];
-//            is = new FileInputStream(inputFile);
-//        }
-
-            is = new FileInputStream(file);
-
-            System.err.println("\n-----" + getFileName() + "-----");
-            //-------------------------------LEXER/PARSER SETUP--------------------------
-            //---------------------------------------------------------------------------
-
-            //Wrapper for FileInputStream
-            ANTLRInputStream input = new ANTLRInputStream(is);
-
-            //Lexer for tokenizing the FileInputStream
-            MiniJavaLexer lexer = new MiniJavaLexer(input);
-
-            //Stream view of tokenized file, built by lexer
-            CommonTokenStream tokens = new CommonTokenStream(lexer);
-
-            //Takes the token stream for parse tree construction
-            MiniJavaParser parser = new MiniJavaParser(tokens);
-
-            //Symbol-table representation of classes for use in semantic analysis
-            Map<String, Klass> klasses = new HashMap<String, Klass>();
-
-            //Collection of symbol-table scopes
-            ParseTreeProperty<Scope> scopes = new ParseTreeProperty<Scope>();
-
-            //Type of the LHS of a method call expression
-            ParseTreeProperty<Klass> callerTypes = new ParseTreeProperty<Klass>();
-
-            //Remove default error listeners and add custom listeners
-            parser.removeErrorListeners();
-
-            parser.addErrorListener(new DiagnosticErrorListener());
-            parser.getInterpreter().setPredictionMode(PredictionMode.LL_EXACT_AMBIG_DETECTION);
-
-            //Reports syntax errors upon construction of the parse tree.
-            parser.addErrorListener(new UnderlineListener());
-
-            //Construct the parse tree and report syntax errors
-            ParseTree tree = parser.goal();
-            //If errors were encountered during parsing, print them and stop compiling.
-            ErrorStrategy.exitOnErrors();
-
-            // print LISP-style tree
-            // System.out.println(tree.toStringTree(parser));
-
-
-            //-------------------------------STATIC SEMANTICS----------------------------
-            //---------------------------------------------------------------------------
-
-            //A listener for naming the classes in the symbol table
-            ClassNamer namer = new ClassNamer(klasses, parser);
-            //Walk the parse tree, creating klasses and naming them
-            ParseTreeWalker.DEFAULT.walk(namer, tree);
-            //If there were errors during naming (two classes with same name)
-            ErrorStrategy.exitOnErrors();
-
-            //Build the symbol Table
-            AssignmentListener AListener = new AssignmentListener(klasses, scopes, parser);
-            //ParseTreeWalker.PopulateSymbolTable()
-            ParseTreeWalker.DEFAULT.walk(AListener, tree);
-            //If there were errors during naming (Cyclic inheritance)
-            ErrorStrategy.exitOnErrors();
-
-            //Visitor for Type checking
-            TypeCheckVisitor TCVisitor = new TypeCheckVisitor(klasses, scopes, callerTypes, parser);
-            //ParseTreeWalker.TypeCheck()
-            TCVisitor.visit(tree);
-            //If there were errors during naming ( int x; x = 0; x = new int[] + x; )
-            ErrorStrategy.exitOnErrors();
-
-            //Visitor for ensuring variables are initialized before use
-            InitializationBeforeUseCheckVisitor IBUCVisitor = new InitializationBeforeUseCheckVisitor(klasses, scopes, parser);
-            //Walk the parse tree
-            IBUCVisitor.visit(tree);
-            //If there were errors during naming ( int x; x = x + 0; x not initialized )
-            ErrorStrategy.exitOnErrors();
-
-            //A listener for generating java byte code from the parse tree.
-            BytecodeGenerator codeGen = new BytecodeGenerator(klasses, scopes, callerTypes, parser);
-            //Traverse the parse tree, generating java byte code
-            ParseTreeWalker.DEFAULT.walk(codeGen, tree);
+        List<File> inputFiles = new ArrayList<>();
+        for (String path : paths) {
+            collectSourceFiles(new File(path), inputFiles);
+        }
+
+        //-------------------------------BATCH COMPILATION---------------------------
+        //---------------------------------------------------------------------------
+
+        //Every file is compiled on its own worker; results are reported in input order.
+        Compiler compiler = new Compiler();
+        compiler.setGrammarDebug(grammarDebug);
+        compiler.setOptimizationLevel(optimizationLevel);
+        compiler.setVerifyIr(verifyIr);
+        compiler.setDumpIr(dumpIr);
+        compiler.setOptimizationReport(optimizationReport);
+        if (peepholeRules != null) {
+            compiler.setPeepholeRules(peepholeRules);
+        }
+        compiler.setMemoEntries(memoEntries);
+        compiler.addClassSink(new DirectoryClassSink(outputDirectory));
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        List<Future<CompilationResult>> pending = new ArrayList<>();
+        for (File file : inputFiles) {
+            pending.add(pool.submit(() -> compile(compiler, file)));
+        }
+
+        List<CompilationResult> results = new ArrayList<>();
+        int failed = 0;
+        long lines = 0;
+        for (Future<CompilationResult> future : pending) {
+            CompilationResult result;
+            try {
+                result = future.get();
+            } catch (ExecutionException ee) {
+                pool.shutdownNow();
+                throw new RuntimeException(ee.getCause());
+            }
+            System.err.print(result.getDiagnostics());
+            results.add(result);
+            lines += result.getLines();
+            if (!result.isSuccess()) {
+                failed++;
+            }
+        }
+        pool.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
 
+        System.err.printf("%n%d files (%d lines) compiled in %.3f s on %d threads: %.1f files/sec, %.1f lines/sec, %d failed.%n",
+                inputFiles.size(), lines, seconds, threads, inputFiles.size() / seconds, lines / seconds, failed);
+        if (timings) {
+            printTimings(results);
+        }
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Adds file to inputFiles, or every .java file below it if it is a directory, in name order.
+     */
+    private static void collectSourceFiles(File file, List<File> inputFiles) throws FileNotFoundException {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children == null) {
+                return;
+            }
+            Arrays.sort(children);
+            for (File child : children) {
+                if (child.isDirectory() || child.getName().endsWith(".java")) {
+                    collectSourceFiles(child, inputFiles);
+                }
+            }
+        } else if (file.isFile()) {
+            inputFiles.add(file);
+        } else {
+            throw new FileNotFoundException(file.getPath());
+        }
+    }
+
+    /**
+     * Prints the time spent in each phase over all files, and the file that took longest in it,
+     * followed by the time of each optimization pass. With several threads the phase times add up
+     * to more than the elapsed time.
+     */
+    private static void printTimings(List<CompilationResult> results) {
+        PhaseTimings total = new PhaseTimings();
+        for (CompilationResult result : results) {
+            total.add(result.getTimings());
+        }
+
+        //The first column fits the longest phase or pass name
+        int width = "phase".length();
+        for (Phase phase : Phase.values()) {
+            width = Math.max(width, phase.getLabel().length());
+        }
+        for (String pass : total.getPassNanos().keySet()) {
+            width = Math.max(width, pass.length());
+        }
+        String label = "%-" + width + "s";
+
+        System.err.printf("%n" + label + " %10s %6s %10s   %s%n", "phase", "total ms", "%", "max ms", "slowest file");
+        for (Phase phase : Phase.values()) {
+            CompilationResult slowest = null;
+            for (CompilationResult result : results) {
+                if (slowest == null || result.getTimings().getNanos(phase) > slowest.getTimings().getNanos(phase)) {
+                    slowest = result;
+                }
+            }
+            System.err.printf(label + " %10.3f %6.1f %10.3f   %s%n", phase.getLabel(), total.getNanos(phase) / 1e6,
+                    100.0 * total.getNanos(phase) / Math.max(1, total.getTotalNanos()),
+                    slowest != null ? slowest.getTimings().getNanos(phase) / 1e6 : 0.0, slowest != null ? slowest.getFileName() : "-");
+        }
+        System.err.printf(label + " %10.3f %6.1f%n", "total", total.getTotalNanos() / 1e6, 100.0);
+
+        if (!total.getPassNanos().isEmpty()) {
+            System.err.printf("%n" + label + " %10s %6s%n", "pass", "total ms", "%");
+            for (Map.Entry<String, Long> pass : total.getPassNanos().entrySet()) {
+                System.err.printf(label + " %10.3f %6.1f%n", pass.getKey(), pass.getValue() / 1e6,
+                        100.0 * pass.getValue() / Math.max(1, total.getNanos(Phase.OPTIMIZE)));
+            }
         }
     }
 
-    //Return the name of the file for System.err
-    public static String getFileName() {
-        File base = new File("C:/Users/Steve/IdeaProjects/MiniJavaCompiler/samples/clean/");
-        File file = new File(inputFile);
-        String relativePath = base.toURI().relativize(file.toURI()).getPath();
-        return relativePath;
+    private static CompilationResult compile(Compiler compiler, File file) throws IOException {
+        String source = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        return compiler.compile(file.getPath(), source);
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,110 @@
+package MiniJava;
+
+import org.objectweb.asm.Type;
+
+import java.util.*;
+
+/**
+ * Gives the methods whose result depends on their int and boolean arguments alone, as Purity
+ * finds them, a cache of results in the generated class. A call first looks its arguments up in
+ * the cache, and only runs the method when they are not there; the result then goes into the
+ * cache. Only methods that loop or call other methods are cached, because a lookup costs more
+ * than a few instructions of straight-line code.
+ *
+ * The cache is direct-mapped: the arguments hash to one of its entries, and a new result evicts
+ * whatever that entry held. IrCodeGenerator emits it and, when asked to, counters of hits and
+ * misses in private static fields, see memoHits and memoMisses. MiniJava programs run on one
+ * thread, so the cache is not synchronized.
+ *
+ * The report tells which methods are pure, which of them depend on their arguments alone, and
+ * which of those are cached.
+ */
+class Memoization implements IrPass {
+    /**
+     * The most results cached per method. A cache takes entries * (parameters + 2) ints, which
+     * stays below 70 MB at this bound even for a method with the JVM's limit of 255 parameters.
+     */
+    static final int MAX_ENTRIES = 1 << 16;
+
+    private final int entries;
+
+    /**
+     * @param entries the number of results cached per method, a power of two up to MAX_ENTRIES.
+     */
+    Memoization(int entries) {
+        if (entries <= 0 || entries > MAX_ENTRIES || Integer.bitCount(entries) != 1) {
+            throw new IllegalArgumentException("memo cache entries " + entries);
+        }
+        this.entries = entries;
+    }
+
+    @Override
+    public String getName() {
+        return "memoization";
+    }
+
+    @Override
+    public void run(IrProgram program, OptimizationReport report) {
+        Purity purity = Purity.analyze(program);
+        for (IrMethod method : program.getMethods()) {
+            if (!purity.isPure(method)) {
+                continue;
+            }
+            if (!purity.dependsOnlyOnArguments(method)) {
+                report.add(this, method, "pure");
+            } else if (!isCacheable(method)) {
+                report.add(this, method, "pure, depends on its arguments alone");
+            } else {
+                method.setMemoEntries(entries);
+                report.add(this, method, "pure, depends on its arguments alone, cached in " + entries + " entries");
+            }
+        }
+    }
+
+    private static boolean isCacheable(IrMethod method) {
+        if (method.isStatic() || method.getParameters().isEmpty() || !isIntOrBoolean(method.getReturnType())) {
+            return false;
+        }
+        for (IrLocal parameter : method.getParameters()) {
+            if (!isIntOrBoolean(parameter.getType())) {
+                return false;
+            }
+        }
+        if (!Loop.find(method).isEmpty()) {
+            return true;
+        }
+        for (BasicBlock block : method.getBlocks()) {
+            for (IrStatement statement : block.getStatements()) {
+                for (IrExpression operand : statement.getOperands()) {
+                    if (operand.contains(e -> e.getKind() == IrExpression.Kind.CALL)) {
+                        return true;
+                    }
+                }
+            }
+            if (block.getExitValue() != null && block.getExitValue().contains(e -> e.getKind() == IrExpression.Kind.CALL)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIntOrBoolean(Type type) {
+        return type.equals(Type.INT_TYPE) || type.equals(Type.BOOLEAN_TYPE);
+    }
+
+    /**
+     * @return the name of the static field that counts the calls of method the cache answered,
+     * which no MiniJava identifier can take.
+     */
+    static String memoHits(IrMethod method) {
+        return method.getName() + "-memoHits";
+    }
+
+    /**
+     * @return the name of the static field that counts the calls of method that ran it, which no
+     * MiniJava identifier can take.
+     */
+    static String memoMisses(IrMethod method) {
+        return method.getName() + "-memoMisses";
+    }
+}
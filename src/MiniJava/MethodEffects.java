@@ -0,0 +1,77 @@
+package MiniJava;
+
+import java.util.*;
+
+/**
+ * Which fields a call may read and write, for every method name of a program, including what the
+ * methods it calls read and write in turn. A call of name may run the method of that name in any class, so the
+ * effects of all of them are merged, and fields are identified by name alone.
+ */
+final class MethodEffects {
+    private final Map<String, Set<String>> fieldsRead = new HashMap<>();
+    private final Map<String, Set<String>> fieldsWritten = new HashMap<>();
+
+    private MethodEffects() {
+    }
+
+    static MethodEffects analyze(IrProgram program) {
+        MethodEffects effects = new MethodEffects();
+        Map<String, Set<String>> callees = new HashMap<>();
+        for (IrMethod method : program.getMethods()) {
+            Set<String> read = effects.fieldsRead.computeIfAbsent(method.getName(), name -> new HashSet<>());
+            Set<String> written = effects.fieldsWritten.computeIfAbsent(method.getName(), name -> new HashSet<>());
+            Set<String> called = callees.computeIfAbsent(method.getName(), name -> new HashSet<>());
+            for (BasicBlock block : method.getBlocks()) {
+                for (IrStatement statement : block.getStatements()) {
+                    if (statement.getKind() == IrStatement.Kind.PUT_FIELD) {
+                        written.add(statement.getName());
+                    }
+                    for (IrExpression operand : statement.getOperands()) {
+                        addAccesses(operand, read, called);
+                    }
+                }
+                if (block.getExitValue() != null) {
+                    addAccesses(block.getExitValue(), read, called);
+                }
+            }
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<String, Set<String>> method : callees.entrySet()) {
+                Set<String> read = effects.fieldsRead.get(method.getKey());
+                Set<String> written = effects.fieldsWritten.get(method.getKey());
+                for (String callee : method.getValue()) {
+                    changed |= read.addAll(effects.fieldsRead.get(callee));
+                    changed |= written.addAll(effects.fieldsWritten.get(callee));
+                }
+            }
+        }
+        return effects;
+    }
+
+    private static void addAccesses(IrExpression expression, Set<String> read, Set<String> called) {
+        expression.forEach(e -> {
+            if (e.getKind() == IrExpression.Kind.CALL) {
+                called.add(e.getName());
+            } else if (e.getKind() == IrExpression.Kind.GET_FIELD) {
+                read.add(e.getName());
+            }
+        });
+    }
+
+    /**
+     * @return the names of the fields a call of the method name may read.
+     */
+    Set<String> getFieldsRead(String name) {
+        return fieldsRead.getOrDefault(name, Collections.emptySet());
+    }
+
+    /**
+     * @return the names of the fields a call of the method name may write.
+     */
+    Set<String> getFieldsWritten(String name) {
+        return fieldsWritten.getOrDefault(name, Collections.emptySet());
+    }
+}
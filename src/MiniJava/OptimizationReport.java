@@ -0,0 +1,38 @@
+package MiniJava;
+
+import java.util.*;
+
+/**
+ * What the optimization passes did to each method of one compilation, as printed by
+ * --opt-report. Passes only describe their work when the report is enabled, since some of it,
+ * like measuring the size of the generated code, takes time of its own.
+ */
+public class OptimizationReport {
+    private final boolean enabled;
+    private final List<String> remarks = new ArrayList<>();
+
+    OptimizationReport(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param where the method or class the remark is about.
+     */
+    void add(String pass, String where, String remark) {
+        if (enabled) {
+            remarks.add(pass + ": " + where + ": " + remark);
+        }
+    }
+
+    void add(IrPass pass, IrMethod method, String remark) {
+        add(pass.getName(), method.getQualifiedName(), remark);
+    }
+
+    public List<String> getRemarks() {
+        return Collections.unmodifiableList(remarks);
+    }
+}
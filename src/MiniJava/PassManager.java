@@ -0,0 +1,71 @@
+package MiniJava;
+
+import java.util.*;
+
+/**
+ * Runs the optimization passes of an optimization level over the IR, in order, timing each one.
+ *
+ * -O0 does not build the IR at all, the parse tree is generated directly by BytecodeGenerator.
+ * -O1 runs the passes that take about linear time in the size of a method and hardly grow the
+ * code: the passes that work on loops find them, and the dominators, once per method. -O2 adds
+ * the passes that may trade code size or compile time for speed.
+ */
+class PassManager {
+    static final int MAX_LEVEL = 2;
+
+    private final List<IrPass> passes = new ArrayList<>();
+
+    PassManager(int level) {
+        this(level, 0);
+    }
+
+    /**
+     * @param memoEntries the size of the result caches of Memoization, which only runs when
+     *                    optimizing and this is not 0.
+     */
+    PassManager(int level, int memoEntries) {
+        if (level < 0 || level > MAX_LEVEL) {
+            throw new IllegalArgumentException("optimization level " + level);
+        }
+        if (level >= 1) {
+            passes.add(new Devirtualization());
+            passes.add(new TailRecursionElimination());
+        }
+        if (level >= 2) {
+            passes.add(new IdiomRecognition());
+            passes.add(new Inlining());
+        }
+        if (level >= 1) {
+            passes.add(new ConstantFolding());
+            passes.add(new DeadCodeElimination());
+            passes.add(new LoopInvariantCodeMotion());
+            passes.add(new ScalarPromotion());
+            if (memoEntries > 0) {
+                passes.add(new Memoization(memoEntries));
+            }
+            passes.add(new SlotAllocation());
+        }
+    }
+
+    List<IrPass> getPasses() {
+        return Collections.unmodifiableList(passes);
+    }
+
+    /**
+     * @param verify whether to verify the IR before the first pass and after every pass, to
+     *               catch the pass that breaks it.
+     */
+    void run(IrProgram program, PhaseTimings timings, OptimizationReport report, boolean verify) {
+        if (verify) {
+            new IrVerifier(program).verify("IR build");
+        }
+        for (IrPass pass : passes) {
+            long start = System.nanoTime();
+            pass.run(program, report);
+            timings.recordPass(pass.getName(), System.nanoTime() - start);
+            if (verify) {
+                new IrVerifier(program).verify(pass.getName());
+            }
+        }
+    }
+}
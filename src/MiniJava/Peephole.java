@@ -0,0 +1,338 @@
+package MiniJava;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+import java.util.*;
+
+/**
+ * Rewrites short sequences of the generated bytecode into shorter ones, after either code
+ * generator has run. Every class is read back into ASM's tree API, the enabled rules are applied
+ * to each method until none matches anymore, and the class is written again, with new frames.
+ *
+ * A rule only matches instructions that run one after the other: a label that some jump still
+ * targets ends a sequence, since the code after it is also reached from elsewhere. The report
+ * gives the instructions and bytes of code saved for every class that shrank.
+ */
+final class Peephole implements Opcodes {
+
+    enum Rule {
+        /**
+         * A goto to the instruction right after it is dropped.
+         */
+        GOTO_NEXT("goto-next"),
+        /**
+         * A conditional jump over a goto becomes the opposite jump to where the goto went.
+         */
+        JUMP_OVER_JUMP("jump-over-jump"),
+        /**
+         * A constant pushed only to be tested by ifeq or ifne, right away or after a goto, becomes a
+         * goto to wherever the test leads.
+         */
+        CONSTANT_TEST("constant-test"),
+        /**
+         * A store right before the only load of the same slot is dropped along with the load,
+         * leaving the value on the stack.
+         */
+        STORE_LOAD("store-load"),
+        /**
+         * A value that is pushed, by a load, a constant or dup, and popped right away is not pushed.
+         */
+        PUSH_POP("push-pop"),
+        /**
+         * Instructions after a goto, return or athrow that no jump leads to are dropped.
+         */
+        DEAD_CODE("dead-code");
+
+        private final String name;
+
+        Rule(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @param names the names of rules separated by commas, "all" or "none".
+         * @throws IllegalArgumentException if a name is not one of those.
+         */
+        static Set<Rule> parse(String names) {
+            if (names.equals("all")) {
+                return EnumSet.allOf(Rule.class);
+            }
+            Set<Rule> rules = EnumSet.noneOf(Rule.class);
+            if (names.equals("none")) {
+                return rules;
+            }
+            for (String name : names.split(",")) {
+                Rule match = null;
+                for (Rule rule : values()) {
+                    if (rule.name.equals(name)) {
+                        match = rule;
+                    }
+                }
+                if (match == null) {
+                    StringJoiner known = new StringJoiner(", ");
+                    for (Rule rule : values()) {
+                        known.add(rule.name);
+                    }
+                    throw new IllegalArgumentException("unknown peephole rule " + name + ", the rules are " + known);
+                }
+                rules.add(match);
+            }
+            return rules;
+        }
+    }
+
+    private final Set<Rule> rules;
+
+    Peephole(Set<Rule> rules) {
+        this.rules = EnumSet.copyOf(rules);
+    }
+
+    /**
+     * @param klasses the klasses of the compilation, for computing frames.
+     * @return the optimized classes, by class name, in the order of classes.
+     */
+    Map<String, byte[]> optimize(Map<String, byte[]> classes, Map<String, Klass> klasses, OptimizationReport report) {
+        Map<String, byte[]> optimized = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> klass : classes.entrySet()) {
+            ClassNode node = new ClassNode();
+            new ClassReader(klass.getValue()).accept(node, ClassReader.SKIP_FRAMES);
+            int instructionsBefore = 0;
+            int instructionsAfter = 0;
+            int bytesBefore = 0;
+            int bytesAfter = 0;
+            for (MethodNode method : node.methods) {
+                if (report.isEnabled()) {
+                    instructionsBefore += instructionCount(method);
+                    bytesBefore += codeSize(method);
+                }
+                optimize(method);
+                if (report.isEnabled()) {
+                    instructionsAfter += instructionCount(method);
+                    bytesAfter += codeSize(method);
+                }
+            }
+            ClassWriter writer = new KlassWriter(klasses);
+            node.accept(writer);
+            optimized.put(klass.getKey(), writer.toByteArray());
+            if (instructionsAfter < instructionsBefore || bytesAfter < bytesBefore) {
+                report.add("peephole", klass.getKey(), "saved " + (instructionsBefore - instructionsAfter) + " instructions ("
+                        + instructionsBefore + " -> " + instructionsAfter + "), " + (bytesBefore - bytesAfter) + " bytes ("
+                        + bytesBefore + " -> " + bytesAfter + ")");
+            }
+        }
+        return optimized;
+    }
+
+    private void optimize(MethodNode method) {
+        //Every rewrite may enable others, and changes which labels are jumped to
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Map<LabelNode, Integer> references = references(method);
+            for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null && !changed; insn = insn.getNext()) {
+                if (insn.getOpcode() >= 0) {
+                    changed = rewrite(method, insn, references);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the first enabled rule that matches the instructions starting at insn.
+     *
+     * @return true if a rule changed the code.
+     */
+    private boolean rewrite(MethodNode method, AbstractInsnNode insn, Map<LabelNode, Integer> references) {
+        InsnList instructions = method.instructions;
+        AbstractInsnNode next = next(insn, references);
+        int opcode = insn.getOpcode();
+
+        if (rules.contains(Rule.GOTO_NEXT) && opcode == GOTO && follow(((JumpInsnNode) insn).label) == follow(insn.getNext())) {
+            instructions.remove(insn);
+            return true;
+        }
+        if (rules.contains(Rule.JUMP_OVER_JUMP) && isConditionalJump(opcode) && next != null && next.getOpcode() == GOTO
+                && follow(((JumpInsnNode) insn).label) == follow(next.getNext())) {
+            JumpInsnNode jump = (JumpInsnNode) insn;
+            jump.setOpcode(opposite(opcode));
+            jump.label = ((JumpInsnNode) next).label;
+            instructions.remove(next);
+            return true;
+        }
+        Integer constant = intConstant(insn);
+        if (rules.contains(Rule.CONSTANT_TEST) && constant != null && next != null) {
+            if (isTest(next)) {
+                if (constant == 0 == (next.getOpcode() == IFEQ)) {
+                    instructions.set(insn, new JumpInsnNode(GOTO, ((JumpInsnNode) next).label));
+                } else {
+                    instructions.remove(insn);
+                }
+                instructions.remove(next);
+                return true;
+            }
+            AbstractInsnNode test = next.getOpcode() == GOTO ? follow(((JumpInsnNode) next).label) : null;
+            if (test != null && isTest(test)) {
+                LabelNode target;
+                if (constant == 0 == (test.getOpcode() == IFEQ)) {
+                    target = ((JumpInsnNode) test).label;
+                } else if (test.getNext() instanceof LabelNode) {
+                    target = (LabelNode) test.getNext();
+                } else {
+                    target = new LabelNode();
+                    instructions.insert(test, target);
+                }
+                instructions.remove(insn);
+                ((JumpInsnNode) next).label = target;
+                return true;
+            }
+        }
+        if (rules.contains(Rule.STORE_LOAD) && (opcode == ISTORE || opcode == ASTORE) && next != null
+                && next.getOpcode() == (opcode == ISTORE ? ILOAD : ALOAD) && ((VarInsnNode) next).var == ((VarInsnNode) insn).var
+                && readCount(method, ((VarInsnNode) insn).var) == 1) {
+            instructions.remove(insn);
+            instructions.remove(next);
+            return true;
+        }
+        if (rules.contains(Rule.PUSH_POP) && isPush(opcode) && next != null && next.getOpcode() == POP) {
+            instructions.remove(insn);
+            instructions.remove(next);
+            return true;
+        }
+        if (rules.contains(Rule.DEAD_CODE) && (opcode == GOTO || opcode >= IRETURN && opcode <= RETURN || opcode == ATHROW) && next != null) {
+            for (AbstractInsnNode dead = next; dead != null; dead = next(dead, references)) {
+                next = dead;
+            }
+            AbstractInsnNode end = next.getNext();
+            for (AbstractInsnNode dead = insn.getNext(); dead != end; ) {
+                AbstractInsnNode following = dead.getNext();
+                if (dead.getOpcode() >= 0) {
+                    instructions.remove(dead);
+                }
+                dead = following;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return how many jumps target each label.
+     */
+    private static Map<LabelNode, Integer> references(MethodNode method) {
+        Map<LabelNode, Integer> references = new HashMap<>();
+        for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn instanceof JumpInsnNode) {
+                references.merge(((JumpInsnNode) insn).label, 1, Integer::sum);
+            }
+        }
+        return references;
+    }
+
+    /**
+     * @return the instruction that runs right after insn and is reached from nowhere else, or
+     * null.
+     */
+    private static AbstractInsnNode next(AbstractInsnNode insn, Map<LabelNode, Integer> references) {
+        for (AbstractInsnNode next = insn.getNext(); next != null; next = next.getNext()) {
+            if (next instanceof LabelNode && references.containsKey(next)) {
+                return null;
+            } else if (next.getOpcode() >= 0) {
+                return next;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the first instruction at or after node.
+     */
+    private static AbstractInsnNode follow(AbstractInsnNode node) {
+        while (node != null && node.getOpcode() < 0) {
+            node = node.getNext();
+        }
+        return node;
+    }
+
+    private static boolean isConditionalJump(int opcode) {
+        return opcode >= IFEQ && opcode <= IF_ACMPNE || opcode == IFNULL || opcode == IFNONNULL;
+    }
+
+    /**
+     * @return the jump taken exactly when the conditional jump opcode is not.
+     */
+    private static int opposite(int opcode) {
+        if (opcode == IFNULL || opcode == IFNONNULL) {
+            return opcode ^ 1;
+        }
+        //IFEQ and IFNE, IFLT and IFGE, and so on are pairs, starting at the odd IFEQ
+        return (opcode - IFEQ ^ 1) + IFEQ;
+    }
+
+    private static boolean isTest(AbstractInsnNode insn) {
+        return insn.getOpcode() == IFEQ || insn.getOpcode() == IFNE;
+    }
+
+    private static Integer intConstant(AbstractInsnNode insn) {
+        int opcode = insn.getOpcode();
+        if (opcode >= ICONST_M1 && opcode <= ICONST_5) {
+            return opcode - ICONST_0;
+        } else if (opcode == BIPUSH || opcode == SIPUSH) {
+            return ((IntInsnNode) insn).operand;
+        }
+        return null;
+    }
+
+    private static boolean isPush(int opcode) {
+        return opcode == ILOAD || opcode == ALOAD || opcode >= ACONST_NULL && opcode <= ICONST_5
+                || opcode == BIPUSH || opcode == SIPUSH || opcode == LDC || opcode == DUP;
+    }
+
+    /**
+     * @return how many instructions of method read the slot var.
+     */
+    private static int readCount(MethodNode method, int var) {
+        int reads = 0;
+        for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if ((insn.getOpcode() == ILOAD || insn.getOpcode() == ALOAD) && ((VarInsnNode) insn).var == var
+                    || insn.getOpcode() == IINC && ((IincInsnNode) insn).var == var) {
+                reads++;
+            }
+        }
+        return reads;
+    }
+
+    private static int instructionCount(MethodNode method) {
+        int count = 0;
+        for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn.getOpcode() >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the length in bytes of the code of method as it is now.
+     */
+    private static int codeSize(MethodNode method) {
+        ClassWriter writer = new ClassWriter(0);
+        Label end = new Label();
+        method.accept(new MethodVisitor(ASM9, writer.visitMethod(method.access, method.name, method.desc, null, null)) {
+            @Override
+            public void visitMaxs(int maxStack, int maxLocals) {
+                super.visitLabel(end);
+                super.visitMaxs(maxStack, maxLocals);
+            }
+        });
+        return end.getOffset();
+    }
+}
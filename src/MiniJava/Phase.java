@@ -0,0 +1,27 @@
+package MiniJava;
+
+/**
+ * The phases of a compilation, in the order they run.
+ */
+public enum Phase {
+    LEX("lex"),
+    PARSE("parse"),
+    CLASS_NAMER("class namer"),
+    ASSIGNMENT_LISTENER("assignment listener"),
+    TYPE_CHECK("type check"),
+    INIT_BEFORE_USE("init before use"),
+    IR_BUILD("IR build"),
+    OPTIMIZE("optimize"),
+    CODEGEN("codegen"),
+    PEEPHOLE("peephole");
+
+    private final String label;
+
+    Phase(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,24 @@
+package MiniJava;
+
+import jdk.jfr.*;
+
+/**
+ * Flight Recorder event spanning one phase of the compilation of a file.
+ */
+@Name("MiniJava.Phase")
+@Label("Compiler Phase")
+@Category("MiniJava")
+@StackTrace(false)
+class PhaseEvent extends Event {
+    @Label("File")
+    String file;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Tokens")
+    int tokens;
+
+    @Label("Parse Tree Nodes")
+    int nodes;
+}
@@ -0,0 +1,49 @@
+package MiniJava;
+
+import java.util.*;
+
+/**
+ * Wall-clock time spent in each phase of one compilation, or of several added together.
+ * Phases that did not run, because an earlier one failed, count as zero. The time of the
+ * optimize phase is also broken down by optimization pass.
+ */
+public class PhaseTimings {
+    private final long[] nanos = new long[Phase.values().length];
+    private final Map<String, Long> passNanos = new LinkedHashMap<>();
+
+    void record(Phase phase, long elapsedNanos) {
+        nanos[phase.ordinal()] += elapsedNanos;
+    }
+
+    void recordPass(String pass, long elapsedNanos) {
+        passNanos.merge(pass, elapsedNanos, Long::sum);
+    }
+
+    public void add(PhaseTimings other) {
+        for (int i = 0; i < nanos.length; i++) {
+            nanos[i] += other.nanos[i];
+        }
+        for (Map.Entry<String, Long> pass : other.passNanos.entrySet()) {
+            recordPass(pass.getKey(), pass.getValue());
+        }
+    }
+
+    /**
+     * @return the time of every optimization pass that ran, in the order they first ran.
+     */
+    public Map<String, Long> getPassNanos() {
+        return Collections.unmodifiableMap(passNanos);
+    }
+
+    public long getNanos(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    public long getTotalNanos() {
+        long total = 0;
+        for (long phaseNanos : nanos) {
+            total += phaseNanos;
+        }
+        return total;
+    }
+}
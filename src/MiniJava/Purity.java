@@ -0,0 +1,123 @@
+package MiniJava;
+
+import java.util.*;
+
+/**
+ * Which methods of a program are pure: they write no fields and no array elements, print
+ * nothing, and only call pure methods. A call that is not bound to one method may run the method
+ * of that name in any class, so it is only pure if all of them are. The analysis starts out
+ * assuming that every method is pure and drops those that break a rule until none does, so
+ * methods that call each other stay pure if nothing else in them breaks a rule.
+ *
+ * A pure method may still read fields and arrays, which can change between calls. Memoization
+ * needs methods whose result depends on their arguments alone: they also read no fields or
+ * arrays, allocate nothing, and only make bound calls on this, of methods that depend on their
+ * arguments alone in turn.
+ */
+final class Purity {
+    private final Set<IrMethod> pure = new HashSet<>();
+    private final Set<IrMethod> argumentsOnly = new HashSet<>();
+
+    private Purity() {
+    }
+
+    static Purity analyze(IrProgram program) {
+        Purity purity = new Purity();
+        Map<String, List<IrMethod>> byName = new HashMap<>();
+        for (IrMethod method : program.getMethods()) {
+            byName.computeIfAbsent(method.getName(), name -> new ArrayList<>()).add(method);
+        }
+
+        purity.pure.addAll(program.getMethods());
+        while (purity.pure.removeIf(method -> !purity.isPure(program, method, byName))) {
+            //Every method that is dropped may make its callers impure
+        }
+        purity.argumentsOnly.addAll(purity.pure);
+        while (purity.argumentsOnly.removeIf(method -> !purity.dependsOnlyOnArguments(program, method))) {
+            //Likewise
+        }
+        return purity;
+    }
+
+    /**
+     * @return true if calls of method change nothing that the program can observe, other than
+     * by throwing or not returning.
+     */
+    boolean isPure(IrMethod method) {
+        return pure.contains(method);
+    }
+
+    /**
+     * @return true if method is pure and the value it returns only depends on its arguments.
+     */
+    boolean dependsOnlyOnArguments(IrMethod method) {
+        return argumentsOnly.contains(method);
+    }
+
+    private boolean isPure(IrProgram program, IrMethod method, Map<String, List<IrMethod>> byName) {
+        for (BasicBlock block : method.getBlocks()) {
+            for (IrStatement statement : block.getStatements()) {
+                if (statement.getKind() == IrStatement.Kind.PUT_FIELD || statement.getKind() == IrStatement.Kind.ARRAY_STORE
+                        || statement.getKind() == IrStatement.Kind.PRINT) {
+                    return false;
+                }
+                for (IrExpression operand : statement.getOperands()) {
+                    if (callsImpure(program, operand, byName)) {
+                        return false;
+                    }
+                }
+            }
+            if (block.getExitValue() != null && callsImpure(program, block.getExitValue(), byName)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean callsImpure(IrProgram program, IrExpression expression, Map<String, List<IrMethod>> byName) {
+        return expression.contains(e -> {
+            if (e.getKind() != IrExpression.Kind.CALL) {
+                return false;
+            }
+            if (e.isDirect()) {
+                return !pure.contains(program.getClass(e.getOwner()).getMethod(e.getName()));
+            }
+            return !pure.containsAll(byName.getOrDefault(e.getName(), Collections.emptyList()));
+        });
+    }
+
+    private boolean dependsOnlyOnArguments(IrProgram program, IrMethod method) {
+        for (BasicBlock block : method.getBlocks()) {
+            for (IrStatement statement : block.getStatements()) {
+                for (IrExpression operand : statement.getOperands()) {
+                    if (readsState(program, operand)) {
+                        return false;
+                    }
+                }
+            }
+            if (block.getExitValue() != null && readsState(program, block.getExitValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean readsState(IrProgram program, IrExpression expression) {
+        return expression.contains(e -> {
+            switch (e.getKind()) {
+                case GET_FIELD:
+                case ARRAY_LOAD:
+                case ARRAY_LENGTH:
+                case NEW_ARRAY:
+                case NEW_OBJECT:
+                case NULL_CHECK:
+                    return true;
+                case CALL:
+                    return !e.isDirect() || e.getOperand(0).getKind() != IrExpression.Kind.THIS
+                            || !argumentsOnly.contains(program.getClass(e.getOwner()).getMethod(e.getName()));
+                default:
+                    return false;
+            }
+        });
+    }
+}
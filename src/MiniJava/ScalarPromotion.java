@@ -0,0 +1,153 @@
+package MiniJava;
+
+import java.util.*;
+
+/**
+ * Keeps the fields of this that a loop writes in temporaries while the loop runs: the preheader
+ * loads each field once, the loop reads and assigns the temporary instead, and every edge that
+ * leaves the loop stores it back. Loop-invariant code motion already takes out the reads of
+ * fields that the loop does not write.
+ *
+ * A field can only be promoted if nothing in the loop observes it other than through this: no
+ * call may read or write a field of that name, as far as MethodEffects can tell, and the loop
+ * may not access a field of that name of another object, which might be this. Outer loops are
+ * done first, so a field is loaded and stored as far out as the calls allow.
+ *
+ * If the loop throws, the last values never reach the field. MiniJava cannot catch exceptions,
+ * so the program ends there and nobody can see the difference.
+ */
+class ScalarPromotion implements IrPass {
+
+    @Override
+    public String getName() {
+        return "scalar promotion";
+    }
+
+    @Override
+    public void run(IrProgram program, OptimizationReport report) {
+        MethodEffects effects = MethodEffects.analyze(program);
+        for (IrMethod method : program.getMethods()) {
+            if (method.isStatic()) {
+                continue;
+            }
+            //Outermost first. The blocks added for a loop lie outside of it and of the loops it
+            //contains, and only the loops around it, which are done, would need them
+            List<Loop> loops = Loop.find(method);
+            for (int i = loops.size() - 1; i >= 0; i--) {
+                promote(method, loops.get(i), loops, effects, report);
+            }
+        }
+    }
+
+    private void promote(IrMethod method, Loop loop, List<Loop> loops, MethodEffects effects, OptimizationReport report) {
+        //A field of this the loop writes, by name, and the names that cannot be promoted
+        Map<String, IrStatement> written = new LinkedHashMap<>();
+        Set<String> observed = new HashSet<>();
+        for (BasicBlock block : loop.getBlocks()) {
+            for (IrStatement statement : block.getStatements()) {
+                if (statement.getKind() == IrStatement.Kind.PUT_FIELD) {
+                    if (statement.getOperands().get(0).getKind() == IrExpression.Kind.THIS) {
+                        written.putIfAbsent(statement.getName(), statement);
+                    } else {
+                        observed.add(statement.getName());
+                    }
+                }
+                for (IrExpression operand : statement.getOperands()) {
+                    addObserved(operand, effects, observed);
+                }
+            }
+            if (block.getExitValue() != null) {
+                addObserved(block.getExitValue(), effects, observed);
+            }
+        }
+        written.keySet().removeAll(observed);
+        if (written.isEmpty()) {
+            return;
+        }
+
+        Map<String, IrLocal> temporaries = new HashMap<>();
+        BasicBlock preheader = loop.createPreheader(method, loops);
+        IrExpression self = IrExpression.thisReference(method.getOwner().getName());
+        for (IrStatement field : written.values()) {
+            IrLocal temporary = method.addTemporary(field.getFieldType());
+            temporaries.put(field.getName(), temporary);
+            preheader.getStatements().add(IrStatement.assign(temporary,
+                    IrExpression.getField(self.copy(), field.getOwner(), field.getName(), field.getFieldType())));
+            report.add(this, method, "promoted this." + field.getName() + " to " + temporary + " in the loop at " + loop.getHeader());
+        }
+
+        for (BasicBlock block : loop.getBlocks()) {
+            List<IrStatement> statements = block.getStatements();
+            for (int s = 0; s < statements.size(); s++) {
+                IrStatement statement = statements.get(s);
+                List<IrExpression> operands = statement.getOperands();
+                for (int i = 0; i < operands.size(); i++) {
+                    operands.set(i, rewrite(operands.get(i), temporaries));
+                }
+                if (statement.getKind() == IrStatement.Kind.PUT_FIELD && temporaries.containsKey(statement.getName())
+                        && operands.get(0).getKind() == IrExpression.Kind.THIS) {
+                    statements.set(s, IrStatement.assign(temporaries.get(statement.getName()), statement.getValue()));
+                }
+            }
+            if (block.getExitValue() != null) {
+                block.setExitValue(rewrite(block.getExitValue(), temporaries));
+            }
+        }
+
+        //Store the fields back on every edge out of the loop
+        for (BasicBlock block : new ArrayList<>(loop.getBlocks())) {
+            if (block.getExit() == BasicBlock.Exit.GOTO && !loop.contains(block.getTarget())) {
+                block.jumpTo(storeBack(method, block.getTarget(), written, temporaries, self));
+            } else if (block.getExit() == BasicBlock.Exit.BRANCH) {
+                BasicBlock target = block.getTarget();
+                BasicBlock elseTarget = block.getElseTarget();
+                if (!loop.contains(target)) {
+                    target = storeBack(method, target, written, temporaries, self);
+                }
+                if (!loop.contains(elseTarget)) {
+                    elseTarget = elseTarget == block.getTarget() ? target : storeBack(method, elseTarget, written, temporaries, self);
+                }
+                block.branch(block.getExitValue(), target, elseTarget);
+            }
+        }
+    }
+
+    private static void addObserved(IrExpression expression, MethodEffects effects, Set<String> observed) {
+        expression.forEach(e -> {
+            if (e.getKind() == IrExpression.Kind.CALL) {
+                observed.addAll(effects.getFieldsRead(e.getName()));
+                observed.addAll(effects.getFieldsWritten(e.getName()));
+            } else if (e.getKind() == IrExpression.Kind.GET_FIELD && e.getOperand(0).getKind() != IrExpression.Kind.THIS) {
+                observed.add(e.getName());
+            }
+        });
+    }
+
+    /**
+     * @return a new block, laid out right before exit, that stores the temporaries back into
+     * their fields and jumps to exit.
+     */
+    private static BasicBlock storeBack(IrMethod method, BasicBlock exit, Map<String, IrStatement> written,
+                                        Map<String, IrLocal> temporaries, IrExpression self) {
+        BasicBlock block = method.newBlock();
+        for (IrStatement field : written.values()) {
+            block.getStatements().add(IrStatement.putField(self.copy(), field.getOwner(), field.getName(), field.getFieldType(),
+                    IrExpression.local(temporaries.get(field.getName()))));
+        }
+        block.jumpTo(exit);
+        method.getBlocks().add(method.getBlocks().indexOf(exit), block);
+        return block;
+    }
+
+    private static IrExpression rewrite(IrExpression expression, Map<String, IrLocal> temporaries) {
+        if (expression.getKind() == IrExpression.Kind.GET_FIELD && expression.getOperand(0).getKind() == IrExpression.Kind.THIS
+                && temporaries.containsKey(expression.getName())) {
+            return IrExpression.local(temporaries.get(expression.getName()));
+        }
+        List<IrExpression> operands = expression.getOperands();
+        for (int i = 0; i < operands.size(); i++) {
+            operands.set(i, rewrite(operands.get(i), temporaries));
+        }
+        return expression;
+    }
+}
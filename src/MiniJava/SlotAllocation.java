@@ -0,0 +1,154 @@
+package MiniJava;
+
+import java.util.*;
+
+/**
+ * Packs the locals of every method into fewer JVM local variable slots. The code generator gives
+ * each local a slot of its own, so this pass renames a local to an earlier local or parameter of
+ * the same type whenever their live ranges do not overlap, and drops the locals nothing uses.
+ * Assignments of a local to itself that the renaming creates are dropped too.
+ *
+ * Two locals overlap when one is assigned while the other is live; the parameters overlap each
+ * other, since they all hold their arguments on entry. Locals are renamed first fit, in
+ * declaration order, which puts the temporaries of the other passes into the slots of locals
+ * that are dead by then. This runs last, because the other passes only add temporaries.
+ *
+ * The report gives max_locals before and after for every method, this and the parameters
+ * included.
+ */
+class SlotAllocation implements IrPass {
+
+    @Override
+    public String getName() {
+        return "slot allocation";
+    }
+
+    @Override
+    public void run(IrProgram program, OptimizationReport report) {
+        for (IrMethod method : program.getMethods()) {
+            int before = report.isEnabled() ? IrCodeGenerator.maxLocals(method) : 0;
+            allocate(method);
+            if (report.isEnabled()) {
+                report.add(this, method, "max_locals " + before + " -> " + IrCodeGenerator.maxLocals(method));
+            }
+        }
+    }
+
+    private static void allocate(IrMethod method) {
+        Map<IrLocal, Set<IrLocal>> interference = interference(method);
+        Set<IrLocal> used = new HashSet<>();
+        for (BasicBlock block : method.getBlocks()) {
+            for (IrStatement statement : block.getStatements()) {
+                if (statement.getKind() == IrStatement.Kind.ASSIGN) {
+                    used.add(statement.getTarget());
+                }
+                for (IrExpression operand : statement.getOperands()) {
+                    Liveness.addReads(operand, used);
+                }
+            }
+            if (block.getExitValue() != null) {
+                Liveness.addReads(block.getExitValue(), used);
+            }
+        }
+
+        List<IrLocal> slots = new ArrayList<>(method.getParameters());
+        Map<IrLocal, IrLocal> renamed = new HashMap<>();
+        for (IrLocal local : method.getLocals()) {
+            if (!used.contains(local)) {
+                continue;
+            }
+            IrLocal slot = null;
+            for (IrLocal candidate : slots) {
+                if (candidate.getType().equals(local.getType()) && !interference.get(candidate).contains(local)) {
+                    slot = candidate;
+                    break;
+                }
+            }
+            if (slot == null) {
+                slots.add(local);
+                continue;
+            }
+            renamed.put(local, slot);
+            for (IrLocal neighbour : interference.get(local)) {
+                interference.get(slot).add(neighbour);
+                interference.get(neighbour).add(slot);
+            }
+        }
+
+        method.getLocals().retainAll(slots);
+        if (renamed.isEmpty()) {
+            return;
+        }
+        for (BasicBlock block : method.getBlocks()) {
+            List<IrStatement> statements = block.getStatements();
+            for (int s = 0; s < statements.size(); s++) {
+                IrStatement statement = statements.get(s);
+                List<IrExpression> operands = statement.getOperands();
+                for (int i = 0; i < operands.size(); i++) {
+                    operands.set(i, rename(operands.get(i), renamed));
+                }
+                if (statement.getKind() == IrStatement.Kind.ASSIGN && renamed.containsKey(statement.getTarget())) {
+                    statements.set(s, IrStatement.assign(renamed.get(statement.getTarget()), statement.getValue()));
+                }
+            }
+            statements.removeIf(statement -> statement.getKind() == IrStatement.Kind.ASSIGN
+                    && statement.getValue().getKind() == IrExpression.Kind.LOCAL && statement.getValue().getLocal() == statement.getTarget());
+            if (block.getExitValue() != null) {
+                block.setExitValue(rename(block.getExitValue(), renamed));
+            }
+        }
+    }
+
+    /**
+     * @return for every parameter and local, the others whose live ranges overlap its own.
+     */
+    private static Map<IrLocal, Set<IrLocal>> interference(IrMethod method) {
+        Map<IrLocal, Set<IrLocal>> interference = new HashMap<>();
+        for (IrLocal parameter : method.getParameters()) {
+            interference.put(parameter, new HashSet<>());
+        }
+        for (IrLocal local : method.getLocals()) {
+            interference.put(local, new HashSet<>());
+        }
+
+        Liveness liveness = Liveness.analyze(method);
+        Set<IrLocal> defined = new HashSet<>(method.getParameters());
+        defined.addAll(liveness.getLiveIn(method.getEntry()));
+        for (IrLocal local : defined) {
+            for (IrLocal other : defined) {
+                if (local != other) {
+                    interference.get(local).add(other);
+                }
+            }
+        }
+        for (BasicBlock block : method.getBlocks()) {
+            Set<IrLocal> live = liveness.liveOut(block);
+            for (int s = block.getStatements().size() - 1; s >= 0; s--) {
+                IrStatement statement = block.getStatements().get(s);
+                if (statement.getKind() == IrStatement.Kind.ASSIGN) {
+                    IrLocal target = statement.getTarget();
+                    for (IrLocal other : live) {
+                        if (other != target) {
+                            interference.get(target).add(other);
+                            interference.get(other).add(target);
+                        }
+                    }
+                }
+                Liveness.transfer(statement, live);
+            }
+        }
+        return interference;
+    }
+
+    private static IrExpression rename(IrExpression expression, Map<IrLocal, IrLocal> renamed) {
+        if (expression.getKind() == IrExpression.Kind.LOCAL) {
+            IrLocal local = renamed.get(expression.getLocal());
+            return local != null ? IrExpression.local(local) : expression;
+        }
+        List<IrExpression> operands = expression.getOperands();
+        for (int i = 0; i < operands.size(); i++) {
+            operands.set(i, rename(operands.get(i), renamed));
+        }
+        return expression;
+    }
+}
@@ -0,0 +1,204 @@
+package MiniJava;
+
+import java.util.*;
+
+/**
+ * Turns calls of a method on this from its own tail position into a jump back to its start, so
+ * that deep recursion runs in one frame. A call is in tail position when its value is returned,
+ * either directly or, as MiniJava only returns at the end of a method, by assigning it to the
+ * local that the return reads and jumping there. The call assigns the arguments to the parameters
+ * instead, through temporaries where a later argument still reads an earlier parameter.
+ *
+ * A call whose value is added to or multiplied by another value before it is returned, as in
+ * {@code num * this.ComputeFac(num - 1)}, is turned into a jump too: the other operand goes into
+ * an accumulator, a product starting at 1 or a sum starting at 0, and every remaining return
+ * applies the accumulator to its value. This needs the same operator at every recursive tail
+ * call, and relies on int arithmetic being associative and commutative even when it overflows.
+ *
+ * Only calls that Devirtualization bound to the method itself are turned into jumps, because an
+ * overriding method might run instead otherwise.
+ */
+class TailRecursionElimination implements IrPass {
+
+    @Override
+    public String getName() {
+        return "tail recursion elimination";
+    }
+
+    @Override
+    public void run(IrProgram program, OptimizationReport report) {
+        MethodEffects effects = MethodEffects.analyze(program);
+        for (IrMethod method : program.getMethods()) {
+            if (!method.isStatic()) {
+                eliminate(program, effects, method, report);
+            }
+        }
+    }
+
+    /**
+     * A call in tail position: the value the block returns, or that its last statement assigns
+     * for the return to read.
+     */
+    private static final class TailCall {
+        final BasicBlock block;
+        final IrExpression call;
+        //The other operand of the ADD or MUL around the call, or null
+        final IrExpression.Kind operator;
+        final IrExpression operand;
+
+        TailCall(BasicBlock block, IrExpression call, IrExpression.Kind operator, IrExpression operand) {
+            this.block = block;
+            this.call = call;
+            this.operator = operator;
+            this.operand = operand;
+        }
+    }
+
+    private void eliminate(IrProgram program, MethodEffects effects, IrMethod method, OptimizationReport report) {
+        List<TailCall> tailCalls = new ArrayList<>();
+        IrExpression.Kind operator = null;
+        for (BasicBlock block : method.getBlocks()) {
+            TailCall tailCall = tailCall(program, effects, method, block);
+            if (tailCall == null) {
+                continue;
+            }
+            if (tailCall.operator != null) {
+                if (operator != null && operator != tailCall.operator) {
+                    return;
+                }
+                operator = tailCall.operator;
+            }
+            tailCalls.add(tailCall);
+        }
+        if (tailCalls.isEmpty()) {
+            return;
+        }
+
+        //A new entry, so that the old one can be jumped back to
+        BasicBlock start = method.getEntry();
+        BasicBlock entry = method.newBlock();
+        entry.jumpTo(start);
+        method.getBlocks().add(0, entry);
+        IrLocal accumulator = null;
+        if (operator != null) {
+            accumulator = method.addTemporary(method.getReturnType());
+            entry.getStatements().add(IrStatement.assign(accumulator, IrExpression.constant(operator == IrExpression.Kind.MUL ? 1 : 0)));
+        }
+
+        for (TailCall tailCall : tailCalls) {
+            BasicBlock block = tailCall.block;
+            if (block.getExit() != BasicBlock.Exit.RETURN) {
+                block.getStatements().remove(block.getStatements().size() - 1);
+            }
+            if (tailCall.operator != null) {
+                block.getStatements().add(IrStatement.assign(accumulator,
+                        IrExpression.binary(operator, IrExpression.local(accumulator), tailCall.operand)));
+            }
+            assignParameters(method, block, tailCall.call);
+            block.jumpTo(start);
+            report.add(this, method, "turned the tail call in " + block + " into a jump"
+                    + (tailCall.operator != null ? ", accumulating with " + symbol(operator) : ""));
+        }
+
+        if (accumulator != null) {
+            for (BasicBlock block : method.getBlocks()) {
+                if (block.getExit() == BasicBlock.Exit.RETURN) {
+                    block.setExitValue(IrExpression.binary(operator, IrExpression.local(accumulator), block.getExitValue()));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the call of method on this in tail position at the end of block, or null.
+     */
+    private static TailCall tailCall(IrProgram program, MethodEffects effects, IrMethod method, BasicBlock block) {
+        IrExpression value;
+        if (block.getExit() == BasicBlock.Exit.RETURN) {
+            value = block.getExitValue();
+        } else {
+            List<IrStatement> statements = block.getStatements();
+            if (statements.isEmpty() || block.getExit() != BasicBlock.Exit.GOTO) {
+                return null;
+            }
+            IrStatement last = statements.get(statements.size() - 1);
+            BasicBlock next = block.getTarget();
+            Set<BasicBlock> visited = new HashSet<>();
+            while (next.getStatements().isEmpty() && next.getExit() == BasicBlock.Exit.GOTO && visited.add(next)) {
+                next = next.getTarget();
+            }
+            if (last.getKind() != IrStatement.Kind.ASSIGN || !next.getStatements().isEmpty() || next.getExit() != BasicBlock.Exit.RETURN
+                    || next.getExitValue().getKind() != IrExpression.Kind.LOCAL || next.getExitValue().getLocal() != last.getTarget()) {
+                return null;
+            }
+            value = last.getValue();
+        }
+
+        if (isSelfCall(program, method, value)) {
+            return new TailCall(block, value, null, null);
+        }
+        if (value.getKind() == IrExpression.Kind.ADD || value.getKind() == IrExpression.Kind.MUL) {
+            IrExpression left = value.getOperand(0);
+            IrExpression right = value.getOperand(1);
+            if (isSelfCall(program, method, right) && !containsSelfCall(program, method, left)) {
+                return new TailCall(block, right, value.getKind(), left);
+            }
+            //The other operand moves before the call, so the call must not change what it reads
+            if (isSelfCall(program, method, left) && right.isPure() && !containsSelfCall(program, method, right)
+                    && !readsFieldWrittenBy(right, effects.getFieldsWritten(method.getName()))) {
+                return new TailCall(block, left, value.getKind(), right);
+            }
+        }
+        return null;
+    }
+
+    private static boolean readsFieldWrittenBy(IrExpression expression, Set<String> written) {
+        return expression.contains(e -> e.getKind() == IrExpression.Kind.GET_FIELD && written.contains(e.getName()));
+    }
+
+    private static boolean isSelfCall(IrProgram program, IrMethod method, IrExpression expression) {
+        return expression.getKind() == IrExpression.Kind.CALL && expression.isDirect()
+                && expression.getOperand(0).getKind() == IrExpression.Kind.THIS
+                && program.getClass(expression.getOwner()).getMethod(expression.getName()) == method;
+    }
+
+    private static boolean containsSelfCall(IrProgram program, IrMethod method, IrExpression expression) {
+        return expression.contains(e -> isSelfCall(program, method, e));
+    }
+
+    /**
+     * Evaluates the arguments of call in order and assigns them to the parameters at the end of
+     * block. An argument goes through a temporary if a later argument reads its parameter.
+     *
+     * The parameters still hold their arguments on entry, so the reads before these assignments
+     * do not see them: the passes that follow must not treat an assigned parameter like a local
+     * whose reads all come after its assignments.
+     */
+    private static void assignParameters(IrMethod method, BasicBlock block, IrExpression call) {
+        List<IrLocal> parameters = method.getParameters();
+        List<IrStatement> delayed = new ArrayList<>();
+        for (int i = 0; i < parameters.size(); i++) {
+            IrLocal parameter = parameters.get(i);
+            IrExpression argument = call.getOperand(i + 1);
+            if (argument.getKind() == IrExpression.Kind.LOCAL && argument.getLocal() == parameter) {
+                continue;
+            }
+            boolean readLater = false;
+            for (int j = i + 1; j < parameters.size(); j++) {
+                readLater |= call.getOperand(j + 1).contains(e -> e.getKind() == IrExpression.Kind.LOCAL && e.getLocal() == parameter);
+            }
+            if (readLater) {
+                IrLocal temporary = method.addTemporary(parameter.getType());
+                block.getStatements().add(IrStatement.assign(temporary, argument));
+                delayed.add(IrStatement.assign(parameter, IrExpression.local(temporary)));
+            } else {
+                block.getStatements().add(IrStatement.assign(parameter, argument));
+            }
+        }
+        block.getStatements().addAll(delayed);
+    }
+
+    private static String symbol(IrExpression.Kind operator) {
+        return operator == IrExpression.Kind.MUL ? "*" : "+";
+    }
+}
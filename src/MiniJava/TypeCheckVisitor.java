@@ -17,15 +17,17 @@ class TypeCheckVisitor extends MiniJavaBaseVisitor<Klass> {
     private Klass INT;
     private Klass INTARRAY;
     private Klass BOOLEAN;
+    private final ErrorStrategy errors;
 
-    TypeCheckVisitor(final Map<String, Klass> klasses, ParseTreeProperty<Scope> scopes, ParseTreeProperty<Klass> callerTypes, MiniJavaParser parser) {
+    TypeCheckVisitor(CompilationContext context) {
+        this.klasses = context.getKlasses();
         INT = klasses.get("int");
         INTARRAY = klasses.get("int[]");
         BOOLEAN = klasses.get("boolean");
-        this.klasses = klasses;
-        this.scopes = scopes;
-        this.callerTypes = callerTypes;
-        this.parser = parser;
+        this.scopes = context.getScopes();
+        this.callerTypes = context.getCallerTypes();
+        this.parser = context.getParser();
+        this.errors = context.getErrors();
     }
 
     @Override
@@ -52,7 +54,7 @@ class TypeCheckVisitor extends MiniJavaBaseVisitor<Klass> {
         Method currentMethod = (Method) currentScope;
         Klass currentKlass = (Klass) currentMethod.getEnclosingScope();
         if (originalMethod != null && originalMethod.getType() != currentMethod.getType()) {
-            ErrorStrategy.reportIncompatibleReturnTypeError(parser, ctx.Identifier().getSymbol(), originalKlass, currentKlass, originalMethod, currentMethod);
+            errors.reportIncompatibleReturnTypeError(parser, ctx.Identifier().getSymbol(), originalKlass, currentKlass, originalMethod, currentMethod);
         }
         Klass result = visitChildren(ctx);
         currentScope = currentScope.getEnclosingScope();
@@ -70,7 +72,7 @@ class TypeCheckVisitor extends MiniJavaBaseVisitor<Klass> {
         Klass formalReturnType = Scope.getEnclosingMethod(currentScope).getType();
         Klass actualReturnType = visit(ctx.expression());
         if (actualReturnType != null && !actualReturnType.isInstanceOf(formalReturnType)) {
-            ErrorStrategy.reportRequiredFoundError(
+            errors.reportRequiredFoundError(
                     "error: incompatible types.", parser, ctx.RETURN().getSymbol(), formalReturnType.toString(), actualReturnType.toString());
         }
         return null;
@@ -82,7 +84,7 @@ class TypeCheckVisitor extends MiniJavaBaseVisitor<Klass> {
             String name = ctx.Identifier().getSymbol().getText();
             Klass var = klasses.get(name);
             if (var == null) {
-                ErrorStrategy.reportUnresolvedSymbolError(parser, ctx.Identifier().getSymbol(), "class", Scope.getEnclosingKlass(currentScope));
+                errors.reportUnresolvedSymbolError(parser, ctx.Identifier().getSymbol(), "class", Scope.getEnclosingKlass(currentScope));
             }
             return var;
         }
@@ -95,7 +97,7 @@ class TypeCheckVisitor extends MiniJavaBaseVisitor<Klass> {
         visit(ctx.ifBlock());
         visit(ctx.elseBlock());
         if (booleanExpression != BOOLEAN) {
-            ErrorStrategy.reportRequiredFoundError(
+            errors.reportRequiredFoundError(
                     "error: incompatible types.", parser, ctx.LP().getSymbol(), BOOLEAN.toString(), booleanExpression.toString());
         }
         return null;
@@ -106,7 +108,7 @@ class TypeCheckVisitor extends MiniJavaBaseVisitor<Klass> {
         Klass booleanExpression = visit(ctx.expression());
         visit(ctx.whileBlock());
         if (booleanExpression != BOOLEAN) {
-            ErrorStrategy.reportRequiredFoundError(
+            errors.reportRequiredFoundError(
                     "error: incompatible types.", parser, ctx.LP().getSymbol(), BOOLEAN.toString(), booleanExpression.toString());
         }
         return null;
@@ -116,7 +118,7 @@ class TypeCheckVisitor extends MiniJavaBaseVisitor<Klass> {
     public Klass visitPrintStatement(MiniJavaParser.PrintStatementContext ctx) {
         Klass printContents = visit(ctx.expression());
         if (printContents != null && printContents != INT) {
-            ErrorStrategy.reportRequiredFoundError(
+            errors.reportRequiredFoundError(
                     "error: incompatible types.", parser, ctx.LP().getSymbol(), INT.toString(), printContents.toString());
         }
         return null;
@@ -128,9 +130,9 @@ class TypeCheckVisitor extends MiniJavaBaseVisitor<Klass> {
         Symbol variable = currentScope.lookup(name);
         Klass rightSide = visit(ctx.expression());
         if (variable == null) {
-            ErrorStrategy.reportUnresolvedSymbolError(parser, ctx.Identifier().getSymbol(), "variable", Scope.getEnclosingKlass(currentScope));
+            errors.reportUnresolvedSymbolError(parser, ctx.Identifier().getSymbol(), "variable", Scope.getEnclosingKlass(currentScope));
         } else if (rightSide != null && !rightSide.isInstanceOf(variable.getType())) {
-            ErrorStrategy.reportRequiredFoundError("error: incompatible types.", parser, ctx.Identifier().getSymbol(), variable.getType().toString(), (rightSide.toString()));
+            errors.reportRequiredFoundError("error: incompatible types.", parser, ctx.Identifier().getSymbol(), variable.getType().toString(), (rightSide.toString()));
         }
         return null;
     }
@@ -142,50 +144,50 @@ class TypeCheckVisitor extends MiniJavaBaseVisitor<Klass> {
         Klass index = visit(ctx.expression(0));
         Klass rightSide = visit(ctx.expression(1));
         if (variable == null) {
-            ErrorStrategy.reportUnresolvedSymbolError(parser, ctx.Identifier().getSymbol(), "variable", Scope.getEnclosingKlass(currentScope));
+            errors.reportUnresolvedSymbolError(parser, ctx.Identifier().getSymbol(), "variable", Scope.getEnclosingKlass(currentScope));
         } else if (variable.getType() != INTARRAY) {
-            ErrorStrategy.reportRequiredFoundError("error: incompatible types.", parser, ctx.LSB().getSymbol(), INTARRAY.toString(), (variable.getType().toString()));
+            errors.reportRequiredFoundError("error: incompatible types.", parser, ctx.LSB().getSymbol(), INTARRAY.toString(), (variable.getType().toString()));
         } else if (rightSide != null && INT != rightSide) {
-            ErrorStrategy.reportRequiredFoundError("error: incompatible types.", parser, ctx.EQ().getSymbol(), INT.toString(), (rightSide.toString()));
+            errors.reportRequiredFoundError("error: incompatible types.", parser, ctx.EQ().getSymbol(), INT.toString(), (rightSide.toString()));
         } else if (index != INT) {
-            ErrorStrategy.reportRequiredFoundError("error: incompatible types.", parser, ctx.LSB().getSymbol(), INT.toString(), index.toString());
+            errors.reportRequiredFoundError("error: incompatible types.", parser, ctx.LSB().getSymbol(), INT.toString(), index.toString());
         }
         return null;
     }
 
     @Override
     public Klass visitAndExpression(MiniJavaParser.AndExpressionContext ctx) {
-        ErrorStrategy.reportBinaryOperatorTypeError(parser, ctx, ctx.AND().getSymbol(), visit(ctx.expression(0)), visit(ctx.expression(1)), BOOLEAN, BOOLEAN);
+        errors.reportBinaryOperatorTypeError(parser, ctx, ctx.AND().getSymbol(), visit(ctx.expression(0)), visit(ctx.expression(1)), BOOLEAN, BOOLEAN);
         return BOOLEAN;
     }
 
     @Override
     public Klass visitLtExpression(MiniJavaParser.LtExpressionContext ctx) {
-        ErrorStrategy.reportBinaryOperatorTypeError(parser, ctx, ctx.LT().getSymbol(), visit(ctx.expression(0)), visit(ctx.expression(1)), INT, INT);
+        errors.reportBinaryOperatorTypeError(parser, ctx, ctx.LT().getSymbol(), visit(ctx.expression(0)), visit(ctx.expression(1)), INT, INT);
         return BOOLEAN;
     }
 
     @Override
     public Klass visitAddExpression(MiniJavaParser.AddExpressionContext ctx) {
-        ErrorStrategy.reportBinaryOperatorTypeError(parser, ctx, ctx.PLUS().getSymbol(), visit(ctx.expression(0)), visit(ctx.expression(1)), INT, INT);
+        errors.reportBinaryOperatorTypeError(parser, ctx, ctx.PLUS().getSymbol(), visit(ctx.expression(0)), visit(ctx.expression(1)), INT, INT);
         return INT;
     }
 
     @Override
     public Klass visitSubExpression(MiniJavaParser.SubExpressionContext ctx) {
-        ErrorStrategy.reportBinaryOperatorTypeError(parser, ctx, ctx.MINUS().getSymbol(), visit(ctx.expression(0)), visit(ctx.expression(1)), INT, INT);
+        errors.reportBinaryOperatorTypeError(parser, ctx, ctx.MINUS().getSymbol(), visit(ctx.expression(0)), visit(ctx.expression(1)), INT, INT);
         return INT;
     }
 
     @Override
     public Klass visitMulExpression(MiniJavaParser.MulExpressionContext ctx) {
-        ErrorStrategy.reportBinaryOperatorTypeError(parser, ctx, ctx.TIMES().getSymbol(), visit(ctx.expression(0)), visit(ctx.expression(1)), INT, INT);
+        errors.reportBinaryOperatorTypeError(parser, ctx, ctx.TIMES().getSymbol(), visit(ctx.expression(0)), visit(ctx.expression(1)), INT, INT);
         return INT;
     }
 
     @Override
     public Klass visitPowExpression(MiniJavaParser.PowExpressionContext ctx) {
-        ErrorStrategy.reportBinaryOperatorTypeError(parser, ctx, ctx.POWER().getSymbol(), visit(ctx.expression(0)), visit(ctx.expression(1)), INT, INT);
+        errors.reportBinaryOperatorTypeError(parser, ctx, ctx.POWER().getSymbol(), visit(ctx.expression(0)), visit(ctx.expression(1)), INT, INT);
         return INT;
     }
 
@@ -194,12 +196,12 @@ class TypeCheckVisitor extends MiniJavaBaseVisitor<Klass> {
         Klass array = visit(ctx.expression(0));
         Klass index = visit(ctx.expression(1));
         if (array != INTARRAY) {
-            ErrorStrategy.reportFileNameAndLineNumber(ctx.LSB().getSymbol());
-            System.err.println("error: array required, but " + array + " found");
-            ErrorStrategy.reportUnderlineError(parser, ctx.LSB().getSymbol());
+            errors.reportFileNameAndLineNumber(ctx.LSB().getSymbol());
+            errors.err().println("error: array required, but " + array + " found");
+            errors.reportUnderlineError(parser, ctx.LSB().getSymbol());
         }
         if (index != INT) {
-            ErrorStrategy.reportRequiredFoundError("error: incompatible type.", parser, ctx.LSB().getSymbol(), INT.toString(), index.toString());
+            errors.reportRequiredFoundError("error: incompatible type.", parser, ctx.LSB().getSymbol(), INT.toString(), index.toString());
         }
         return INT;
     }
@@ -208,9 +210,9 @@ class TypeCheckVisitor extends MiniJavaBaseVisitor<Klass> {
     public Klass visitArrayLengthExpression(MiniJavaParser.ArrayLengthExpressionContext ctx) {
         Klass intArray = visit(ctx.expression());
         if (intArray != INTARRAY) {
-            ErrorStrategy.reportFileNameAndLineNumber(ctx.DOTLENGTH().getSymbol());
-            System.err.println("error: bad operand type " + intArray + " for unary operator '.length'");
-            ErrorStrategy.reportUnderlineError(parser, ctx.DOTLENGTH().getSymbol());
+            errors.reportFileNameAndLineNumber(ctx.DOTLENGTH().getSymbol());
+            errors.err().println("error: bad operand type " + intArray + " for unary operator '.length'");
+            errors.reportUnderlineError(parser, ctx.DOTLENGTH().getSymbol());
         }
         return INT;
     }
@@ -225,21 +227,21 @@ class TypeCheckVisitor extends MiniJavaBaseVisitor<Klass> {
         String methodName = ctx.Identifier().getText() + "()";
         Method method = (Method) (type.lookup(methodName));
         if (method == null) {
-            ErrorStrategy.reportUnresolvedSymbolError(parser, ctx.Identifier().getSymbol(), "method", type);
+            errors.reportUnresolvedSymbolError(parser, ctx.Identifier().getSymbol(), "method", type);
             return null;
         } else {
             List<Klass> parameterList = ctx.expression().subList(1, ctx.expression().size()).stream().map(this::visit).collect(Collectors.toList());
             List<Klass> parameterListDefinition = method.getParameterListDefinition();
             if (parameterListDefinition.size() != parameterList.size()) {
-                ErrorStrategy.reportRequiredFoundError(
+                errors.reportRequiredFoundError(
                         "error: method call parameters of method " + method.getName() + " do not match method definition.",
                         parser, ctx.Identifier().getSymbol(), parameterListDefinition.toString(), parameterList.toString());
-                System.err.println("reason: actual and formal argument lists differ in length.");
+                errors.err().println("reason: actual and formal argument lists differ in length.");
                 return method.getType();
             }
             for (int i = 0; i < parameterListDefinition.size(); i++) {
                 if (!parameterList.get(i).isInstanceOf(parameterListDefinition.get(i))) {
-                    ErrorStrategy.reportRequiredFoundError(
+                    errors.reportRequiredFoundError(
                             "error: method call parameters of method " + method.getName() + " do not match method definition.",
                             parser, ctx.Identifier().getSymbol(), parameterListDefinition.toString(), parameterList.toString());
                 }
@@ -265,7 +267,7 @@ class TypeCheckVisitor extends MiniJavaBaseVisitor<Klass> {
         String name = ctx.Identifier().getSymbol().getText();
         Symbol var = currentScope.lookup(name);
         if (var == null) {
-            ErrorStrategy.reportUnresolvedSymbolError(parser, ctx.Identifier().getSymbol(), "variable", Scope.getEnclosingKlass(currentScope));
+            errors.reportUnresolvedSymbolError(parser, ctx.Identifier().getSymbol(), "variable", Scope.getEnclosingKlass(currentScope));
             return null;
         }
         return var.getType();
@@ -281,7 +283,7 @@ class TypeCheckVisitor extends MiniJavaBaseVisitor<Klass> {
     public Klass visitArrayInstantiationExpression(MiniJavaParser.ArrayInstantiationExpressionContext ctx) {
         Klass type = visit(ctx.expression());
         if (type != INT) {
-            ErrorStrategy.reportRequiredFoundError("error: incompatible types.", parser, ctx.LSB().getSymbol(), INT.toString(), type.toString());
+            errors.reportRequiredFoundError("error: incompatible types.", parser, ctx.LSB().getSymbol(), INT.toString(), type.toString());
         }
         return INTARRAY;
     }
@@ -290,7 +292,7 @@ class TypeCheckVisitor extends MiniJavaBaseVisitor<Klass> {
     public Klass visitObjectInstantiationExpression(MiniJavaParser.ObjectInstantiationExpressionContext ctx) {
         Klass type = klasses.get(ctx.Identifier().getText());
         if (type == null) {
-            ErrorStrategy.reportUnresolvedSymbolError(parser, ctx.Identifier().getSymbol(), "class", Scope.getEnclosingKlass(currentScope));
+            errors.reportUnresolvedSymbolError(parser, ctx.Identifier().getSymbol(), "class", Scope.getEnclosingKlass(currentScope));
         }
         return type;
     }
@@ -299,9 +301,9 @@ class TypeCheckVisitor extends MiniJavaBaseVisitor<Klass> {
     public Klass visitNotExpression(MiniJavaParser.NotExpressionContext ctx) {
         Klass bool = visit(ctx.expression());
         if (bool != BOOLEAN) {
-            ErrorStrategy.reportFileNameAndLineNumber(ctx.NOT().getSymbol());
-            System.err.println("error: bad operand type " + bool + " for unary operator '!'");
-            ErrorStrategy.reportUnderlineError(parser, ctx.NOT().getSymbol());
+            errors.reportFileNameAndLineNumber(ctx.NOT().getSymbol());
+            errors.err().println("error: bad operand type " + bool + " for unary operator '!'");
+            errors.reportUnderlineError(parser, ctx.NOT().getSymbol());
         }
         return BOOLEAN;
     }
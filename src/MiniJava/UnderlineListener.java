@@ -3,12 +3,21 @@ package MiniJava;
 import org.antlr.v4.runtime.*;
 
 public class UnderlineListener extends BaseErrorListener {
+    private final ErrorStrategy errors;
+
+    public UnderlineListener(ErrorStrategy errors) {
+        this.errors = errors;
+    }
 
     @Override
     public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
-        ErrorStrategy.reportFileNameAndLineNumber((Token) offendingSymbol);
-        System.err.println("line " + line + ":" + charPositionInLine + " " + msg);
-        ErrorStrategy.reportUnderlineError(recognizer, (Token) offendingSymbol
+        if (!(offendingSymbol instanceof Token)) {
+            errors.reportLexerWarning(line, charPositionInLine, msg);
+            return;
+        }
+        errors.reportFileNameAndLineNumber((Token) offendingSymbol);
+        errors.err().println("line " + line + ":" + charPositionInLine + " " + msg);
+        errors.reportUnderlineError(recognizer, (Token) offendingSymbol
         );
     }
 }